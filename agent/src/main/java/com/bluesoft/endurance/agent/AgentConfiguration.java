@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.agent;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The set of {@link MethodPattern}s the agent times. The configuration file has one pattern per line, blank lines and lines starting
+ * with {@code #} are ignored:
+ * <pre>
+ * # time all the finders of the dao layer
+ * com.example.dao.*Dao#find*
+ * org.thirdparty.Client#execute
+ * </pre>
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class AgentConfiguration {
+
+  private final List<MethodPattern> patterns;
+
+  /**
+   * Create a configuration.
+   * <p>
+   * @param patterns the patterns to time.
+   */
+  public AgentConfiguration( List<MethodPattern> patterns ) {
+    this.patterns = Collections.unmodifiableList( new ArrayList<>( patterns ) );
+  }
+
+  /**
+   * Read the configuration file.
+   * <p>
+   * @param path the path of the configuration file.
+   * <p>
+   * @return the configuration.
+   * <p>
+   * @throws IOException if the file cannot be read.
+   */
+  public static AgentConfiguration load( String path ) throws IOException {
+    try ( Reader reader = new InputStreamReader( new FileInputStream( path ), StandardCharsets.UTF_8 ) ) {
+      return parse( reader );
+    }
+  }
+
+  /**
+   * Parse the configuration.
+   * <p>
+   * @param reader the configuration text.
+   * <p>
+   * @return the configuration.
+   * <p>
+   * @throws IOException if the configuration cannot be read.
+   */
+  public static AgentConfiguration parse( Reader reader ) throws IOException {
+    List<MethodPattern> patterns = new ArrayList<>();
+    BufferedReader lines = new BufferedReader( reader );
+    String line;
+    while ((line = lines.readLine()) != null) {
+      line = line.trim();
+      if ( !line.isEmpty() && !line.startsWith( "#" ) ) {
+        patterns.add( new MethodPattern( line ) );
+      }
+    }
+    return new AgentConfiguration( patterns );
+  }
+
+  /**
+   * @return the patterns to time.
+   */
+  public List<MethodPattern> getPatterns() {
+    return patterns;
+  }
+
+  /**
+   * @param className the binary name of the class.
+   * <p>
+   * @return true if any pattern may match methods of the class.
+   */
+  public boolean matchesClass( String className ) {
+    for ( MethodPattern pattern : patterns ) {
+      if ( pattern.matchesClass( className ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param className  the binary name of the class.
+   * @param methodName the name of the method.
+   * <p>
+   * @return true if any pattern matches the method.
+   */
+  public boolean matches( String className, String methodName ) {
+    for ( MethodPattern pattern : patterns ) {
+      if ( pattern.matches( className, methodName ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.agent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.bluesoft.endurance.instrumentation.time.Timing;
+
+/**
+ * The runtime side of the agent. Woven methods call {@link #enter()} on entry and {@link #exit(long, int)} on every exit, normal or
+ * exceptional. Both calls only pass primitives and do not allocate. When the agent is disabled, {@link #enter()} returns 0 and the exit
+ * does nothing, so timing can be turned off without retransforming any classes.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public final class AgentTimings {
+
+  private static volatile boolean enabled = true;
+  private static volatile Timing[] timings = new Timing[0];
+  private static String[] names = new String[0];
+
+  private AgentTimings() {
+  }
+
+  /**
+   * Called on entry to a woven method.
+   * <p>
+   * @return the start time or 0 if timing is disabled.
+   */
+  public static long enter() {
+    return enabled ? System.nanoTime() : 0L;
+  }
+
+  /**
+   * Called on exit from a woven method.
+   * <p>
+   * @param start the value returned by {@link #enter()}.
+   * @param id    the id of the method, see {@link #register(java.lang.String)}.
+   */
+  public static void exit( long start, int id ) {
+    if ( start != 0L ) {
+      timings[id].recordSample( start, System.nanoTime() );
+    }
+  }
+
+  /**
+   * Register a method for timing. Registering the same name twice returns the same id so a class that is transformed again keeps its
+   * timings.
+   * <p>
+   * @param name the name of the method, e.g. {@code com.example.Foo#bar(I)V}.
+   * <p>
+   * @return the id of the method.
+   */
+  public static synchronized int register( String name ) {
+    for ( int i = 0; i < names.length; i++ ) {
+      if ( names[i].equals( name ) ) {
+        return i;
+      }
+    }
+    int id = names.length;
+    Timing[] newTimings = Arrays.copyOf( timings, id + 1 );
+    newTimings[id] = new Timing( name );
+    names = Arrays.copyOf( names, id + 1 );
+    names[id] = name;
+    timings = newTimings;
+    return id;
+  }
+
+  /**
+   * @return true if timing is enabled.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Enable or disable timing of the woven methods.
+   * <p>
+   * @param enabled true to enable timing.
+   */
+  public static void setEnabled( boolean enabled ) {
+    AgentTimings.enabled = enabled;
+  }
+
+  /**
+   * @param name the name the method was registered with.
+   * <p>
+   * @return the timing of the method or null if no such method was woven.
+   */
+  public static synchronized Timing getTiming( String name ) {
+    for ( int i = 0; i < names.length; i++ ) {
+      if ( names[i].equals( name ) ) {
+        return timings[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the timings of all the woven methods by name, in the order they were woven.
+   */
+  public static synchronized Map<String, Timing> getTimings() {
+    Map<String, Timing> ret = new LinkedHashMap<>();
+    for ( int i = 0; i < names.length; i++ ) {
+      ret.put( names[i], timings[i] );
+    }
+    return Collections.unmodifiableMap( ret );
+  }
+}
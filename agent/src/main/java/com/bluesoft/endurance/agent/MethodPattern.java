@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.agent;
+
+import java.util.regex.Pattern;
+
+/**
+ * A pattern selecting the methods to time, written as {@code class#method}. Both parts may use {@code *} to match any run of characters,
+ * e.g. {@code com.example.dao.*Dao#find*}. A pattern without a {@code #} selects every method of the matching classes.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class MethodPattern {
+
+  private final String pattern;
+  private final Pattern classPattern;
+  private final Pattern methodPattern;
+
+  /**
+   * Create a method pattern.
+   * <p>
+   * @param pattern the pattern, i.e. {@code class#method}.
+   */
+  public MethodPattern( String pattern ) {
+    this.pattern = pattern.trim();
+    int hash = this.pattern.indexOf( '#' );
+    if ( hash == 0 ) {
+      throw new IllegalArgumentException( "missing class pattern in " + pattern );
+    }
+    this.classPattern = glob( hash < 0 ? this.pattern : this.pattern.substring( 0, hash ) );
+    this.methodPattern = glob( hash < 0 ? "*" : this.pattern.substring( hash + 1 ) );
+  }
+
+  /**
+   * @param className the binary name of the class, e.g. {@code com.example.Foo$Bar}.
+   * <p>
+   * @return true if some methods of the class may match.
+   */
+  public boolean matchesClass( String className ) {
+    return classPattern.matcher( className ).matches();
+  }
+
+  /**
+   * @param className  the binary name of the class.
+   * @param methodName the name of the method.
+   * <p>
+   * @return true if the method matches.
+   */
+  public boolean matches( String className, String methodName ) {
+    return matchesClass( className ) && methodPattern.matcher( methodName ).matches();
+  }
+
+  private static Pattern glob( String glob ) {
+    StringBuilder regex = new StringBuilder();
+    for ( String part : glob.split( "\\*", -1 ) ) {
+      if ( regex.length() > 0 ) {
+        regex.append( ".*" );
+      }
+      regex.append( Pattern.quote( part ) );
+    }
+    return Pattern.compile( regex.toString() );
+  }
+
+  @Override
+  public String toString() {
+    return pattern;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.agent;
+
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A java agent that times the methods listed in a configuration file, see {@link AgentConfiguration}. Start the JVM with:
+ * <pre>
+ * -javaagent:instrumentation-agent.jar=/path/to/timing.conf
+ * </pre>
+ * The timings are recorded in {@link AgentTimings} and timing can be turned off and on at runtime through {@link AgentTimings#setEnabled(boolean)}
+ * or the {@value #OBJECT_NAME} MBean. Setting the system property {@value #ENABLED_PROPERTY} to false starts the agent disabled.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class TimingAgent {
+
+  /**
+   * The name of the control MBean.
+   */
+  public static final String OBJECT_NAME = "com.bluesoft.endurance:type=TimingAgent";
+  /**
+   * The system property that sets the initial state of the agent.
+   */
+  public static final String ENABLED_PROPERTY = "com.bluesoft.endurance.agent.enabled";
+
+  private TimingAgent() {
+  }
+
+  /**
+   * Entry point when the agent is given on the command line.
+   * <p>
+   * @param args            the path of the configuration file.
+   * @param instrumentation the instrumentation.
+   * <p>
+   * @throws IOException if the configuration cannot be read.
+   */
+  public static void premain( String args, Instrumentation instrumentation ) throws IOException {
+    install( args, instrumentation );
+  }
+
+  /**
+   * Entry point when the agent is attached to a running JVM. Classes that are already loaded and match the configuration are
+   * retransformed.
+   * <p>
+   * @param args            the path of the configuration file.
+   * @param instrumentation the instrumentation.
+   * <p>
+   * @throws IOException                if the configuration cannot be read.
+   * @throws UnmodifiableClassException if a loaded class cannot be retransformed.
+   */
+  public static void agentmain( String args, Instrumentation instrumentation ) throws IOException, UnmodifiableClassException {
+    AgentConfiguration configuration = install( args, instrumentation );
+    if ( instrumentation.isRetransformClassesSupported() ) {
+      List<Class<?>> classes = new ArrayList<>();
+      for ( Class<?> c : instrumentation.getAllLoadedClasses() ) {
+        if ( instrumentation.isModifiableClass( c ) && configuration.matchesClass( c.getName() ) ) {
+          classes.add( c );
+        }
+      }
+      if ( !classes.isEmpty() ) {
+        instrumentation.retransformClasses( classes.toArray( new Class<?>[classes.size()] ) );
+      }
+    }
+  }
+
+  private static AgentConfiguration install( String args, Instrumentation instrumentation ) throws IOException {
+    if ( args == null || args.trim().isEmpty() ) {
+      throw new IllegalArgumentException( "the path of the configuration file must be given, e.g. -javaagent:agent.jar=timing.conf" );
+    }
+    AgentConfiguration configuration = AgentConfiguration.load( args.trim() );
+    AgentTimings.setEnabled( Boolean.parseBoolean( System.getProperty( ENABLED_PROPERTY, "true" ) ) );
+    instrumentation.addTransformer( new TimingTransformer( configuration ), true );
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean( new TimingAgentControl(), new ObjectName( OBJECT_NAME ) );
+    } catch ( JMException ex ) {
+      // slf4j is left out of the agent jar and may not be on the class path yet, the agent reports its own problems on System.err.
+      System.err.println( "unable to register " + OBJECT_NAME + ": " + ex );
+    }
+    return configuration;
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.agent;
+
+import com.bluesoft.endurance.instrumentation.time.Timing;
+
+/**
+ * Exposes {@link AgentTimings} through JMX.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class TimingAgentControl implements TimingAgentControlMBean {
+
+  @Override
+  public boolean isEnabled() {
+    return AgentTimings.isEnabled();
+  }
+
+  @Override
+  public void setEnabled( boolean enabled ) {
+    AgentTimings.setEnabled( enabled );
+  }
+
+  @Override
+  public String[] getWovenMethods() {
+    return AgentTimings.getTimings().keySet().toArray( new String[0] );
+  }
+
+  @Override
+  public String getTiming( String method ) {
+    Timing timing = AgentTimings.getTiming( method );
+    return timing == null ? null : timing.toString();
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.agent;
+
+/**
+ * JMX view of the agent, registered as {@value TimingAgent#OBJECT_NAME}.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public interface TimingAgentControlMBean {
+
+  /**
+   * @return true if the woven methods are being timed.
+   */
+  boolean isEnabled();
+
+  /**
+   * Turn timing of the woven methods on or off. The classes stay woven.
+   * <p>
+   * @param enabled true to enable timing.
+   */
+  void setEnabled( boolean enabled );
+
+  /**
+   * @return the names of the woven methods.
+   */
+  String[] getWovenMethods();
+
+  /**
+   * @param method the name of a woven method.
+   * <p>
+   * @return the current timing of the method.
+   */
+  String getTiming( String method );
+}
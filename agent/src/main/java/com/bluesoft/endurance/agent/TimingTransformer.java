@@ -0,0 +1,246 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.agent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AdviceAdapter;
+
+/**
+ * Weaves calls to {@link AgentTimings} into the methods selected by the {@link AgentConfiguration}. A woven method looks like:
+ * <pre>
+ * long start = AgentTimings.enter();
+ * try {
+ *   // original body
+ * } finally {
+ *   AgentTimings.exit( start, id );
+ * }
+ * </pre>
+ * Constructors, static initializers, abstract and native methods are never woven, neither are classes loaded by the bootstrap class
+ * loader since they cannot see {@link AgentTimings}. Classes of this library are never woven either, timing the code that records a
+ * timing would recurse.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class TimingTransformer implements ClassFileTransformer {
+
+  private static final String TIMINGS = Type.getInternalName( AgentTimings.class );
+  private static final String[] EXCLUDED_PACKAGES = { "java.", "javax.", "jdk.", "sun.", "com.sun.", "org.objectweb.asm.",
+                                                      "com.bluesoft.endurance." };
+  private final AgentConfiguration configuration;
+
+  /**
+   * Create a transformer.
+   * <p>
+   * @param configuration the methods to time.
+   */
+  public TimingTransformer( AgentConfiguration configuration ) {
+    this.configuration = configuration;
+  }
+
+  @Override
+  public byte[] transform( ClassLoader loader, String internalName, Class<?> classBeingRedefined, ProtectionDomain protectionDomain,
+                           byte[] classfileBuffer ) {
+    if ( loader == null || internalName == null ) {
+      return null;
+    }
+    String className = internalName.replace( '/', '.' );
+    for ( String excluded : EXCLUDED_PACKAGES ) {
+      if ( className.startsWith( excluded ) ) {
+        return null;
+      }
+    }
+    if ( !configuration.matchesClass( className ) ) {
+      return null;
+    }
+    try {
+      return weave( loader, className, classfileBuffer );
+    } catch ( RuntimeException ex ) {
+      // never break class loading, leave the class as it is.
+      return null;
+    }
+  }
+
+  byte[] weave( ClassLoader loader, String className, byte[] classfileBuffer ) {
+    ClassReader reader = new ClassReader( classfileBuffer );
+    ClassWriter writer = new HierarchyClassWriter( reader, loader );
+    WeavingClassVisitor weaver = new WeavingClassVisitor( writer, className );
+    reader.accept( weaver, ClassReader.EXPAND_FRAMES );
+    return weaver.woven ? writer.toByteArray() : null;
+  }
+
+  private class WeavingClassVisitor extends ClassVisitor {
+
+    private final String className;
+    private boolean woven = false;
+    private boolean isInterface = false;
+
+    WeavingClassVisitor( ClassVisitor cv, String className ) {
+      super( Opcodes.ASM9, cv );
+      this.className = className;
+    }
+
+    @Override
+    public void visit( int version, int access, String name, String signature, String superName, String[] interfaces ) {
+      isInterface = (access & Opcodes.ACC_INTERFACE) != 0;
+      super.visit( version, access, name, signature, superName, interfaces );
+    }
+
+    @Override
+    public MethodVisitor visitMethod( int access, String name, String descriptor, String signature, String[] exceptions ) {
+      MethodVisitor mv = super.visitMethod( access, name, descriptor, signature, exceptions );
+      if ( isInterface || name.startsWith( "<" ) || (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE | Opcodes.ACC_BRIDGE)) != 0
+           || !configuration.matches( className, name ) ) {
+        return mv;
+      }
+      woven = true;
+      int id = AgentTimings.register( className + "#" + name + descriptor );
+      return new TimingMethodAdapter( mv, access, name, descriptor, id );
+    }
+  }
+
+  private static class TimingMethodAdapter extends AdviceAdapter {
+
+    private final int id;
+    private final Label tryStart = new Label();
+    private int start;
+
+    TimingMethodAdapter( MethodVisitor mv, int access, String name, String descriptor, int id ) {
+      super( Opcodes.ASM9, mv, access, name, descriptor );
+      this.id = id;
+    }
+
+    @Override
+    protected void onMethodEnter() {
+      visitMethodInsn( INVOKESTATIC, TIMINGS, "enter", "()J", false );
+      start = newLocal( Type.LONG_TYPE );
+      storeLocal( start );
+      visitLabel( tryStart );
+    }
+
+    @Override
+    protected void onMethodExit( int opcode ) {
+      // throws are handled by the catch all handler added at the end of the method.
+      if ( opcode != ATHROW ) {
+        emitExit();
+      }
+    }
+
+    @Override
+    public void visitMaxs( int maxStack, int maxLocals ) {
+      Label tryEnd = new Label();
+      Label handler = new Label();
+      visitLabel( tryEnd );
+      // added last so the method's own handlers take precedence.
+      visitTryCatchBlock( tryStart, tryEnd, handler, null );
+      visitLabel( handler );
+      emitExit();
+      visitInsn( ATHROW );
+      super.visitMaxs( maxStack, maxLocals );
+    }
+
+    private void emitExit() {
+      loadLocal( start );
+      push( id );
+      visitMethodInsn( INVOKESTATIC, TIMINGS, "exit", "(JI)V", false );
+    }
+  }
+
+  /**
+   * Computes frames without loading classes by reading the class files of the hierarchy through the class loader.
+   */
+  private static class HierarchyClassWriter extends ClassWriter {
+
+    private final ClassLoader loader;
+
+    HierarchyClassWriter( ClassReader reader, ClassLoader loader ) {
+      super( reader, ClassWriter.COMPUTE_FRAMES );
+      this.loader = loader;
+    }
+
+    @Override
+    protected String getCommonSuperClass( String type1, String type2 ) {
+      if ( isAssignableFrom( type1, type2 ) ) {
+        return type1;
+      }
+      if ( isAssignableFrom( type2, type1 ) ) {
+        return type2;
+      }
+      if ( isInterface( type1 ) || isInterface( type2 ) ) {
+        return "java/lang/Object";
+      }
+      String type = type1;
+      do {
+        type = superName( type );
+      } while (type != null && !isAssignableFrom( type, type2 ));
+      return type == null ? "java/lang/Object" : type;
+    }
+
+    private boolean isAssignableFrom( String type, String subType ) {
+      for ( String t = subType; t != null; t = superName( t ) ) {
+        if ( t.equals( type ) ) {
+          return true;
+        }
+        for ( String iface : interfaces( t ) ) {
+          if ( isAssignableFrom( type, iface ) ) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    private boolean isInterface( String type ) {
+      ClassReader reader = read( type );
+      return reader != null && (reader.getAccess() & Opcodes.ACC_INTERFACE) != 0;
+    }
+
+    private String superName( String type ) {
+      ClassReader reader = read( type );
+      return reader == null ? null : reader.getSuperName();
+    }
+
+    private String[] interfaces( String type ) {
+      ClassReader reader = read( type );
+      return reader == null ? new String[0] : reader.getInterfaces();
+    }
+
+    private ClassReader read( String type ) {
+      String resource = type + ".class";
+      try ( InputStream in = loader.getResourceAsStream( resource ) ) {
+        if ( in != null ) {
+          return new ClassReader( in );
+        }
+        try ( InputStream system = ClassLoader.getSystemResourceAsStream( resource ) ) {
+          return system == null ? null : new ClassReader( system );
+        }
+      } catch ( IOException ex ) {
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.agent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class TimingTransformerTest {
+
+  public static class Sample {
+
+    public int compute( int value ) {
+      return value * 2;
+    }
+
+    public int recover( String value ) {
+      try {
+        return Integer.parseInt( value );
+      } catch ( NumberFormatException ex ) {
+        return -1;
+      }
+    }
+
+    public void fail() {
+      throw new IllegalStateException( "failed" );
+    }
+
+    public static long untimed() {
+      return 42L;
+    }
+  }
+
+  private static final String SAMPLE = Sample.class.getName();
+
+  private static class WeavingClassLoader extends ClassLoader {
+
+    private final byte[] woven;
+
+    WeavingClassLoader( byte[] woven ) {
+      super( TimingTransformerTest.class.getClassLoader() );
+      this.woven = woven;
+    }
+
+    @Override
+    protected Class<?> loadClass( String name, boolean resolve ) throws ClassNotFoundException {
+      if ( name.equals( SAMPLE ) ) {
+        synchronized ( getClassLoadingLock( name ) ) {
+          Class<?> c = findLoadedClass( name );
+          return c != null ? c : defineClass( name, woven, 0, woven.length );
+        }
+      }
+      return super.loadClass( name, resolve );
+    }
+  }
+
+  private static byte[] classBytes( Class<?> type ) throws IOException {
+    try ( InputStream in = type.getClassLoader().getResourceAsStream( type.getName().replace( '.', '/' ) + ".class" ) ) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read( buffer )) != -1) {
+        out.write( buffer, 0, read );
+      }
+      return out.toByteArray();
+    }
+  }
+
+  private static Object invoke( Object target, String name, Class<?>[] types, Object... args ) throws Throwable {
+    Method method = target.getClass().getMethod( name, types );
+    try {
+      return method.invoke( target, args );
+    } catch ( InvocationTargetException ex ) {
+      throw ex.getCause();
+    }
+  }
+
+  @Test
+  public void testConfiguration() throws Exception {
+    AgentConfiguration configuration = AgentConfiguration.parse( new StringReader(
+            "# the daos\n\ncom.example.dao.*Dao#find*\norg.thirdparty.Client\n" ) );
+    assertEquals( configuration.getPatterns().size(), 2 );
+    assertTrue( configuration.matches( "com.example.dao.UserDao", "findById" ) );
+    assertFalse( configuration.matches( "com.example.dao.UserDao", "save" ) );
+    assertFalse( configuration.matchesClass( "com.example.service.UserService" ) );
+    assertTrue( configuration.matches( "org.thirdparty.Client", "execute" ) );
+    assertFalse( configuration.matchesClass( "org.thirdparty.ClientFactory" ) );
+  }
+
+  @Test
+  public void testWeaving() throws Throwable {
+    AgentConfiguration configuration = AgentConfiguration.parse( new StringReader( SAMPLE + "#compute\n" + SAMPLE + "#recover\n"
+                                                                                   + SAMPLE + "#fail\n" ) );
+    byte[] woven = new TimingTransformer( configuration ).weave( getClass().getClassLoader(), SAMPLE, classBytes( Sample.class ) );
+    assertNotNull( woven );
+    Object sample = new WeavingClassLoader( woven ).loadClass( SAMPLE ).newInstance();
+
+    assertEquals( invoke( sample, "compute", new Class<?>[] { int.class }, 21 ), 42 );
+    assertEquals( invoke( sample, "recover", new Class<?>[] { String.class }, "x" ), -1 );
+    assertEquals( invoke( sample, "recover", new Class<?>[] { String.class }, "7" ), 7 );
+    try {
+      invoke( sample, "fail", new Class<?>[0] );
+      fail( "exception expected" );
+    } catch ( IllegalStateException ex ) {
+      assertEquals( ex.getMessage(), "failed" );
+    }
+    assertEquals( invoke( sample, "untimed", new Class<?>[0] ), 42L );
+
+    assertEquals( AgentTimings.getTiming( SAMPLE + "#compute(I)I" ).getCount(), 1 );
+    assertEquals( AgentTimings.getTiming( SAMPLE + "#recover(Ljava/lang/String;)I" ).getCount(), 2 );
+    assertEquals( AgentTimings.getTiming( SAMPLE + "#fail()V" ).getCount(), 1 );
+    assertNull( AgentTimings.getTiming( SAMPLE + "#untimed()J" ) );
+
+    AgentTimings.setEnabled( false );
+    try {
+      invoke( sample, "compute", new Class<?>[] { int.class }, 1 );
+    } finally {
+      AgentTimings.setEnabled( true );
+    }
+    assertEquals( AgentTimings.getTiming( SAMPLE + "#compute(I)I" ).getCount(), 1, "disabled calls should not be timed" );
+  }
+
+  @Test
+  public void testUnmatchedClassIsNotTransformed() throws Exception {
+    AgentConfiguration configuration = AgentConfiguration.parse( new StringReader( "com.example.*" ) );
+    assertNull( new TimingTransformer( configuration ).transform( getClass().getClassLoader(), SAMPLE.replace( '.', '/' ), null, null,
+                                                                   classBytes( Sample.class ) ) );
+  }
+
+  @Test
+  public void testLibraryClassesAreNotTransformed() throws Exception {
+    AgentConfiguration configuration = AgentConfiguration.parse( new StringReader( "com.bluesoft.endurance.*" ) );
+    assertNull( new TimingTransformer( configuration ).transform( getClass().getClassLoader(), SAMPLE.replace( '.', '/' ), null, null,
+                                                                   classBytes( Sample.class ) ) );
+    assertNull( new TimingTransformer( configuration ).transform( getClass().getClassLoader(),
+                                                                   "com/bluesoft/endurance/util/SeqLockValue", null, null,
+                                                                   classBytes( Sample.class ) ) );
+  }
+}
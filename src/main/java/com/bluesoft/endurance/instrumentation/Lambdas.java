@@ -0,0 +1,238 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wrappers that remember the results of {@link Lambda}s and {@link Transform}s, in place of hand written double checked lazy fields.
+ * Every wrapper is thread safe and runs the wrapped function at most once at a time: callers that race for a result that is not there
+ * yet wait for the one computing it instead of computing it again. Once there is a result, reading it is a single volatile read, no lock
+ * is taken. A computation that throws is not remembered, the next call tries again.
+ * <p>
+ * The locks are {@link ReentrantLock}s rather than monitors, so a virtual thread waiting for a result does not pin its carrier.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public final class Lambdas {
+
+  private static final Logger LOG = LoggerFactory.getLogger( Lambdas.class );
+
+  private Lambdas() {
+  }
+
+  /**
+   * Remember the result of a lambda. The lambda is run on the first call and released once it returns, the result, which may be null, is
+   * returned by every later call.
+   * <p>
+   * @param <T>    the return type.
+   * @param lambda the lambda.
+   * <p>
+   * @return the memoizing lambda.
+   */
+  public static <T> Lambda<T> memoize( Lambda<T> lambda ) {
+    return new Memoizer<>( lambda );
+  }
+
+  /**
+   * Remember the result of a lambda for a time. The first call runs the lambda. Once the result is older than the time to live, the first
+   * call to notice runs the lambda again while every other call keeps getting the old result until the new one is there, so readers never
+   * wait for a refresh. If the refresh throws, the caller that ran it gets the exception and the old result is kept until the next call
+   * tries again.
+   * <p>
+   * @param <T>        the return type.
+   * @param lambda     the lambda.
+   * @param timeToLive the age after which the result is refreshed.
+   * @param unit       the unit of the time to live.
+   * <p>
+   * @return the memoizing lambda.
+   */
+  public static <T> Lambda<T> memoizeWithExpiry( Lambda<T> lambda, long timeToLive, TimeUnit unit ) {
+    return new ExpiringMemoizer<>( lambda, unit.toNanos( timeToLive ), null );
+  }
+
+  /**
+   * Remember the result of a lambda for a time, refreshing it on an executor. Once the result is older than the time to live, the first
+   * call to notice schedules a refresh and every call, that one included, keeps getting the old result until the new one is there. A
+   * refresh that throws is logged and the old result is kept until a later call schedules another refresh.
+   * <p>
+   * @param <T>        the return type.
+   * @param lambda     the lambda.
+   * @param timeToLive the age after which the result is refreshed.
+   * @param unit       the unit of the time to live.
+   * @param executor   the executor the refreshes are run on.
+   * <p>
+   * @return the memoizing lambda.
+   */
+  public static <T> Lambda<T> memoizeWithExpiry( Lambda<T> lambda, long timeToLive, TimeUnit unit, Executor executor ) {
+    if ( executor == null ) {
+      throw new IllegalArgumentException( "executor is required" );
+    }
+    return new ExpiringMemoizer<>( lambda, unit.toNanos( timeToLive ), executor );
+  }
+
+  /**
+   * Remember the result of a transform for every argument. The transform is run at most once per argument, calls for different
+   * arguments do not wait for each other. The results are kept for as long as the returned transform is, so only memoize transforms of a
+   * bounded set of arguments, see {@link com.bluesoft.endurance.util.collection.BoundedCache} otherwise.
+   * <p>
+   * @param <A>       the argument type, null is not allowed.
+   * @param <R>       the return type.
+   * @param transform the transform.
+   * <p>
+   * @return the memoizing transform.
+   */
+  public static <A, R> Transform<A, R> memoize( final Transform<A, R> transform ) {
+    return new Transform<A, R>() {
+      private final ConcurrentHashMap<A, Lambda<R>> results = new ConcurrentHashMap<>();
+
+      @Override
+      public R func( final A arg ) {
+        Lambda<R> result = results.get( arg );
+        if ( result == null ) {
+          Lambda<R> created = memoize( new Lambda<R>() {
+            @Override
+            public R func() {
+              return transform.func( arg );
+            }
+          } );
+          result = results.putIfAbsent( arg, created );
+          if ( result == null ) {
+            result = created;
+          }
+        }
+        return result.func();
+      }
+    };
+  }
+
+  private static final class Memoizer<T> implements Lambda<T> {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Lambda<T> lambda;
+    // the value is written before the volatile flag and read after it.
+    private T value;
+    private volatile boolean computed = false;
+
+    Memoizer( Lambda<T> lambda ) {
+      this.lambda = lambda;
+    }
+
+    @Override
+    public T func() {
+      if ( computed ) {
+        return value;
+      }
+      lock.lock();
+      try {
+        if ( !computed ) {
+          value = lambda.func();
+          computed = true;
+          lambda = null;
+        }
+        return value;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private static final class ExpiringMemoizer<T> implements Lambda<T> {
+
+    private final Lambda<T> lambda;
+    private final long timeToLiveNanos;
+    private final Executor executor;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicBoolean refreshing = new AtomicBoolean( false );
+    private final Runnable refresh = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          refresh();
+        } catch ( RuntimeException ex ) {
+          LOG.warn( "refresh of a memoized value failed, keeping the old value", ex );
+        }
+      }
+    };
+    private volatile Result<T> result;
+
+    ExpiringMemoizer( Lambda<T> lambda, long timeToLiveNanos, Executor executor ) {
+      this.lambda = lambda;
+      this.timeToLiveNanos = timeToLiveNanos;
+      this.executor = executor;
+    }
+
+    @Override
+    public T func() {
+      Result<T> current = result;
+      if ( current == null ) {
+        lock.lock();
+        try {
+          current = result;
+          if ( current == null ) {
+            current = new Result<>( lambda.func(), System.nanoTime() );
+            result = current;
+          }
+        } finally {
+          lock.unlock();
+        }
+        return current.value;
+      }
+      if ( System.nanoTime() - current.computedAt >= timeToLiveNanos && refreshing.compareAndSet( false, true ) ) {
+        if ( executor == null ) {
+          return refresh().value;
+        }
+        try {
+          executor.execute( refresh );
+        } catch ( RejectedExecutionException ex ) {
+          refreshing.set( false );
+        }
+      }
+      return current.value;
+    }
+
+    // only run by the caller that set the refreshing flag.
+    private Result<T> refresh() {
+      try {
+        Result<T> refreshed = new Result<>( lambda.func(), System.nanoTime() );
+        result = refreshed;
+        return refreshed;
+      } finally {
+        refreshing.set( false );
+      }
+    }
+  }
+
+  private static final class Result<T> {
+
+    private final T value;
+    private final long computedAt;
+
+    Result( T value, long computedAt ) {
+      this.value = value;
+      this.computedAt = computedAt;
+    }
+  }
+}
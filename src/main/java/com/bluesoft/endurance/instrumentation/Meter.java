@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Measures the rate of events, i.e. throughput, alongside the latency measured by a
+ * {@link com.bluesoft.endurance.instrumentation.time.Timing}. Events are counted in a striped {@link LongAdder} so marking an event is a
+ * single, normally uncontended, add. The 1, 5, and 15 minute exponentially weighted moving average rates are brought up to date when
+ * they are read, nothing is done on the marking threads to maintain them.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class Meter {
+
+  private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos( 5 );
+  private final LongAdder count = new LongAdder();
+  private final Clock clock;
+  private final long startTime;
+  private final ReentrantLock tickLock = new ReentrantLock();
+  private final Ewma oneMinute = new Ewma( 1 );
+  private final Ewma fiveMinute = new Ewma( 5 );
+  private final Ewma fifteenMinute = new Ewma( 15 );
+  private long lastTick;
+  private long lastTickCount = 0;
+
+  /**
+   * Create a meter.
+   */
+  public Meter() {
+    this( Clock.SYSTEM );
+  }
+
+  Meter( Clock clock ) {
+    this.clock = clock;
+    this.startTime = clock.nanoTime();
+    this.lastTick = startTime;
+  }
+
+  /**
+   * Mark the occurrence of an event.
+   */
+  public void mark() {
+    count.increment();
+  }
+
+  /**
+   * Mark the occurrence of a number of events.
+   * <p>
+   * @param events the number of events.
+   */
+  public void mark( long events ) {
+    count.add( events );
+  }
+
+  /**
+   * @return the number of events marked.
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * @return the average number of events per second since the meter was created.
+   */
+  public double getMeanRate() {
+    long elapsed = clock.nanoTime() - startTime;
+    return elapsed <= 0 ? 0.0 : getCount() * (double)TimeUnit.SECONDS.toNanos( 1 ) / elapsed;
+  }
+
+  /**
+   * @return the one minute exponentially weighted moving average of the events per second.
+   */
+  public double getOneMinuteRate() {
+    tickIfNecessary();
+    return oneMinute.rate;
+  }
+
+  /**
+   * @return the five minute exponentially weighted moving average of the events per second.
+   */
+  public double getFiveMinuteRate() {
+    tickIfNecessary();
+    return fiveMinute.rate;
+  }
+
+  /**
+   * @return the fifteen minute exponentially weighted moving average of the events per second.
+   */
+  public double getFifteenMinuteRate() {
+    tickIfNecessary();
+    return fifteenMinute.rate;
+  }
+
+  private void tickIfNecessary() {
+    tickLock.lock();
+    try {
+      long now = clock.nanoTime();
+      long ticks = (now - lastTick) / TICK_INTERVAL;
+      if ( ticks > 0 ) {
+        lastTick += ticks * TICK_INTERVAL;
+        long current = count.sum();
+        long events = current - lastTickCount;
+        lastTickCount = current;
+        // when ticks were missed there is no telling when the events happened, spread them evenly over the missed intervals.
+        double instantRate = events * (double)TimeUnit.SECONDS.toNanos( 1 ) / (ticks * TICK_INTERVAL);
+        oneMinute.tick( instantRate, ticks );
+        fiveMinute.tick( instantRate, ticks );
+        fifteenMinute.tick( instantRate, ticks );
+      }
+    } finally {
+      tickLock.unlock();
+    }
+  }
+
+  /**
+   * @return a string representing the current values of the count, and rates.
+   */
+  @Override
+  public String toString() {
+    return String.format( "Meter {\n\tcount = %d\n\tmean rate = %.2f\n\t1 minute rate = %.2f\n\t5 minute rate = %.2f\n\t15 minute rate = %.2f\n}",
+                          getCount(), getMeanRate(), getOneMinuteRate(), getFiveMinuteRate(), getFifteenMinuteRate() );
+  }
+
+  /**
+   * The source of time for the meter, replaced in tests.
+   */
+  abstract static class Clock {
+
+    static final Clock SYSTEM = new Clock() {
+      @Override
+      long nanoTime() {
+        return System.nanoTime();
+      }
+    };
+
+    abstract long nanoTime();
+  }
+
+  private static class Ewma {
+
+    private final double alpha;
+    private volatile double rate = 0.0;
+    private boolean initialized = false;
+
+    Ewma( int minutes ) {
+      alpha = 1 - Math.exp( -(double)TICK_INTERVAL / TimeUnit.MINUTES.toNanos( minutes ) );
+    }
+
+    // applies the given number of ticks at the same rate in closed form, so a long idle period costs no more than a single tick.
+    void tick( double instantRate, long ticks ) {
+      if ( initialized ) {
+        rate += (1 - Math.pow( 1 - alpha, ticks )) * (instantRate - rate);
+      } else {
+        rate = instantRate;
+        initialized = true;
+      }
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation;
+
+/**
+ * An interface representing a function that calculates a value from an argument.
+ * <p>
+ * @param <A> The argument type.
+ * @param <R> The return type.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public interface Transform<A, R> {
+
+  /**
+   * Calculate the return value.
+   * <p>
+   * @param arg the argument.
+   * <p>
+   * @return the result of the calculation.
+   */
+  R func( A arg );
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A JDK Flight Recorder event for checking out the lock of a value from a {@link com.bluesoft.endurance.util.ValueBasedReentrantLock}.
+ * Only checkouts that take longer than the threshold, 1 ms unless the recording settings say otherwise, are committed. The value is only
+ * turned into a string for committed events.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+@Name( "com.bluesoft.endurance.KeyedLockCheckout" )
+@Label( "Keyed Lock Checkout" )
+@Category( { "BlueSoft Endurance", "Locks" } )
+@Description( "Checking out the lock associated with a value" )
+@Threshold( "1 ms" )
+public class KeyedLockCheckoutEvent extends Event {
+
+  private static final EventType TYPE = EventType.getEventType( KeyedLockCheckoutEvent.class );
+
+  @Label( "Value" )
+  String value;
+  @Label( "Reference Count" )
+  @Description( "The number of check outs of the value's lock, including this one" )
+  int refCount;
+
+  /**
+   * Begin an event if the event is enabled in a running recording.
+   * <p>
+   * @return the event or null if the event is not enabled.
+   */
+  public static KeyedLockCheckoutEvent start() {
+    if ( !TYPE.isEnabled() ) {
+      return null;
+    }
+    KeyedLockCheckoutEvent event = new KeyedLockCheckoutEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * End the event and commit it if it passes the threshold.
+   * <p>
+   * @param value    the value whose lock was checked out.
+   * @param refCount the number of check outs of the lock, including this one.
+   */
+  public void finish( Object value, int refCount ) {
+    end();
+    if ( shouldCommit() ) {
+      this.value = String.valueOf( value );
+      this.refCount = refCount;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A JDK Flight Recorder event for a thread waiting to acquire a lock, e.g. one of the locks of a
+ * {@link com.bluesoft.endurance.util.FastReadWriteLock}. Only waits longer than the threshold, 1 ms unless the recording settings say
+ * otherwise, are committed.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+@Name( "com.bluesoft.endurance.LockWait" )
+@Label( "Lock Wait" )
+@Category( { "BlueSoft Endurance", "Locks" } )
+@Description( "A thread waiting to acquire a lock" )
+@Threshold( "1 ms" )
+public class LockWaitEvent extends Event {
+
+  private static final EventType TYPE = EventType.getEventType( LockWaitEvent.class );
+
+  @Label( "Lock Class" )
+  Class<?> lockClass;
+  @Label( "Mode" )
+  String mode;
+  @Label( "Acquired" )
+  boolean acquired;
+
+  /**
+   * Begin an event if the event is enabled in a running recording.
+   * <p>
+   * @param lock the lock being waited on.
+   * @param mode the mode of the lock, e.g. read or write.
+   * <p>
+   * @return the event or null if the event is not enabled.
+   */
+  public static LockWaitEvent start( Object lock, String mode ) {
+    if ( !TYPE.isEnabled() ) {
+      return null;
+    }
+    LockWaitEvent event = new LockWaitEvent();
+    event.lockClass = lock.getClass();
+    event.mode = mode;
+    event.begin();
+    return event;
+  }
+
+  /**
+   * End the event and commit it if it passes the threshold.
+   * <p>
+   * @param acquired true if the lock was acquired, false if the wait timed out or was interrupted.
+   */
+  public void finish( boolean acquired ) {
+    end();
+    if ( shouldCommit() ) {
+      this.acquired = acquired;
+      commit();
+    }
+  }
+}
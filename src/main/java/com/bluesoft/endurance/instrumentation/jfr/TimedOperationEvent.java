@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A JDK Flight Recorder event for an operation timed by a {@link com.bluesoft.endurance.instrumentation.time.Timing}. Only operations that
+ * take longer than the threshold, 10 ms unless the recording settings say otherwise, are committed.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+@Name( "com.bluesoft.endurance.TimedOperation" )
+@Label( "Timed Operation" )
+@Category( { "BlueSoft Endurance", "Timing" } )
+@Description( "An operation timed by a Timing" )
+@Threshold( "10 ms" )
+@StackTrace( false )
+public class TimedOperationEvent extends Event {
+
+  private static final EventType TYPE = EventType.getEventType( TimedOperationEvent.class );
+
+  @Label( "Name" )
+  String name;
+
+  /**
+   * Begin an event if the event is enabled in a running recording.
+   * <p>
+   * @param name the name of the timed operation.
+   * <p>
+   * @return the event or null if the event is not enabled.
+   */
+  public static TimedOperationEvent start( String name ) {
+    if ( !TYPE.isEnabled() ) {
+      return null;
+    }
+    TimedOperationEvent event = new TimedOperationEvent();
+    event.name = name;
+    event.begin();
+    return event;
+  }
+
+  /**
+   * End the event and commit it if it passes the threshold.
+   */
+  public void finish() {
+    end();
+    if ( shouldCommit() ) {
+      commit();
+    }
+  }
+}
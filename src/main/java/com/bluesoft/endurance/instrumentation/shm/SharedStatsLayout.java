@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.shm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * The layout of a shared statistics file, written by {@link SharedStatsWriter} and read by {@link SharedStatsReader}. The layout is fixed
+ * so that a reader in another process, or in another language, can attach to the file without any coordination with the writer. All
+ * values are little endian 64 bit integers at 8 byte aligned offsets.
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes:
+ * <pre>
+ *   offset  field
+ *        0  magic, {@value #MAGIC}, the ASCII bytes of "ENDSTAT1" read as a little endian long
+ *        8  layout version, {@value #VERSION}
+ *       16  capacity, the number of slots in the file
+ *       24  slots in use, written with release semantics after the slot is initialized
+ *       32  the process id of the writer
+ *       40  the time the file was created in milliseconds since the epoch
+ *       48  reserved
+ * </pre>
+ * followed by capacity slots of {@value #SLOT_SIZE} bytes each:
+ * <pre>
+ *   offset  field
+ *        0  count, the number of samples, added last when recording a sample
+ *        8  total, the sum of the samples in nanoseconds
+ *       16  min, the smallest sample, {@link Long#MAX_VALUE} until the first sample
+ *       24  max, the largest sample
+ *       32  name length in bytes
+ *       40  name, up to {@value #NAME_MAX} bytes of UTF-8
+ *      128  {@value #BUCKETS} histogram buckets, bucket 0 counts samples of 0 or less, bucket i counts samples in [2^(i-1), 2^i)
+ * </pre>
+ * Every field of a slot is updated with an atomic add or compare and set, so the writer threads never lock. The total and the bucket of
+ * a sample are added before its count, so a reader that reads the count first sees at least that many samples in the other fields.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public final class SharedStatsLayout {
+
+  /**
+   * The magic number at the start of the file.
+   */
+  public static final long MAGIC = 0x3154415453444E45L;
+  /**
+   * The version of the layout.
+   */
+  public static final long VERSION = 1L;
+  /**
+   * The size of the header.
+   */
+  public static final int HEADER_SIZE = 64;
+  // the offsets of the header fields.
+  public static final int MAGIC_OFFSET = 0;
+  public static final int VERSION_OFFSET = 8;
+  public static final int CAPACITY_OFFSET = 16;
+  public static final int USED_OFFSET = 24;
+  public static final int PID_OFFSET = 32;
+  public static final int CREATED_OFFSET = 40;
+  // the offsets of the fields of a slot, relative to the start of the slot.
+  public static final int COUNT_OFFSET = 0;
+  public static final int TOTAL_OFFSET = 8;
+  public static final int MIN_OFFSET = 16;
+  public static final int MAX_OFFSET = 24;
+  public static final int NAME_LENGTH_OFFSET = 32;
+  public static final int NAME_OFFSET = 40;
+  public static final int BUCKETS_OFFSET = 128;
+  /**
+   * The longest name in bytes.
+   */
+  public static final int NAME_MAX = BUCKETS_OFFSET - NAME_OFFSET;
+  /**
+   * The number of histogram buckets.
+   */
+  public static final int BUCKETS = 64;
+  /**
+   * The size of a slot.
+   */
+  public static final int SLOT_SIZE = BUCKETS_OFFSET + BUCKETS * 8;
+  // atomic access to the longs of a direct buffer, the offsets must be 8 byte aligned.
+  static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle( long[].class, ByteOrder.LITTLE_ENDIAN );
+
+  private SharedStatsLayout() {
+  }
+
+  /**
+   * @param capacity the number of slots.
+   * <p>
+   * @return the size of a file with the given number of slots.
+   */
+  public static long fileSize( int capacity ) {
+    return HEADER_SIZE + (long)capacity * SLOT_SIZE;
+  }
+
+  /**
+   * @param slot the index of a slot.
+   * <p>
+   * @return the offset of the slot in the file.
+   */
+  public static int slotOffset( int slot ) {
+    return HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  /**
+   * @param sample a sample in nanoseconds.
+   * <p>
+   * @return the index of the histogram bucket that counts the sample.
+   */
+  public static int bucket( long sample ) {
+    return sample <= 0L ? 0 : 64 - Long.numberOfLeadingZeros( sample );
+  }
+
+  /**
+   * @param bucket the index of a histogram bucket.
+   * <p>
+   * @return the largest sample the bucket counts, the first bucket with a bound of at least a percentile's rank is an upper bound of the
+   *         percentile.
+   */
+  public static long bucketUpperBound( int bucket ) {
+    return bucket == 0 ? 0L : bucket == 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+  }
+}
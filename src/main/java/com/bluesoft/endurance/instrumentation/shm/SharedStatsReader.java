@@ -0,0 +1,284 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.shm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import static com.bluesoft.endurance.instrumentation.shm.SharedStatsLayout.*;
+
+/**
+ * Attaches to a file published by a {@link SharedStatsWriter}, possibly in another process, and reads the live statistics. The file is
+ * mapped read only, reading never writes to it, so any number of readers can attach without slowing down the writer.
+ * <p>
+ * The reader is also a command line tool that prints the statistics of a file:
+ * <pre>
+ *   java -cp endurance-instrumentation.jar com.bluesoft.endurance.instrumentation.shm.SharedStatsReader &lt;file&gt; [interval-ms]
+ * </pre>
+ * With an interval it prints the statistics again every interval until it is stopped.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class SharedStatsReader implements Closeable {
+
+  private final RandomAccessFile file;
+  private final ByteBuffer buffer;
+  private final int capacity;
+
+  /**
+   * Attach to a file.
+   * <p>
+   * @param path the file.
+   * <p>
+   * @throws IOException if the file can not be mapped or is not a shared statistics file.
+   */
+  public SharedStatsReader( File path ) throws IOException {
+    file = new RandomAccessFile( path, "r" );
+    try {
+      long length = file.length();
+      if ( length < HEADER_SIZE ) {
+        throw new IOException( path + " is not a shared statistics file" );
+      }
+      buffer = file.getChannel().map( FileChannel.MapMode.READ_ONLY, 0L, length ).order( ByteOrder.LITTLE_ENDIAN );
+      if ( (long)LONGS.getAcquire( buffer, MAGIC_OFFSET ) != MAGIC ) {
+        throw new IOException( path + " is not a shared statistics file" );
+      }
+      if ( buffer.getLong( VERSION_OFFSET ) != VERSION ) {
+        throw new IOException( path + " has layout version " + buffer.getLong( VERSION_OFFSET ) + ", expected " + VERSION );
+      }
+      long slots = buffer.getLong( CAPACITY_OFFSET );
+      if ( fileSize( (int)slots ) > length ) {
+        throw new IOException( path + " is truncated" );
+      }
+      capacity = (int)slots;
+    } catch ( IOException | RuntimeException ex ) {
+      file.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * @return the number of slots in the file.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the number of slots the writer has handed out so far.
+   */
+  public int getSlotCount() {
+    return (int)(long)LONGS.getAcquire( buffer, USED_OFFSET );
+  }
+
+  /**
+   * @return the process id of the writer.
+   */
+  public long getWriterPid() {
+    return buffer.getLong( PID_OFFSET );
+  }
+
+  /**
+   * @return the time the file was created in milliseconds since the epoch.
+   */
+  public long getCreated() {
+    return buffer.getLong( CREATED_OFFSET );
+  }
+
+  /**
+   * Read a slot.
+   * <p>
+   * @param slot the index of the slot, less than {@link #getSlotCount()}.
+   * <p>
+   * @return the statistics of the slot.
+   */
+  public Snapshot read( int slot ) {
+    if ( slot < 0 || slot >= getSlotCount() ) {
+      throw new IndexOutOfBoundsException( "slot " + slot + " of " + getSlotCount() );
+    }
+    int offset = slotOffset( slot );
+    byte[] name = new byte[(int)buffer.getLong( offset + NAME_LENGTH_OFFSET )];
+    for ( int i = 0; i < name.length; i++ ) {
+      name[i] = buffer.get( offset + NAME_OFFSET + i );
+    }
+    // the count first, the other fields include at least the samples it counts.
+    long count = (long)LONGS.getAcquire( buffer, offset + COUNT_OFFSET );
+    long total = (long)LONGS.getAcquire( buffer, offset + TOTAL_OFFSET );
+    long min = (long)LONGS.getAcquire( buffer, offset + MIN_OFFSET );
+    long max = (long)LONGS.getAcquire( buffer, offset + MAX_OFFSET );
+    long[] buckets = new long[BUCKETS];
+    for ( int i = 0; i < BUCKETS; i++ ) {
+      buckets[i] = (long)LONGS.getAcquire( buffer, offset + BUCKETS_OFFSET + i * 8 );
+    }
+    return new Snapshot( new String( name, StandardCharsets.UTF_8 ), count, total, min, max, buckets );
+  }
+
+  /**
+   * Print the statistics of every slot, one line per slot.
+   * <p>
+   * @param out the stream to print to.
+   */
+  public void print( PrintStream out ) {
+    out.printf( "%-40s %12s %14s %12s %12s %12s %12s%n", "name", "count", "total", "min", "mean", "p99", "max" );
+    for ( int i = 0, n = getSlotCount(); i < n; i++ ) {
+      Snapshot s = read( i );
+      if ( s.getCount() == 0 ) {
+        out.printf( "%-40s %12d%n", s.getName(), 0 );
+      } else {
+        out.printf( "%-40s %12d %14d %12d %12d %12d %12d%n", s.getName(), s.getCount(), s.getTotal(), s.getMin(), s.getAverage(),
+                    s.getPercentile( 0.99 ), s.getMax() );
+      }
+    }
+  }
+
+  /**
+   * Close the file.
+   * <p>
+   * @throws IOException if the file could not be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  /**
+   * Print the statistics of a file.
+   * <p>
+   * @param args the file and, optionally, the interval in milliseconds to print the statistics at.
+   * <p>
+   * @throws Exception if the file can not be read.
+   */
+  public static void main( String[] args ) throws Exception {
+    if ( args.length < 1 || args.length > 2 ) {
+      System.err.println( "usage: SharedStatsReader <file> [interval-ms]" );
+      System.exit( 2 );
+    }
+    try ( SharedStatsReader reader = new SharedStatsReader( new File( args[0] ) ) ) {
+      System.out.printf( "%s, written by process %d%n", args[0], reader.getWriterPid() );
+      reader.print( System.out );
+      if ( args.length == 2 ) {
+        long interval = Long.parseLong( args[1] );
+        while (!Thread.currentThread().isInterrupted()) {
+          Thread.sleep( interval );
+          System.out.println();
+          reader.print( System.out );
+        }
+      }
+    }
+  }
+
+  /**
+   * The statistics of a slot at the time it was read.
+   */
+  public static final class Snapshot {
+
+    private final String name;
+    private final long count;
+    private final long total;
+    private final long min;
+    private final long max;
+    private final long[] buckets;
+
+    Snapshot( String name, long count, long total, long min, long max, long[] buckets ) {
+      this.name = name;
+      this.count = count;
+      this.total = total;
+      this.min = min;
+      this.max = max;
+      this.buckets = buckets;
+    }
+
+    /**
+     * @return the name of the slot.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the number of samples.
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @return the sum of the samples.
+     */
+    public long getTotal() {
+      return total;
+    }
+
+    /**
+     * @return the smallest sample or {@link Long#MAX_VALUE} if there are none.
+     */
+    public long getMin() {
+      return min;
+    }
+
+    /**
+     * @return the largest sample.
+     */
+    public long getMax() {
+      return max;
+    }
+
+    /**
+     * @return the average sample or 0 if there are none.
+     */
+    public long getAverage() {
+      return count == 0 ? 0L : total / count;
+    }
+
+    /**
+     * @param bucket the index of the bucket, see {@link SharedStatsLayout#bucket(long)}.
+     * <p>
+     * @return the number of samples counted by the bucket.
+     */
+    public long getBucket( int bucket ) {
+      return buckets[bucket];
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 1.
+     * <p>
+     * @return an upper bound of the percentile from the histogram, never more than the largest sample.
+     */
+    public long getPercentile( double percentile ) {
+      long sum = 0;
+      for ( long bucket : buckets ) {
+        sum += bucket;
+      }
+      long rank = (long)Math.ceil( percentile * sum );
+      long seen = 0;
+      for ( int i = 0; i < buckets.length; i++ ) {
+        seen += buckets[i];
+        if ( seen >= rank && seen > 0 ) {
+          return Math.min( bucketUpperBound( i ), max );
+        }
+      }
+      return max;
+    }
+  }
+}
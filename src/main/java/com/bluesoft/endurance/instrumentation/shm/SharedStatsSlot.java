@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.shm;
+
+import java.nio.ByteBuffer;
+
+import static com.bluesoft.endurance.instrumentation.shm.SharedStatsLayout.*;
+
+/**
+ * A slot of a shared statistics file, i.e. a counter with a total, a min, a max, and a histogram that another process can read. Recording
+ * a sample does not allocate and does not lock, every field is updated with an atomic operation on the mapped file, see
+ * {@link SharedStatsLayout}.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public final class SharedStatsSlot {
+
+  private final ByteBuffer buffer;
+  private final int offset;
+  private final String name;
+
+  SharedStatsSlot( ByteBuffer buffer, int offset, String name ) {
+    this.buffer = buffer;
+    this.offset = offset;
+    this.name = name;
+  }
+
+  /**
+   * @return the name of the slot.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Record a sample.
+   * <p>
+   * @param sample the sample, e.g. the duration of an operation in nanoseconds.
+   */
+  public void record( long sample ) {
+    LONGS.getAndAdd( buffer, offset + TOTAL_OFFSET, sample );
+    LONGS.getAndAdd( buffer, offset + BUCKETS_OFFSET + bucket( sample ) * 8, 1L );
+    long current;
+    while (sample < (current = (long)LONGS.getVolatile( buffer, offset + MIN_OFFSET ))) {
+      if ( LONGS.compareAndSet( buffer, offset + MIN_OFFSET, current, sample ) ) {
+        break;
+      }
+    }
+    while (sample > (current = (long)LONGS.getVolatile( buffer, offset + MAX_OFFSET ))) {
+      if ( LONGS.compareAndSet( buffer, offset + MAX_OFFSET, current, sample ) ) {
+        break;
+      }
+    }
+    // the count goes last, see SharedStatsLayout.
+    LONGS.getAndAdd( buffer, offset + COUNT_OFFSET, 1L );
+  }
+
+  /**
+   * Use the slot as a plain counter, only its count is changed.
+   * <p>
+   * @param delta the amount to add to the count.
+   */
+  public void add( long delta ) {
+    LONGS.getAndAdd( buffer, offset + COUNT_OFFSET, delta );
+  }
+
+  /**
+   * @return the count of the slot.
+   */
+  public long getCount() {
+    return (long)LONGS.getAcquire( buffer, offset + COUNT_OFFSET );
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.shm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.bluesoft.endurance.instrumentation.time.Timing;
+
+import static com.bluesoft.endurance.instrumentation.shm.SharedStatsLayout.*;
+
+/**
+ * Publishes statistics in a memory mapped file that another process can read with {@link SharedStatsReader}, without JMX or HTTP. The
+ * file has a fixed number of slots and the layout described by {@link SharedStatsLayout}. A slot is handed out once per name, recording
+ * into it does not allocate and does not lock.
+ * <p>
+ * The mapping stays valid after the writer is closed, until the slots are no longer reachable, so closing the writer does not break
+ * {@link Timing}s that still publish to it.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class SharedStatsWriter implements Closeable {
+
+  private final RandomAccessFile file;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+  private final ReentrantLock slotLock = new ReentrantLock();
+  private final Map<String, SharedStatsSlot> slots = new HashMap<>();
+
+  /**
+   * Create the file, replacing any file that is there, and map it.
+   * <p>
+   * @param path     the file.
+   * @param capacity the number of slots in the file.
+   * <p>
+   * @throws IOException if the file could not be created or mapped.
+   */
+  public SharedStatsWriter( File path, int capacity ) throws IOException {
+    if ( capacity <= 0 || fileSize( capacity ) > Integer.MAX_VALUE ) {
+      throw new IllegalArgumentException( "capacity out of range: " + capacity );
+    }
+    this.capacity = capacity;
+    this.file = new RandomAccessFile( path, "rw" );
+    try {
+      // zero the file, a reader that attaches before the header is written does not see the old contents as valid.
+      file.setLength( 0L );
+      file.setLength( fileSize( capacity ) );
+      buffer = file.getChannel().map( FileChannel.MapMode.READ_WRITE, 0L, fileSize( capacity ) );
+      buffer.order( ByteOrder.LITTLE_ENDIAN );
+    } catch ( IOException | RuntimeException ex ) {
+      file.close();
+      throw ex;
+    }
+    buffer.putLong( VERSION_OFFSET, VERSION );
+    buffer.putLong( CAPACITY_OFFSET, capacity );
+    buffer.putLong( PID_OFFSET, ProcessHandle.current().pid() );
+    buffer.putLong( CREATED_OFFSET, System.currentTimeMillis() );
+    LONGS.setRelease( (ByteBuffer)buffer, MAGIC_OFFSET, MAGIC );
+  }
+
+  /**
+   * @return the number of slots in the file.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Get the slot for a name, creating it if this is the first time the name is used.
+   * <p>
+   * @param name the name, at most {@value SharedStatsLayout#NAME_MAX} bytes of UTF-8.
+   * <p>
+   * @return the slot.
+   */
+  public SharedStatsSlot slot( String name ) {
+    byte[] bytes = name.getBytes( StandardCharsets.UTF_8 );
+    if ( bytes.length > NAME_MAX ) {
+      throw new IllegalArgumentException( "name longer than " + NAME_MAX + " bytes: " + name );
+    }
+    slotLock.lock();
+    try {
+      SharedStatsSlot slot = slots.get( name );
+      if ( slot == null ) {
+        int index = slots.size();
+        if ( index == capacity ) {
+          throw new IllegalStateException( "all " + capacity + " slots are in use" );
+        }
+        int offset = slotOffset( index );
+        buffer.putLong( offset + MIN_OFFSET, Long.MAX_VALUE );
+        buffer.putLong( offset + NAME_LENGTH_OFFSET, bytes.length );
+        for ( int i = 0; i < bytes.length; i++ ) {
+          buffer.put( offset + NAME_OFFSET + i, bytes[i] );
+        }
+        // publish the slot to readers once it is initialized.
+        LONGS.setRelease( (ByteBuffer)buffer, USED_OFFSET, (long)index + 1 );
+        slot = new SharedStatsSlot( buffer, offset, name );
+        slots.put( name, slot );
+      }
+      return slot;
+    } finally {
+      slotLock.unlock();
+    }
+  }
+
+  /**
+   * Create a {@link Timing} that also publishes its samples to the slot for its name.
+   * <p>
+   * @param name the name of the timed operation and of the slot.
+   * <p>
+   * @return the timing.
+   */
+  public Timing timing( String name ) {
+    return new Timing( name, false, slot( name ) );
+  }
+
+  /**
+   * Write the changes to the storage device. Not needed for readers on the same host, they see the mapped pages.
+   */
+  public void force() {
+    buffer.force();
+  }
+
+  /**
+   * Close the file, the slots stay usable.
+   * <p>
+   * @throws IOException if the file could not be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.time;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.Procedure;
+
+/**
+ * Times nested operations and aggregates them into a tree of {@link Timing}s. Each thread keeps a stack of the spans it is currently
+ * inside of, so a span started while another is open becomes a child of that span. Each node of the tree records the total time of its
+ * span and the self time, i.e. the total less the time spent in child spans.
+ * <p>
+ * Once the tree has seen a given call path, timing that path again does not allocate.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class CallTree {
+
+  private static final int INITIAL_DEPTH = 16;
+  private final Node root = new Node( "root", null );
+  private final ThreadLocal<SpanStack> spanStack = new ThreadLocal<SpanStack>() {
+    @Override
+    protected SpanStack initialValue() {
+      return new SpanStack();
+    }
+  };
+
+  /**
+   * Times the operation, i.e. {@link Lambda#func()}, as a span named {@code name} nested in the current span of this thread.
+   * <p>
+   * @param <T>      the return type of the operation.
+   * @param name     the name of the span.
+   * @param callBack the operation.
+   * <p>
+   * @return the value returned by the operation.
+   */
+  public <T> T time( String name, Lambda<T> callBack ) {
+    SpanStack stack = spanStack.get();
+    stack.enter( name );
+    try {
+      return callBack.func();
+    } finally {
+      stack.exit();
+    }
+  }
+
+  /**
+   * Times the operation, i.e. {@link Procedure#func()}, as a span named {@code name} nested in the current span of this thread.
+   * <p>
+   * @param name     the name of the span.
+   * @param callBack the operation.
+   */
+  public void time( String name, Procedure callBack ) {
+    SpanStack stack = spanStack.get();
+    stack.enter( name );
+    try {
+      callBack.func();
+    } finally {
+      stack.exit();
+    }
+  }
+
+  /**
+   * Opens a span named {@code name} nested in the current span of this thread. Every call must be matched by a call to {@link #exit()}
+   * on the same thread, normally in a finally block.
+   * <p>
+   * @param name the name of the span.
+   */
+  public void enter( String name ) {
+    spanStack.get().enter( name );
+  }
+
+  /**
+   * Closes the current span of this thread and records its timings.
+   * <p>
+   * @throws IllegalStateException if the current thread has no open span.
+   */
+  public void exit() {
+    spanStack.get().exit();
+  }
+
+  /**
+   * @return the root of the tree, the spans opened outside of any other span are its children.
+   */
+  public Node getRoot() {
+    return root;
+  }
+
+  /**
+   * @return a string representing the tree with the count, total, and self time of each span.
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder( "CallTree {\n" );
+    for ( Node child : root.getChildren() ) {
+      child.appendTo( sb, 1 );
+    }
+    return sb.append( "}" ).toString();
+  }
+
+  /**
+   * A node in the call tree, i.e. a span name reached through a particular path of parent spans.
+   */
+  public static class Node {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private final String name;
+    private final Node parent;
+    private final Timing total = new Timing();
+    private final Timing self = new Timing();
+    private volatile Node[] children = NO_CHILDREN;
+
+    Node( String name, Node parent ) {
+      this.name = name;
+      this.parent = parent;
+    }
+
+    /**
+     * @return the name of the span.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the parent node, null for the root.
+     */
+    public Node getParent() {
+      return parent;
+    }
+
+    /**
+     * @return the timing of the whole span, including child spans.
+     */
+    public Timing getTotal() {
+      return total;
+    }
+
+    /**
+     * @return the timing of the span excluding the time spent in child spans.
+     */
+    public Timing getSelf() {
+      return self;
+    }
+
+    /**
+     * @return the child nodes in the order they were first seen.
+     */
+    public List<Node> getChildren() {
+      return Collections.unmodifiableList( Arrays.asList( children ) );
+    }
+
+    /**
+     * @param name the name of the child span.
+     * <p>
+     * @return the child node with the given name or null if that span has not been seen yet.
+     */
+    public Node getChild( String name ) {
+      for ( Node child : children ) {
+        if ( child.name == name || child.name.equals( name ) ) {
+          return child;
+        }
+      }
+      return null;
+    }
+
+    Node child( String name ) {
+      Node child = getChild( name );
+      if ( child == null ) {
+        child = addChild( name );
+      }
+      return child;
+    }
+
+    private synchronized Node addChild( String name ) {
+      Node child = getChild( name );
+      if ( child == null ) {
+        child = new Node( name, this );
+        Node[] newChildren = Arrays.copyOf( children, children.length + 1 );
+        newChildren[children.length] = child;
+        children = newChildren;
+      }
+      return child;
+    }
+
+    private void appendTo( StringBuilder sb, int depth ) {
+      for ( int i = 0; i < depth; i++ ) {
+        sb.append( '\t' );
+      }
+      sb.append( String.format( "%s: count = %d, total = %d, self = %d\n", name, total.getCount(), total.getTotal(), self.getTotal() ) );
+      for ( Node child : children ) {
+        child.appendTo( sb, depth + 1 );
+      }
+    }
+  }
+
+  private class SpanStack {
+
+    private Node[] nodes = new Node[INITIAL_DEPTH];
+    private long[] starts = new long[INITIAL_DEPTH];
+    private long[] childNanos = new long[INITIAL_DEPTH];
+    private int depth = 0;
+
+    void enter( String name ) {
+      if ( depth == nodes.length ) {
+        nodes = Arrays.copyOf( nodes, depth * 2 );
+        starts = Arrays.copyOf( starts, depth * 2 );
+        childNanos = Arrays.copyOf( childNanos, depth * 2 );
+      }
+      Node parent = depth == 0 ? root : nodes[depth - 1];
+      nodes[depth] = parent.child( name );
+      childNanos[depth] = 0L;
+      starts[depth] = System.nanoTime();
+      depth += 1;
+    }
+
+    void exit() {
+      long end = System.nanoTime();
+      if ( depth == 0 ) {
+        throw new IllegalStateException( "no span is open on the current thread" );
+      }
+      depth -= 1;
+      Node node = nodes[depth];
+      nodes[depth] = null;
+      long start = starts[depth];
+      node.total.recordSample( start, end );
+      node.self.recordSample( start + childNanos[depth], end );
+      if ( depth > 0 ) {
+        childNanos[depth - 1] += end - start;
+      }
+    }
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.time;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks how many operations are in progress at once. The in flight count is a single {@link AtomicLong} so the count returned by
+ * entering an operation is exact and can raise the peak, the busy time is kept in striped {@link LongAdder}s.
+ * <p>
+ * The average concurrency of a {@link Snapshot} is derived with Little's law, L = &lambda;W: the time the operations spent in progress during
+ * the window divided by the length of the window. An operation that spans windows is split between them, each window is only credited
+ * with the part of the operation that falls inside it.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class ConcurrencyGauge {
+
+  private final AtomicLong inFlight = new AtomicLong( 0 );
+  private final LongAdder busyNanos = new LongAdder();
+  private final LongAdder inFlightStartSum = new LongAdder();
+  private final AtomicLong peak = new AtomicLong( 0 );
+  private final ReentrantLock snapshotLock = new ReentrantLock();
+  private volatile long windowStart = System.nanoTime();
+
+  /**
+   * Called when an operation starts.
+   * <p>
+   * @param startNano the start of the operation in nanoseconds.
+   */
+  public void enter( long startNano ) {
+    inFlightStartSum.add( startNano );
+    long current = inFlight.incrementAndGet();
+    long currentPeak;
+    while (current > (currentPeak = peak.get())) {
+      if ( peak.compareAndSet( currentPeak, current ) ) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Called when an operation that was {@link #enter(long) entered} completes.
+   * <p>
+   * @param startNano the start of the operation in nanoseconds.
+   * @param endNano   the end of the operation in nanoseconds.
+   */
+  public void exit( long startNano, long endNano ) {
+    inFlight.decrementAndGet();
+    inFlightStartSum.add( -startNano );
+    // the part of the operation before the window started was credited to the earlier windows by snapshot().
+    busyNanos.add( endNano - Math.max( startNano, windowStart ) );
+  }
+
+  /**
+   * @return the number of operations currently in progress.
+   */
+  public long getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return the most operations in progress at once since the last snapshot.
+   */
+  public long getPeak() {
+    return peak.get();
+  }
+
+  /**
+   * Take a snapshot of the gauge and start a new window, the peak is reset to the current in flight count.
+   * <p>
+   * @return the snapshot of the window that just ended.
+   */
+  public Snapshot snapshot() {
+    snapshotLock.lock();
+    try {
+      long now = System.nanoTime();
+      long current = inFlight.get();
+      long window = now - windowStart;
+      // the operations still in flight are credited with the time they have run so far within this window, the rest of their time
+      // goes to the window they complete in. The count and sum are not read atomically, so the credit is kept within its bounds.
+      long inFlightBusy = Math.max( 0, Math.min( current * now - inFlightStartSum.sum(), current * window ) );
+      windowStart = now;
+      long windowPeak = peak.getAndSet( current );
+      long busy = busyNanos.sumThenReset() + inFlightBusy;
+      return new Snapshot( current, Math.max( windowPeak, current ), window <= 0 ? 0.0 : (double)busy / window, window );
+    } finally {
+      snapshotLock.unlock();
+    }
+  }
+
+  /**
+   * @return a string representing the current in flight count and peak.
+   */
+  @Override
+  public String toString() {
+    return String.format( "ConcurrencyGauge {\n\tin flight = %d\n\tpeak = %d\n}", getInFlight(), getPeak() );
+  }
+
+  /**
+   * The state of a {@link ConcurrencyGauge} over a window of time.
+   */
+  public static class Snapshot {
+
+    private final long inFlight;
+    private final long peak;
+    private final double averageConcurrency;
+    private final long windowNanos;
+
+    Snapshot( long inFlight, long peak, double averageConcurrency, long windowNanos ) {
+      this.inFlight = inFlight;
+      this.peak = peak;
+      this.averageConcurrency = averageConcurrency;
+      this.windowNanos = windowNanos;
+    }
+
+    /**
+     * @return the number of operations in progress when the snapshot was taken.
+     */
+    public long getInFlight() {
+      return inFlight;
+    }
+
+    /**
+     * @return the most operations in progress at once during the window.
+     */
+    public long getPeak() {
+      return peak;
+    }
+
+    /**
+     * @return the time weighted average number of operations in progress during the window.
+     */
+    public double getAverageConcurrency() {
+      return averageConcurrency;
+    }
+
+    /**
+     * @return the length of the window in nanoseconds.
+     */
+    public long getWindowNanos() {
+      return windowNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format( "Snapshot {\n\tin flight = %d\n\tpeak = %d\n\taverage concurrency = %.2f\n\twindow = %d\n}", inFlight, peak,
+                            averageConcurrency, windowNanos );
+    }
+  }
+}
@@ -15,23 +15,98 @@
  */
 package com.bluesoft.endurance.instrumentation.time;
 
-import java.util.LinkedList;
-import java.util.List;
+import com.bluesoft.endurance.instrumentation.BooleanLambda;
+import com.bluesoft.endurance.instrumentation.DoubleLambda;
+import com.bluesoft.endurance.instrumentation.IntLambda;
 import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.LongLambda;
 import com.bluesoft.endurance.instrumentation.Procedure;
-import com.bluesoft.endurance.util.ReentrantReadWriteLockHelper;
+import com.bluesoft.endurance.instrumentation.jfr.TimedOperationEvent;
+import com.bluesoft.endurance.instrumentation.shm.SharedStatsSlot;
+import com.bluesoft.endurance.util.SeqLockValue;
 
 /**
- * A simple class that times operations and stores the samples in memory. Mostly for Test usage not Production code. See bluesoft-metrics for a
- * production class metrics library.
+ * A simple class that times operations and keeps running statistics about the samples in memory. Recording a sample does not allocate,
+ * so a Timing can be left in place on hot paths. The statistics are kept in a {@link SeqLockValue}, so reading them never writes shared
+ * memory and does not slow down the threads recording samples. See bluesoft-metrics for a production class metrics library.
+ * <p>
+ * When a JDK Flight Recorder recording with the {@link TimedOperationEvent} enabled is running, the operations timed by
+ * {@link #time(Lambda)}, {@link #time(Procedure)} and the primitive overloads of {@code time} that pass the event's threshold are also emitted
+ * as events named after the Timing.
+ * <p>
+ * A Timing created with a {@link SharedStatsSlot}, see {@link com.bluesoft.endurance.instrumentation.shm.SharedStatsWriter#timing(String)},
+ * also publishes every sample to a memory mapped file that another process can read.
  * <p>
  * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
  * @since 1.0.0
  */
 public class Timing {
 
-  private final ReentrantReadWriteLockHelper lock = new ReentrantReadWriteLockHelper();
-  private List<Sample> samples = new LinkedList<>();
+  private static final int COUNT = 0;
+  private static final int MIN = 1;
+  private static final int MAX = 2;
+  private static final int TOTAL = 3;
+  // running mean and sum of squared differences from the mean, see Welford's online algorithm.
+  private static final int MEAN = 4;
+  private static final int M2 = 5;
+  private final SeqLockValue stats = new SeqLockValue( 6 );
+  private final String name;
+  private final ConcurrencyGauge concurrency;
+  private final SharedStatsSlot shared;
+
+  /**
+   * Create a Timing that does not track concurrency.
+   */
+  public Timing() {
+    this( null, false );
+  }
+
+  /**
+   * Create a Timing.
+   * <p>
+   * @param trackConcurrency true if {@link #time(Lambda)} and {@link #time(Procedure)} should track how many operations are in progress at
+   *                         once, see {@link #getConcurrency()}.
+   */
+  public Timing( boolean trackConcurrency ) {
+    this( null, trackConcurrency );
+  }
+
+  /**
+   * Create a named Timing that does not track concurrency.
+   * <p>
+   * @param name the name of the timed operation, used for the flight recorder events.
+   */
+  public Timing( String name ) {
+    this( name, false );
+  }
+
+  /**
+   * Create a named Timing.
+   * <p>
+   * @param name             the name of the timed operation, used for the flight recorder events.
+   * @param trackConcurrency true if {@link #time(Lambda)} and {@link #time(Procedure)} should track how many operations are in progress at
+   *                         once, see {@link #getConcurrency()}.
+   */
+  public Timing( String name, boolean trackConcurrency ) {
+    this( name, trackConcurrency, null );
+  }
+
+  /**
+   * Create a named Timing that publishes its samples.
+   * <p>
+   * @param name             the name of the timed operation, used for the flight recorder events.
+   * @param trackConcurrency true if {@link #time(Lambda)} and {@link #time(Procedure)} should track how many operations are in progress at
+   *                         once, see {@link #getConcurrency()}.
+   * @param shared           the slot of a shared statistics file the samples are also recorded in, may be null.
+   */
+  public Timing( String name, boolean trackConcurrency, SharedStatsSlot shared ) {
+    this.name = name;
+    this.concurrency = trackConcurrency ? new ConcurrencyGauge() : null;
+    this.shared = shared;
+    stats.beginWrite();
+    stats.set( MIN, Long.MAX_VALUE );
+    stats.endWrite();
+  }
 
   /**
    * Times the operation, i.e. {@link Lambda#func()}
@@ -43,11 +118,79 @@ public class Timing {
    */
   public <T> T time( Lambda<T> callBack ) {
     long start = System.nanoTime();
+    TimedOperationEvent event = beginOperation( start );
+    try {
+      return callBack.func();
+    } finally {
+      endOperation( start, event );
+    }
+  }
+
+  /**
+   * Times the operation, i.e. {@link LongLambda#func()}, without boxing its result.
+   * <p>
+   * @param callBack the operation.
+   * <p>
+   * @return the value returned by the operation.
+   */
+  public long time( LongLambda callBack ) {
+    long start = System.nanoTime();
+    TimedOperationEvent event = beginOperation( start );
+    try {
+      return callBack.func();
+    } finally {
+      endOperation( start, event );
+    }
+  }
+
+  /**
+   * Times the operation, i.e. {@link IntLambda#func()}, without boxing its result.
+   * <p>
+   * @param callBack the operation.
+   * <p>
+   * @return the value returned by the operation.
+   */
+  public int time( IntLambda callBack ) {
+    long start = System.nanoTime();
+    TimedOperationEvent event = beginOperation( start );
+    try {
+      return callBack.func();
+    } finally {
+      endOperation( start, event );
+    }
+  }
+
+  /**
+   * Times the operation, i.e. {@link DoubleLambda#func()}, without boxing its result.
+   * <p>
+   * @param callBack the operation.
+   * <p>
+   * @return the value returned by the operation.
+   */
+  public double time( DoubleLambda callBack ) {
+    long start = System.nanoTime();
+    TimedOperationEvent event = beginOperation( start );
+    try {
+      return callBack.func();
+    } finally {
+      endOperation( start, event );
+    }
+  }
+
+  /**
+   * Times the operation, i.e. {@link BooleanLambda#func()}, without boxing its result.
+   * <p>
+   * @param callBack the operation.
+   * <p>
+   * @return the value returned by the operation.
+   */
+  public boolean time( BooleanLambda callBack ) {
+    long start = System.nanoTime();
+    TimedOperationEvent event = beginOperation( start );
     try {
       return callBack.func();
     } finally {
-      long end = System.nanoTime();
-      recordSample( start, end );
+      endOperation( start, event );
     }
   }
 
@@ -57,13 +200,31 @@ public class Timing {
    * @param callBack the operation.
    */
   public void time( final Procedure callBack ) {
-    time( new Lambda<Void>() {
-      @Override
-      public Void func() {
-        callBack.func();
-        return null;
-      }
-    } );
+    long start = System.nanoTime();
+    TimedOperationEvent event = beginOperation( start );
+    try {
+      callBack.func();
+    } finally {
+      endOperation( start, event );
+    }
+  }
+
+  private TimedOperationEvent beginOperation( long start ) {
+    if ( concurrency != null ) {
+      concurrency.enter( start );
+    }
+    return TimedOperationEvent.start( name );
+  }
+
+  private void endOperation( long start, TimedOperationEvent event ) {
+    long end = System.nanoTime();
+    recordSample( start, end );
+    if ( concurrency != null ) {
+      concurrency.exit( start, end );
+    }
+    if ( event != null ) {
+      event.finish();
+    }
   }
 
   /**
@@ -73,92 +234,97 @@ public class Timing {
    * @param endNano   the end of the operation in nanoseconds since the beginning of the epoch.
    */
   public void recordSample( final long startNano, final long endNano ) {
-    lock.writeLock( new Procedure() {
-      @Override
-      public void func() {
-        samples.add( new Sample( startNano, endNano ) );
-      }
-    } );
+    final long duration = endNano - startNano;
+    stats.beginWrite();
+    try {
+      long count = stats.get( COUNT ) + 1;
+      double mean = stats.getDouble( MEAN );
+      double delta = duration - mean;
+      mean += delta / count;
+      stats.set( COUNT, count );
+      stats.set( TOTAL, stats.get( TOTAL ) + duration );
+      stats.set( MIN, Math.min( stats.get( MIN ), duration ) );
+      stats.set( MAX, Math.max( stats.get( MAX ), duration ) );
+      stats.setDouble( MEAN, mean );
+      stats.setDouble( M2, stats.getDouble( M2 ) + delta * (duration - mean) );
+    } finally {
+      stats.endWrite();
+    }
+    if ( shared != null ) {
+      shared.record( duration );
+    }
+  }
+
+  /**
+   * @return the name of the timed operation, may be null.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the concurrency of the timed operations or null if this Timing does not track concurrency.
+   */
+  public ConcurrencyGauge getConcurrency() {
+    return concurrency;
   }
 
   /**
    * @return the count of samples.
    */
   public int getCount() {
-    return samples.size();
+    return (int)stats.get( COUNT );
+  }
+
+  /**
+   * @return the sum of the timings for all samples.
+   */
+  public long getTotal() {
+    return stats.get( TOTAL );
   }
 
   /**
    * @return the maximum timing for all samples.
    */
   public long getMax() {
-    return lock.readLock( new Lambda<Long>() {
-      @Override
-      public Long func() {
-        long max = 0;
-        for ( Sample s : samples ) {
-          max = Math.max( max, s.end - s.start );
-        }
-        return max;
-      }
-    } );
+    return stats.get( MAX );
   }
 
   /**
    * @return the minimum timing for all samples.
    */
   public long getMin() {
-    return lock.readLock( new Lambda<Long>() {
-      @Override
-      public Long func() {
-        long min = Long.MAX_VALUE;
-        for ( Sample s : samples ) {
-          min = Math.min( min, s.end - s.start );
-        }
-        return min;
-      }
-    } );
+    return stats.get( MIN );
   }
 
   /**
    * @return the average timing for all samples.
    */
   public long getAverage() {
-    return lock.readLock( new Lambda<Long>() {
-      @Override
-      public Long func() {
-        if ( samples.isEmpty() ) {
-          return 0L;
-        }
-        long total = 0;
-        for ( Sample s : samples ) {
-          total += s.end - s.start;
-        }
-        return total / samples.size();
-      }
-    } );
+    long version;
+    long count;
+    long total;
+    do {
+      version = stats.readBegin();
+      count = stats.get( COUNT );
+      total = stats.get( TOTAL );
+    } while (!stats.validate( version ));
+    return count == 0 ? 0L : total / count;
   }
 
   /**
    * @return the standard deviation for all samples.
    */
   public long getStandardDev() {
-    return lock.readLock( new Lambda<Long>() {
-      @Override
-      public Long func() {
-        if ( samples.isEmpty() ) {
-          return 0L;
-        }
-        long average = getAverage();
-        long total = 0;
-        for ( Sample s : samples ) {
-          long variance = (s.end - s.start) - average;
-          variance = variance * variance;
-          total += variance;
-        }
-        return (long)Math.sqrt( total / samples.size() );
-      }
-    } );
+    long version;
+    long count;
+    double m2;
+    do {
+      version = stats.readBegin();
+      count = stats.get( COUNT );
+      m2 = stats.getDouble( M2 );
+    } while (!stats.validate( version ));
+    return count == 0 ? 0L : (long)Math.sqrt( m2 / count );
   }
 
   /**
@@ -166,34 +332,11 @@ public class Timing {
    */
   @Override
   public String toString() {
+    long[] snapshot = new long[stats.size()];
+    stats.snapshot( snapshot );
+    long count = snapshot[COUNT];
     return String.format( "Timing {\n\tcount = %d\n\taverage = %d\n\tmin = %d\n\tmax = %d\n\tstandard deviation = %d\n}",
-                          getCount(), getAverage(), getMin(), getMax(), getStandardDev() );
-  }
-
-  private class Sample {
-
-    private long start;
-    private long end;
-
-    public Sample( long start, long end ) {
-      this.start = start;
-      this.end = end;
-    }
-
-    public long getStart() {
-      return start;
-    }
-
-    public void setStart( long start ) {
-      this.start = start;
-    }
-
-    public long getEnd() {
-      return end;
-    }
-
-    public void setEnd( long end ) {
-      this.end = end;
-    }
+                          count, count == 0 ? 0L : snapshot[TOTAL] / count, snapshot[MIN], snapshot[MAX],
+                          count == 0 ? 0L : (long)Math.sqrt( Double.longBitsToDouble( snapshot[M2] ) / count ) );
   }
 }
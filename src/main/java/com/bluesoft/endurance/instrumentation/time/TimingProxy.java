@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.time;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Wraps an implementation of an interface in a dynamic proxy that times every call to the interface's methods. There is one
+ * {@link Timing} per method. Calls are dispatched to the target through {@link MethodHandle}s that are bound when the proxy is created,
+ * so there is no reflective {@link Method#invoke(Object, Object...)} on the call path and exceptions thrown by the target reach the
+ * caller unwrapped.
+ * <p>
+ * @param <I> the interface type.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class TimingProxy<I> {
+
+  private static final Object[] NO_ARGS = new Object[0];
+  private static final MethodType DISPATCH_TYPE = MethodType.methodType( Object.class, Object[].class );
+  private final I proxy;
+  private final Map<Method, Timing> timings;
+
+  private TimingProxy( Class<I> type, I target ) {
+    Map<Method, Timing> methodTimings = new LinkedHashMap<>();
+    Map<Method, Dispatch> dispatch = new HashMap<>();
+    try {
+      for ( Method method : type.getMethods() ) {
+        if ( Modifier.isStatic( method.getModifiers() ) || isObjectMethod( method ) ) {
+          continue;
+        }
+        Timing timing = new Timing( type.getSimpleName() + "#" + method.getName() );
+        methodTimings.put( method, timing );
+        dispatch.put( method, new Dispatch( bind( method, target ), timing ) );
+      }
+      for ( String name : new String[] { "equals", "hashCode", "toString" } ) {
+        Method method = name.equals( "equals" ) ? Object.class.getMethod( name, Object.class ) : Object.class.getMethod( name );
+        dispatch.put( method, new Dispatch( bind( method, target ), null ) );
+      }
+    } catch ( NoSuchMethodException | IllegalAccessException ex ) {
+      throw new IllegalArgumentException( "unable to bind the methods of " + type.getName(), ex );
+    }
+    this.timings = Collections.unmodifiableMap( methodTimings );
+    this.proxy = type.cast( Proxy.newProxyInstance( type.getClassLoader(), new Class<?>[] { type }, new Handler( dispatch ) ) );
+  }
+
+  /**
+   * Create a timed view of the target.
+   * <p>
+   * @param <I>    the interface type.
+   * @param type   the interface to instrument.
+   * @param target the implementation that calls are delegated to.
+   * <p>
+   * @return the proxy holder, see {@link #getProxy()} and {@link #getTimings()}.
+   */
+  public static <I> TimingProxy<I> instrument( Class<I> type, I target ) {
+    if ( !type.isInterface() ) {
+      throw new IllegalArgumentException( type.getName() + " is not an interface." );
+    }
+    if ( target == null ) {
+      throw new IllegalArgumentException( "target must not be null." );
+    }
+    return new TimingProxy<>( type, target );
+  }
+
+  /**
+   * @return the instrumented view of the target.
+   */
+  public I getProxy() {
+    return proxy;
+  }
+
+  /**
+   * @return the timing for each method of the interface.
+   */
+  public Map<Method, Timing> getTimings() {
+    return timings;
+  }
+
+  /**
+   * @param method the interface method.
+   * <p>
+   * @return the timing for the method or null if the method is not part of the interface.
+   */
+  public Timing getTiming( Method method ) {
+    return timings.get( method );
+  }
+
+  private static boolean isObjectMethod( Method method ) {
+    try {
+      Object.class.getMethod( method.getName(), method.getParameterTypes() );
+      return true;
+    } catch ( NoSuchMethodException ex ) {
+      return false;
+    }
+  }
+
+  private static MethodHandle bind( Method method, Object target ) throws IllegalAccessException {
+    if ( !Modifier.isPublic( method.getDeclaringClass().getModifiers() ) ) {
+      method.setAccessible( true );
+    }
+    return MethodHandles.lookup().unreflect( method )
+            .bindTo( target )
+            .asSpreader( Object[].class, method.getParameterTypes().length )
+            .asType( DISPATCH_TYPE );
+  }
+
+  private static class Dispatch {
+
+    private final MethodHandle handle;
+    private final Timing timing;
+
+    Dispatch( MethodHandle handle, Timing timing ) {
+      this.handle = handle;
+      this.timing = timing;
+    }
+  }
+
+  private static class Handler implements InvocationHandler {
+
+    private final Map<Method, Dispatch> dispatch;
+
+    Handler( Map<Method, Dispatch> dispatch ) {
+      this.dispatch = dispatch;
+    }
+
+    @Override
+    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+      Dispatch d = dispatch.get( method );
+      if ( d == null ) {
+        throw new UnsupportedOperationException( "no dispatch for " + method );
+      }
+      Object[] arguments = args == null ? NO_ARGS : args;
+      if ( d.timing == null ) {
+        return d.handle.invokeExact( arguments );
+      }
+      long start = System.nanoTime();
+      try {
+        return d.handle.invokeExact( arguments );
+      } finally {
+        long end = System.nanoTime();
+        d.timing.recordSample( start, end );
+      }
+    }
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.jfr.TimedOperationEvent;
+import com.bluesoft.endurance.instrumentation.time.ConcurrencyGauge;
+import com.bluesoft.endurance.instrumentation.time.Timing;
+
+/**
+ * Limits the number of calls in progress at once to protect a backend, and adapts the limit to the latency of the calls. A call is only
+ * let through if a permit is free, the permits are counted with a compare and set on a single counter so an excess call is rejected at
+ * once, without waiting or locking.
+ * <p>
+ * The calls that succeed are timed by the limiter's own {@link Timing}, a call that fails fast says nothing about the latency of the
+ * backend and would drag the minimum down, collapsing the limit. Every call counts towards the concurrency though. Once a window of at least as many calls as the limit has completed, the limit
+ * is recomputed with a gradient: the ratio of the minimum latency, i.e. the latency of the backend without load, to the average latency
+ * of the window. While the window is no slower than the tolerance times the minimum the gradient is 1 and the limit grows by its square
+ * root, the queue the backend is allowed. Once the backend slows down, queueing requests, the gradient drops below 1, to no less than
+ * 0.5, and the limit shrinks with it. The limit does not grow while the callers do not use half of it, and every change is smoothed.
+ * <p>
+ * The minimum latency is only as good as the latest samples, so every {@value #REBASE_WINDOWS} windows the limiter starts a new Timing
+ * and learns the minimum again, as a TCP Vegas sender probes its base round trip time.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class AdaptiveConcurrencyLimiter {
+
+  /**
+   * The fewest calls in a window.
+   */
+  public static final int MIN_WINDOW = 10;
+  /**
+   * The number of windows after which the minimum latency is learned again.
+   */
+  public static final int REBASE_WINDOWS = 100;
+  private static final double SMOOTHING = 0.2;
+  private final String name;
+  private final int minLimit;
+  private final int maxLimit;
+  private final double tolerance;
+  private final AtomicInteger inFlight = new AtomicInteger( 0 );
+  private final LongAdder rejected = new LongAdder();
+  private volatile int limit;
+  private volatile Timing timing;
+  // only written while holding the update lock.
+  private final ReentrantLock updateLock = new ReentrantLock();
+  private double estimatedLimit;
+  // volatile as well, every completed call reads it without the lock to decide if the window may be closed.
+  private volatile long windowStartCount = 0;
+  private long windowStartTotal = 0;
+  private int windows = 0;
+
+  /**
+   * Create a limiter that starts at 20 calls, stays between 1 and 1000, and tolerates twice the minimum latency.
+   * <p>
+   * @param name the name of the limiter, used for its Timing.
+   */
+  public AdaptiveConcurrencyLimiter( String name ) {
+    this( name, 20, 1, 1000, 2.0 );
+  }
+
+  /**
+   * Create a limiter.
+   * <p>
+   * @param name         the name of the limiter, used for its Timing.
+   * @param initialLimit the limit to start with.
+   * @param minLimit     the lowest limit.
+   * @param maxLimit     the highest limit.
+   * @param tolerance    how many times the minimum latency the average latency may be before the limit shrinks, at least 1.
+   */
+  public AdaptiveConcurrencyLimiter( String name, int initialLimit, int minLimit, int maxLimit, double tolerance ) {
+    if ( minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit || tolerance < 1.0 ) {
+      throw new IllegalArgumentException( "limits must satisfy 1 <= min <= initial <= max and the tolerance must be at least 1" );
+    }
+    this.name = name;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.tolerance = tolerance;
+    this.limit = initialLimit;
+    this.estimatedLimit = initialLimit;
+    this.timing = new Timing( name, true );
+  }
+
+  /**
+   * Run a call if a permit is free.
+   * <p>
+   * @param <T>  the return type of the call.
+   * @param todo the call.
+   * <p>
+   * @return the value returned by the call.
+   * <p>
+   * @throws RejectedExecutionException if the limit is reached.
+   */
+  public <T> T call( Lambda<T> todo ) {
+    if ( !tryAcquire() ) {
+      rejected.increment();
+      throw new RejectedExecutionException( "concurrency limit of " + limit + " reached" );
+    }
+    return run( todo );
+  }
+
+  /**
+   * Run a call if a permit is free, or a fallback if the limit is reached.
+   * <p>
+   * @param <T>      the return type of the call.
+   * @param todo     the call.
+   * @param fallback run instead of the call when the limit is reached, e.g. to serve a stale value or a default.
+   * <p>
+   * @return the value returned by the call or the fallback.
+   */
+  public <T> T call( Lambda<T> todo, Lambda<T> fallback ) {
+    if ( !tryAcquire() ) {
+      rejected.increment();
+      return fallback.func();
+    }
+    return run( todo );
+  }
+
+  private boolean tryAcquire() {
+    for ( ;; ) {
+      int current = inFlight.get();
+      if ( current >= limit ) {
+        return false;
+      }
+      if ( inFlight.compareAndSet( current, current + 1 ) ) {
+        return true;
+      }
+    }
+  }
+
+  private <T> T run( Lambda<T> todo ) {
+    Timing current = timing;
+    ConcurrencyGauge concurrency = current.getConcurrency();
+    long start = System.nanoTime();
+    concurrency.enter( start );
+    TimedOperationEvent event = TimedOperationEvent.start( name );
+    boolean succeeded = false;
+    try {
+      T value = todo.func();
+      succeeded = true;
+      return value;
+    } finally {
+      long end = System.nanoTime();
+      concurrency.exit( start, end );
+      if ( event != null ) {
+        event.finish();
+      }
+      inFlight.decrementAndGet();
+      if ( succeeded ) {
+        current.recordSample( start, end );
+        update( current );
+      }
+    }
+  }
+
+  private void update( Timing current ) {
+    if ( current.getCount() - windowStartCount < Math.max( MIN_WINDOW, limit ) || !updateLock.tryLock() ) {
+      return;
+    }
+    try {
+      long count = current.getCount();
+      long samples = count - windowStartCount;
+      // another thread closed the window or started a new timing.
+      if ( current != timing || samples < Math.max( MIN_WINDOW, limit ) ) {
+        return;
+      }
+      long total = current.getTotal();
+      long average = Math.max( 1L, (total - windowStartTotal) / samples );
+      ConcurrencyGauge.Snapshot window = current.getConcurrency().snapshot();
+      double gradient = Math.max( 0.5, Math.min( 1.0, tolerance * current.getMin() / average ) );
+      double newLimit = estimatedLimit * gradient + Math.sqrt( estimatedLimit );
+      if ( window.getPeak() < estimatedLimit / 2 ) {
+        // the callers are not using the limit, so its latency says nothing about a higher one.
+        newLimit = Math.min( newLimit, estimatedLimit );
+      }
+      estimatedLimit = (1.0 - SMOOTHING) * estimatedLimit + SMOOTHING * newLimit;
+      estimatedLimit = Math.max( minLimit, Math.min( maxLimit, estimatedLimit ) );
+      limit = (int)estimatedLimit;
+      windowStartCount = count;
+      windowStartTotal = total;
+      if ( ++windows == REBASE_WINDOWS ) {
+        windows = 0;
+        windowStartCount = 0;
+        windowStartTotal = 0;
+        timing = new Timing( name, true );
+      }
+    } finally {
+      updateLock.unlock();
+    }
+  }
+
+  /**
+   * @return the current limit.
+   */
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * @return the number of calls in progress.
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return the number of calls rejected because the limit was reached.
+   */
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  /**
+   * @return the timing of the successful calls since the minimum latency was last learned again.
+   */
+  public Timing getTiming() {
+    return timing;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link ReentrantLock} that reports to a {@link ContentionTracker} whenever a thread has to wait for it. An acquisition that succeeds
+ * right away costs one extra {@link #tryLock()}.
+ * <p>
+ * @param <V> the type of the value the lock belongs to.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+class ContendedLock<V> extends ReentrantLock {
+
+  private static final long serialVersionUID = 1L;
+  private final transient V value;
+  private final transient ContentionTracker<V> tracker;
+
+  ContendedLock( V value, ContentionTracker<V> tracker ) {
+    this.value = value;
+    this.tracker = tracker;
+  }
+
+  @Override
+  public void lock() {
+    if ( tryLock() ) {
+      return;
+    }
+    long start = System.nanoTime();
+    super.lock();
+    tracker.recordWait( value, start, System.nanoTime() );
+  }
+
+  @Override
+  public void lockInterruptibly() throws InterruptedException {
+    if ( tryLock() ) {
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      super.lockInterruptibly();
+    } finally {
+      tracker.recordWait( value, start, System.nanoTime() );
+    }
+  }
+
+  @Override
+  public boolean tryLock( long timeout, TimeUnit unit ) throws InterruptedException {
+    if ( tryLock() ) {
+      return true;
+    }
+    long start = System.nanoTime();
+    try {
+      return super.tryLock( timeout, unit );
+    } finally {
+      tracker.recordWait( value, start, System.nanoTime() );
+    }
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.bluesoft.endurance.instrumentation.time.Timing;
+
+/**
+ * Tracks the values whose locks threads most often had to wait for, in bounded memory, using the space-saving algorithm: at most
+ * {@code capacity} values are tracked and a wait for an untracked value replaces the tracked value with the fewest waits, inheriting its
+ * count as the error of the estimate. Any value that accounts for more than 1/capacity of all the waits is guaranteed to be tracked.
+ * <p>
+ * Only waits are recorded, so an uncontended lock never reaches the tracker. Each tracked value keeps a {@link Timing} of its waits, a
+ * replaced value's timing starts over.
+ * <p>
+ * @param <V> the value type.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class ContentionTracker<V> {
+
+  private final int capacity;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<V, HotKey<V>> tracked = new HashMap<>();
+  private long totalWaits = 0;
+
+  /**
+   * Create a tracker.
+   * <p>
+   * @param capacity the number of values to track.
+   */
+  public ContentionTracker( int capacity ) {
+    if ( capacity < 1 ) {
+      throw new IllegalArgumentException( "capacity must be positive: " + capacity );
+    }
+    this.capacity = capacity;
+  }
+
+  /**
+   * Record a wait for the lock of a value.
+   * <p>
+   * @param value     the value.
+   * @param startNano the start of the wait in nanoseconds.
+   * @param endNano   the end of the wait in nanoseconds.
+   */
+  public void recordWait( V value, long startNano, long endNano ) {
+    HotKey<V> key;
+    lock.lock();
+    try {
+      totalWaits += 1;
+      key = tracked.get( value );
+      if ( key == null ) {
+        long error = 0;
+        if ( tracked.size() >= capacity ) {
+          HotKey<V> min = null;
+          for ( HotKey<V> candidate : tracked.values() ) {
+            if ( min == null || candidate.count < min.count ) {
+              min = candidate;
+            }
+          }
+          tracked.remove( min.value );
+          error = min.count;
+        }
+        key = new HotKey<>( value, error );
+        tracked.put( value, key );
+      }
+      key.count += 1;
+    } finally {
+      lock.unlock();
+    }
+    key.waits.recordSample( startNano, endNano );
+  }
+
+  /**
+   * @return the tracked values, most waited for first.
+   */
+  public List<HotKey<V>> getTopKeys() {
+    List<HotKey<V>> ret;
+    lock.lock();
+    try {
+      ret = new ArrayList<>( tracked.size() );
+      for ( HotKey<V> key : tracked.values() ) {
+        ret.add( new HotKey<>( key ) );
+      }
+    } finally {
+      lock.unlock();
+    }
+    Collections.sort( ret, new Comparator<HotKey<V>>() {
+      @Override
+      public int compare( HotKey<V> a, HotKey<V> b ) {
+        return Long.compare( b.count, a.count );
+      }
+    } );
+    return ret;
+  }
+
+  /**
+   * @return the number of waits recorded for all values.
+   */
+  public long getTotalWaits() {
+    lock.lock();
+    try {
+      return totalWaits;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of values tracked at most.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * A tracked value.
+   * <p>
+   * @param <V> the value type.
+   */
+  public static class HotKey<V> {
+
+    private final V value;
+    private final long error;
+    private final Timing waits;
+    private long count;
+
+    HotKey( V value, long error ) {
+      this.value = value;
+      this.error = error;
+      this.count = error;
+      this.waits = new Timing( String.valueOf( value ) );
+    }
+
+    HotKey( HotKey<V> key ) {
+      this.value = key.value;
+      this.error = key.error;
+      this.waits = key.waits;
+      this.count = key.count;
+    }
+
+    /**
+     * @return the value.
+     */
+    public V getValue() {
+      return value;
+    }
+
+    /**
+     * @return the estimated number of waits for the value, at most {@link #getError()} more than the actual number.
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @return the most the count may overestimate the waits for the value.
+     */
+    public long getError() {
+      return error;
+    }
+
+    /**
+     * @return the timing of the waits since the value was last tracked.
+     */
+    public Timing getWaits() {
+      return waits;
+    }
+
+    @Override
+    public String toString() {
+      return String.format( "HotKey {\n\tvalue = %s\n\tcount = %d\n\terror = %d\n\taverage wait = %d\n}", value, count, error,
+                            waits.getAverage() );
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.bluesoft.endurance.instrumentation.jfr.KeyedLockCheckoutEvent;
+
+/**
+ * Manages a collection of {@link FastReadWriteLock}s that are associated with a given value. A lock is created when its value is first
+ * checked out and dropped when the last check out is checked in. Check outs are reported to the JDK Flight Recorder as
+ * {@link KeyedLockCheckoutEvent}s when that event is enabled.
+ * <p>
+ * @param <V> the value type.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class DefaultValueBasedReadWriteLock<V> implements ValueBasedReadWriteLock<V> {
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<V, LockHolder> locks = new HashMap<>();
+  private final boolean fair;
+
+  /**
+   * Create a DefaultValueBasedReadWriteLock whose locks do not use "fair" scheduling.
+   */
+  public DefaultValueBasedReadWriteLock() {
+    this( false );
+  }
+
+  /**
+   * Create a DefaultValueBasedReadWriteLock.
+   * <p>
+   * @param fair true if the locks should use "fair" scheduling.
+   */
+  public DefaultValueBasedReadWriteLock( boolean fair ) {
+    this.fair = fair;
+  }
+
+  /**
+   * checks out the lock associated with the given value.
+   * <p>
+   * @param value the value
+   * <p>
+   * @return the lock.
+   */
+  @Override
+  public ReadWriteLock checkOutLock( final V value ) {
+    KeyedLockCheckoutEvent event = KeyedLockCheckoutEvent.start();
+    ReadWriteLock valueLock;
+    int refCount;
+    lock.lock();
+    try {
+      LockHolder holder = locks.get( value );
+      if ( holder == null ) {
+        holder = new LockHolder( new FastReadWriteLock( fair ) );
+        locks.put( value, holder );
+      }
+      valueLock = holder.checkOut();
+      refCount = holder.getRefCount();
+    } finally {
+      lock.unlock();
+    }
+    if ( event != null ) {
+      event.finish( value, refCount );
+    }
+    return valueLock;
+  }
+
+  /**
+   * checks in the lock associated with the given value.
+   * <p>
+   * @param value the value.
+   */
+  @Override
+  public void checkInLock( final V value ) {
+    lock.lock();
+    try {
+      final LockHolder holder = locks.get( value );
+      if ( holder == null ) {
+        throw new IllegalStateException( "Read write lock for the given value does not exist." );
+      }
+      holder.checkIn();
+      if ( holder.getRefCount() == 0 ) {
+        locks.remove( value );
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // only used while holding the table lock.
+  private static class LockHolder {
+
+    private final ReadWriteLock lock;
+    private int refCount = 0;
+
+    public LockHolder( ReadWriteLock lock ) {
+      this.lock = lock;
+    }
+
+    public ReadWriteLock checkOut() {
+      refCount += 1;
+      return lock;
+    }
+
+    public void checkIn() {
+      refCount -= 1;
+    }
+
+    public int getRefCount() {
+      return refCount;
+    }
+  }
+}
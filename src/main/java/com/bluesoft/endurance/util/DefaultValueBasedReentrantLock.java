@@ -15,12 +15,29 @@
  */
 package com.bluesoft.endurance.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 
+import com.bluesoft.endurance.instrumentation.jfr.KeyedLockCheckoutEvent;
+
 /**
- * Manages a collection of {@link ReentrantLock}s that are associated with a given value.
+ * Manages a collection of {@link ReentrantLock}s that are associated with a given value. Check outs are reported to the JDK Flight
+ * Recorder as {@link KeyedLockCheckoutEvent}s when that event is enabled.
+ * <p>
+ * The locks of several values checked out together are ordered by the order their holders were created in the table. A holder lives as
+ * long as its value is checked out, so every thread that has a value checked out sees it in the same position and the order is canonical.
+ * <p>
+ * A lock created with a {@link ContentionTracker} hands out locks that report every wait to the tracker, which keeps the most contended
+ * values and the timings of their waits. Without a tracker the locks are plain {@link ReentrantLock}s and cost nothing extra.
+ * <p>
+ * Locks keyed by {@code long} ids are better served by {@link LongValueBasedReentrantLock}, which does not box the ids.
  * <p>
  * @param <V> the value type.
  * <p>
@@ -31,6 +48,43 @@ public class DefaultValueBasedReentrantLock<V> implements ValueBasedReentrantLoc
 
   private final ReentrantLock lock = new ReentrantLock();
   private final Map<V, LockHolder> locks = new HashMap<>();
+  private long nextHolderId = 0;
+  private final ContentionTracker<V> tracker;
+
+  /**
+   * Create a DefaultValueBasedReentrantLock that does not track contention.
+   */
+  public DefaultValueBasedReentrantLock() {
+    this( null );
+  }
+
+  /**
+   * Create a DefaultValueBasedReentrantLock.
+   * <p>
+   * @param tracker the tracker the waits for the locks are reported to, may be null.
+   */
+  public DefaultValueBasedReentrantLock( ContentionTracker<V> tracker ) {
+    this.tracker = tracker;
+  }
+
+  /**
+   * @return the tracker the waits for the locks are reported to or null if contention is not tracked.
+   */
+  public ContentionTracker<V> getContentionTracker() {
+    return tracker;
+  }
+
+  /**
+   * @return the number of values currently checked out.
+   */
+  public int getLockTableSize() {
+    lock.lock();
+    try {
+      return locks.size();
+    } finally {
+      lock.unlock();
+    }
+  }
 
   /**
    * checks out the lock associated with the given value.
@@ -41,14 +95,97 @@ public class DefaultValueBasedReentrantLock<V> implements ValueBasedReentrantLoc
    */
   @Override
   public ReentrantLock checkOutLock( final V value ) {
+    KeyedLockCheckoutEvent event = KeyedLockCheckoutEvent.start();
+    ReentrantLock valueLock;
+    int refCount;
     lock.lock();
     try {
       LockHolder holder = locks.get( value );
       if ( holder == null ) {
-        holder = new LockHolder();
+        holder = newHolder( value );
         locks.put( value, holder );
       }
-      return holder.checkOut();
+      valueLock = holder.checkOut();
+      refCount = holder.getRefCount();
+    } finally {
+      lock.unlock();
+    }
+    if ( event != null ) {
+      event.finish( value, refCount );
+    }
+    return valueLock;
+  }
+
+  /**
+   * checks out the locks associated with several values in one operation, only taking the table lock once.
+   * <p>
+   * @param values the values.
+   * <p>
+   * @return a handle that acquires the locks in a canonical order and checks them in again.
+   */
+  @Override
+  public MultiValueLock<V> checkOutLocks( final Collection<? extends V> values ) {
+    KeyedLockCheckoutEvent event = KeyedLockCheckoutEvent.start();
+    Collection<? extends V> distinct = new LinkedHashSet<>( values );
+    final List<V> keys = new ArrayList<>( distinct );
+    final LockHolder[] holders = new LockHolder[keys.size()];
+    int refCount = 0;
+    lock.lock();
+    try {
+      for ( int i = 0; i < holders.length; i++ ) {
+        LockHolder holder = locks.get( keys.get( i ) );
+        if ( holder == null ) {
+          holder = newHolder( keys.get( i ) );
+          locks.put( keys.get( i ), holder );
+        }
+        holder.checkOut();
+        holders[i] = holder;
+        refCount = Math.max( refCount, holder.getRefCount() );
+      }
+    } finally {
+      lock.unlock();
+    }
+    Integer[] order = new Integer[holders.length];
+    for ( int i = 0; i < order.length; i++ ) {
+      order[i] = i;
+    }
+    Arrays.sort( order, new Comparator<Integer>() {
+      @Override
+      public int compare( Integer a, Integer b ) {
+        return Long.compare( holders[a].id, holders[b].id );
+      }
+    } );
+    List<V> sortedValues = new ArrayList<>( order.length );
+    ReentrantLock[] sortedLocks = new ReentrantLock[order.length];
+    for ( int i = 0; i < order.length; i++ ) {
+      sortedValues.add( keys.get( order[i] ) );
+      sortedLocks[i] = holders[order[i]].lock;
+    }
+    if ( event != null ) {
+      event.finish( sortedValues, refCount );
+    }
+    return new MultiValueLock<>( this, sortedValues, sortedLocks );
+  }
+
+  /**
+   * checks in the locks associated with several values in one operation, only taking the table lock once.
+   * <p>
+   * @param values the distinct values.
+   */
+  @Override
+  public void checkInLocks( final Collection<? extends V> values ) {
+    lock.lock();
+    try {
+      for ( V value : values ) {
+        final LockHolder holder = locks.get( value );
+        if ( holder == null ) {
+          throw new IllegalStateException( "Reentrant lock for the given value does not exist." );
+        }
+        holder.checkIn();
+        if ( holder.getRefCount() == 0 ) {
+          locks.remove( value );
+        }
+      }
     } finally {
       lock.unlock();
     }
@@ -76,21 +213,29 @@ public class DefaultValueBasedReentrantLock<V> implements ValueBasedReentrantLoc
     }
   }
 
-  private class LockHolder {
+  // only called while holding the table lock.
+  private LockHolder newHolder( V value ) {
+    return new LockHolder( nextHolderId++, tracker == null ? new ReentrantLock() : new ContendedLock<>( value, tracker ) );
+  }
+
+  // only used while holding the table lock.
+  private static class LockHolder {
 
     private final ReentrantLock lock;
+    private final long id;
     private int refCount = 0;
 
-    public LockHolder() {
-      lock = new ReentrantLock();
+    public LockHolder( long id, ReentrantLock lock ) {
+      this.lock = lock;
+      this.id = id;
     }
 
-    public synchronized ReentrantLock checkOut() {
+    public ReentrantLock checkOut() {
       refCount += 1;
       return lock;
     }
 
-    public synchronized void checkIn() {
+    public void checkIn() {
       refCount -= 1;
     }
 
@@ -16,19 +16,26 @@
 package com.bluesoft.endurance.util;
 
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReadWriteLock;
 
+import com.bluesoft.endurance.instrumentation.jfr.LockWaitEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * An implementation of {@link ReadWriteLock} that is faster then the one provided by the JDK.
+ * An implementation of {@link ReadWriteLock} that is faster then the one provided by the JDK. Waits to acquire either lock are reported to
+ * the JDK Flight Recorder as {@link LockWaitEvent}s when that event is enabled.
+ * <p>
+ * The lock is suitable for virtual threads: waiting threads are parked with {@link LockSupport}, nothing is synchronized, and the
+ * reentrancy of each thread is only tracked while it holds the lock, i.e. there are no {@link ThreadLocal}s. The thread holding the write
+ * lock may also acquire the read lock.
  * <p>
  * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
  * @since 1.0.0
@@ -37,19 +44,17 @@ public class FastReadWriteLock implements ReadWriteLock {
 
   @SuppressWarnings( "unused" )
   private static final Logger LOG = LoggerFactory.getLogger( FastReadWriteLock.class );
-  private final ThreadLocal<Integer> readHoldCount = new ThreadLocal<Integer>() {
-    @Override
-    protected Integer initialValue() {
-      return 0;
-    }
-  };
-  private final ThreadLocal<Integer> writeHoldCount = new ThreadLocal<Integer>() {
-    @Override
-    protected Integer initialValue() {
-      return 0;
-    }
-  };
-  private final AtomicInteger holdCounts = new AtomicInteger( 0 );
+  private static final int MAX_WRITE_HOLDS = 0xFFFF;
+  private static final long READ_HOLD = 1L << 16;
+  // the reentrant hold counts of the current thread. The first reader is tracked in plain fields, the other readers in a map that only
+  // has entries for threads that currently hold the read lock, so nothing is kept per thread once it lets go of the lock.
+  private volatile Thread firstReader;
+  private int firstReaderHoldCount;
+  private final ConcurrentHashMap<Thread, Integer> readHoldCounts = new ConcurrentHashMap<>();
+  private volatile Thread writeOwner;
+  private int writeHoldCount;
+  // the write holds are kept in the low 16 bits, the read holds in the upper 48 so any number of threads can hold the read lock.
+  private final AtomicLong holdCounts = new AtomicLong( 0 );
   private final Queue<Thread> awaitingReadLock;
   private final Queue<Thread> awaitingWriteLock;
   private final ReadLock readLock = new ReadLock();
@@ -92,73 +97,129 @@ public class FastReadWriteLock implements ReadWriteLock {
     return writeLock;
   }
 
-  private int writeLocks( int holdCounts ) {
-    return holdCounts & 0xFFFF;
+  private int writeLocks( long holdCounts ) {
+    return (int)(holdCounts & MAX_WRITE_HOLDS);
   }
 
-  private int readLocks( int holdCounts ) {
+  private long readLocks( long holdCounts ) {
     return holdCounts >>> 16;
   }
 
-  private int incrementReadCount( int holdCounts ) {
-    return ((readLocks( holdCounts ) + 1) << 16) | writeLocks( holdCounts );
+  private long incrementReadCount( long holdCounts ) {
+    return holdCounts + READ_HOLD;
+  }
+
+  /**
+   * @return the number of holds on the read lock by the current thread.
+   */
+  public int getReadHoldCount() {
+    Thread current = Thread.currentThread();
+    if ( firstReader == current ) {
+      return firstReaderHoldCount;
+    }
+    Integer holds = readHoldCounts.get( current );
+    return holds == null ? 0 : holds;
   }
 
-  private int decrementReadCount( int holdCounts ) {
-    final int newReadCount = readLocks( holdCounts ) - 1;
-    final int shiftedReadCount = (newReadCount) << 16;
-    return shiftedReadCount | writeLocks( holdCounts );
+  /**
+   * @return the number of holds on the write lock by the current thread.
+   */
+  public int getWriteHoldCount() {
+    return writeOwner == Thread.currentThread() ? writeHoldCount : 0;
   }
 
   boolean tryAcquireWriteLock() {
-    if ( holdCounts.compareAndSet( writeHoldCount.get(), writeHoldCount.get() + 1 ) ) {
-      writeHoldCount.set( writeHoldCount.get() + 1 );
+    Thread current = Thread.currentThread();
+    if ( writeOwner == current ) {
+      // a reentry, the owner may also hold downgraded read holds so the hold counts are not compared.
+      if ( writeHoldCount == MAX_WRITE_HOLDS ) {
+        throw new Error( "Maximum lock count exceeded" );
+      }
+      holdCounts.incrementAndGet();
+      writeHoldCount += 1;
+      return true;
+    }
+    if ( holdCounts.compareAndSet( 0, 1 ) ) {
+      writeOwner = current;
+      writeHoldCount = 1;
       return true;
     }
     return false;
   }
 
   boolean tryAcquireReadLock() {
-    int currentHoldCounts = holdCounts.get();
-    if ( writeLocks( currentHoldCounts ) == 0 && holdCounts.compareAndSet( currentHoldCounts, incrementReadCount( currentHoldCounts ) ) ) {
-      readHoldCount.set( readHoldCount.get() + 1 );
+    long currentHoldCounts = holdCounts.get();
+    if ( (writeLocks( currentHoldCounts ) == 0 || writeOwner == Thread.currentThread())
+         && holdCounts.compareAndSet( currentHoldCounts, incrementReadCount( currentHoldCounts ) ) ) {
+      incrementReadHoldCount( readLocks( currentHoldCounts ) == 0 );
       return true;
     }
     return false;
   }
 
+  private void reacquireReadLock() {
+    holdCounts.addAndGet( READ_HOLD );
+    incrementReadHoldCount( false );
+  }
+
+  private void incrementReadHoldCount( boolean first ) {
+    Thread current = Thread.currentThread();
+    if ( first ) {
+      firstReader = current;
+      firstReaderHoldCount = 1;
+    } else if ( firstReader == current ) {
+      firstReaderHoldCount += 1;
+    } else {
+      Integer holds = readHoldCounts.get( current );
+      readHoldCounts.put( current, holds == null ? 1 : holds + 1 );
+    }
+  }
+
   void releaseReadLock() {
-    int currentHoldCounts;
-    do {
-      currentHoldCounts = holdCounts.get();
-    } while (!holdCounts.compareAndSet( currentHoldCounts, decrementReadCount( currentHoldCounts ) ));
-    readHoldCount.set( readHoldCount.get() - 1 );
+    Thread current = Thread.currentThread();
+    if ( firstReader == current ) {
+      if ( --firstReaderHoldCount == 0 ) {
+        firstReader = null;
+      }
+    } else {
+      int holds = readHoldCounts.get( current );
+      if ( holds == 1 ) {
+        readHoldCounts.remove( current );
+      } else {
+        readHoldCounts.put( current, holds - 1 );
+      }
+    }
+    holdCounts.addAndGet( -READ_HOLD );
   }
 
   void releaseWriteLock() {
+    if ( --writeHoldCount == 0 ) {
+      writeOwner = null;
+    }
     holdCounts.decrementAndGet();
-    writeHoldCount.set( writeHoldCount.get() - 1 );
   }
 
   private boolean acquireReadLock( boolean interruptable, long nanos ) {
-    // if we already have a read lock, just increment the count and continue.
-    if ( readHoldCount.get() > 0 ) {
-      tryAcquireReadLock();
+    // if we already have a read lock or the write lock, just increment the count and continue.
+    if ( getReadHoldCount() > 0 || writeOwner == Thread.currentThread() ) {
+      reacquireReadLock();
       return true;
     }
+    LockWaitEvent event = LockWaitEvent.start( this, "read" );
     boolean wasInterrupted = false;
     Thread current = Thread.currentThread();
+    long deadline = System.nanoTime() + nanos;
     awaitingReadLock.add( current );
 
     boolean acquired = false;
     // Block while not first in queue or cannot acquire lock
     while (awaitingReadLock.peek() != current || !(acquired = tryAcquireReadLock())) {
       if ( nanos != -1L ) {
-        long start = System.nanoTime();
-        LockSupport.parkNanos( this, nanos );
-        if ( System.nanoTime() - start > nanos ) {
+        long remaining = deadline - System.nanoTime();
+        if ( remaining <= 0L ) {
           break;
         }
+        LockSupport.parkNanos( this, remaining );
       } else {
         LockSupport.park( this );
       }
@@ -169,11 +230,13 @@ public class FastReadWriteLock implements ReadWriteLock {
         }
       }
     }
-    awaitingReadLock.remove();
-    if ( acquired ) {
-      // let the next reader go too
-      LockSupport.unpark( awaitingReadLock.peek() );
+    // a thread that timed out or was interrupted may not be first in the queue.
+    awaitingReadLock.remove( current );
+    if ( event != null ) {
+      event.finish( acquired );
     }
+    // let the next reader go too, or the next waiter if this one gave up.
+    LockSupport.unpark( awaitingReadLock.peek() );
     if ( wasInterrupted ) {
       if ( acquired ) {
         releaseReadLock();
@@ -184,24 +247,26 @@ public class FastReadWriteLock implements ReadWriteLock {
   }
 
   private boolean acquireWriteLock( boolean interruptable, long nanos ) {
-    // if we already have a read lock, just increment the count and continue.
-    if ( writeHoldCount.get() > 0 ) {
+    // if we already have the write lock, just increment the count and continue.
+    if ( writeOwner == Thread.currentThread() ) {
       tryAcquireWriteLock();
       return true;
     }
+    LockWaitEvent event = LockWaitEvent.start( this, "write" );
     boolean acquired = false;
     boolean wasInterrupted = false;
     Thread current = Thread.currentThread();
+    long deadline = System.nanoTime() + nanos;
     awaitingWriteLock.add( current );
 
     // Block while not first in queue or cannot acquire lock
     while (awaitingWriteLock.peek() != current || !(acquired = tryAcquireWriteLock())) {
       if ( nanos != -1L ) {
-        long start = System.nanoTime();
-        LockSupport.parkNanos( this, nanos );
-        if ( System.nanoTime() - start > nanos ) {
+        long remaining = deadline - System.nanoTime();
+        if ( remaining <= 0L ) {
           break;
         }
+        LockSupport.parkNanos( this, remaining );
       } else {
         LockSupport.park( this );
       }
@@ -213,7 +278,14 @@ public class FastReadWriteLock implements ReadWriteLock {
       }
     }
 
-    awaitingWriteLock.remove();
+    // a thread that timed out or was interrupted may not be first in the queue.
+    awaitingWriteLock.remove( current );
+    if ( event != null ) {
+      event.finish( acquired );
+    }
+    if ( !acquired ) {
+      LockSupport.unpark( awaitingWriteLock.peek() );
+    }
     if ( wasInterrupted ) {
       if ( acquired ) {
         releaseWriteLock();
@@ -242,12 +314,12 @@ public class FastReadWriteLock implements ReadWriteLock {
 
     @Override
     public boolean tryLock( long time, TimeUnit unit ) throws InterruptedException {
-      return acquireWriteLock( true, unit.toNanos( time ) );
+      return acquireWriteLock( true, Math.max( 0L, unit.toNanos( time ) ) );
     }
 
     @Override
     public void unlock() {
-      int holds = writeHoldCount.get();
+      int holds = getWriteHoldCount();
       if ( holds == 0 ) {
         throw new IllegalStateException( "no write lock aquired by current thread" );
       }
@@ -286,12 +358,12 @@ public class FastReadWriteLock implements ReadWriteLock {
 
     @Override
     public boolean tryLock( long time, TimeUnit unit ) throws InterruptedException {
-      return acquireReadLock( true, unit.toNanos( time ) );
+      return acquireReadLock( true, Math.max( 0L, unit.toNanos( time ) ) );
     }
 
     @Override
     public void unlock() {
-      int readHolds = readHoldCount.get();
+      int readHolds = getReadHoldCount();
       if ( readHolds == 0 ) {
         throw new IllegalStateException( "no read lock aquired by current thread" );
       }
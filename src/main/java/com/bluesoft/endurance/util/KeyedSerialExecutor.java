@@ -0,0 +1,221 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.Procedure;
+
+/**
+ * Runs tasks for the same value one after the other and tasks for different values in parallel on a shared {@link Executor}, an
+ * asynchronous alternative to holding the lock of a {@link ValueBasedReentrantLock} around the work. No thread ever waits for a value:
+ * a task is queued on the lock-free queue of its value and the queue is drained by one pool task at a time, which gives the pool thread
+ * back after {@value #DRAIN_BATCH} tasks so busy values do not starve the others. A queue is removed as soon as it runs empty.
+ * <p>
+ * Each queue counts its pending tasks. The submitter that raises the count from zero schedules the drain and the drain stops when the count
+ * drops back to zero, so at most one drain runs per value. An idle queue is retired by swapping a count of zero for -1, after which
+ * submitters create a new queue for the value.
+ * <p>
+ * @param <V> the value type.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class KeyedSerialExecutor<V> {
+
+  /**
+   * The most tasks of one value run by a pool task before it is rescheduled.
+   */
+  public static final int DRAIN_BATCH = 64;
+  private final Executor executor;
+  private final ConcurrentHashMap<V, KeyQueue> queues = new ConcurrentHashMap<>();
+
+  /**
+   * Create a keyed executor.
+   * <p>
+   * @param executor the pool that runs the tasks.
+   */
+  public KeyedSerialExecutor( Executor executor ) {
+    if ( executor == null ) {
+      throw new IllegalArgumentException( "executor is required" );
+    }
+    this.executor = executor;
+  }
+
+  /**
+   * Run a task after the tasks already submitted for the same value.
+   * <p>
+   * @param <T>   the return type of the task.
+   * @param value the value.
+   * @param task  the task.
+   * <p>
+   * @return a future completed with the result of the task.
+   */
+  public <T> CompletableFuture<T> submit( V value, final Lambda<T> task ) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    enqueue( value, new Task() {
+      @Override
+      void run() {
+        try {
+          future.complete( task.func() );
+        } catch ( Throwable ex ) {
+          future.completeExceptionally( ex );
+        }
+      }
+
+      @Override
+      void fail( Throwable cause ) {
+        future.completeExceptionally( cause );
+      }
+    } );
+    return future;
+  }
+
+  /**
+   * Run a task after the tasks already submitted for the same value.
+   * <p>
+   * @param value the value.
+   * @param task  the task.
+   * <p>
+   * @return a future completed once the task ran.
+   */
+  public CompletableFuture<Void> submit( V value, final Procedure task ) {
+    return submit( value, new Lambda<Void>() {
+      @Override
+      public Void func() {
+        task.func();
+        return null;
+      }
+    } );
+  }
+
+  /**
+   * @return the number of values that have tasks queued or running.
+   */
+  public int getActiveValues() {
+    return queues.size();
+  }
+
+  private void enqueue( V value, Task task ) {
+    for ( ;; ) {
+      KeyQueue queue = queues.get( value );
+      if ( queue == null ) {
+        KeyQueue created = new KeyQueue( value );
+        queue = queues.putIfAbsent( value, created );
+        if ( queue == null ) {
+          queue = created;
+        }
+      }
+      int pending = queue.pending.get();
+      if ( pending < 0 ) {
+        // retired, the drain removes it from the map.
+        queues.remove( value, queue );
+        continue;
+      }
+      if ( !queue.pending.compareAndSet( pending, pending + 1 ) ) {
+        continue;
+      }
+      queue.tasks.add( task );
+      if ( pending == 0 ) {
+        queue.schedule();
+      }
+      return;
+    }
+  }
+
+  private abstract static class Task {
+
+    abstract void run();
+
+    abstract void fail( Throwable cause );
+  }
+
+  private class KeyQueue implements Runnable {
+
+    private final V value;
+    private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+    // the number of tasks submitted and not yet run, -1 once the queue is retired.
+    private final AtomicInteger pending = new AtomicInteger( 0 );
+    // the thread running the drain, and the thread whose rescheduled drain an executor ran inline.
+    private final AtomicReference<Thread> drainer = new AtomicReference<>();
+    private final AtomicReference<Thread> rerun = new AtomicReference<>();
+
+    KeyQueue( V value ) {
+      this.value = value;
+    }
+
+    void schedule() {
+      try {
+        executor.execute( this );
+      } catch ( RejectedExecutionException ex ) {
+        drain( ex );
+      }
+    }
+
+    @Override
+    public void run() {
+      Thread current = Thread.currentThread();
+      if ( drainer.get() == current ) {
+        // a direct or caller runs executor ran the rescheduled drain inline, the outer drain loops instead of growing the stack.
+        rerun.set( current );
+        return;
+      }
+      drainer.set( current );
+      try {
+        while (drain( null )) {
+          schedule();
+          if ( !rerun.compareAndSet( current, null ) ) {
+            return;
+          }
+        }
+      } finally {
+        drainer.compareAndSet( current, null );
+      }
+    }
+
+    // runs the queued tasks, or fails them if the pool rejected the drain. Returns true if the batch is used up and tasks are left.
+    private boolean drain( RejectedExecutionException rejected ) {
+      for ( int ran = 0; ran < DRAIN_BATCH || rejected != null; ran++ ) {
+        Task task;
+        while ((task = tasks.poll()) == null) {
+          // the submitter counted its task but has not queued it yet.
+          Thread.yield();
+        }
+        if ( rejected == null ) {
+          task.run();
+        } else {
+          task.fail( rejected );
+        }
+        if ( pending.decrementAndGet() == 0 ) {
+          // a submitter that raises the count from zero again schedules a new drain, otherwise the queue is retired.
+          if ( pending.compareAndSet( 0, -1 ) ) {
+            queues.remove( value, this );
+          }
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.bluesoft.endurance.instrumentation.jfr.KeyedLockCheckoutEvent;
+import com.bluesoft.endurance.util.collection.LongObjectConcurrentMap;
+
+/**
+ * The {@code long} keyed specialization of {@link DefaultValueBasedReentrantLock} for locks keyed by entity ids. The ids are never boxed
+ * and the lock table is a {@link LongObjectConcurrentMap}, so checking out the lock of an id that is already checked out only reads the
+ * table and bumps the reference count of its holder without taking the table lock. The table lock is only taken to create a holder and to
+ * remove one whose reference count dropped to zero. Check outs are reported to the JDK Flight Recorder as {@link KeyedLockCheckoutEvent}s
+ * when that event is enabled.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class LongValueBasedReentrantLock {
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final LongObjectConcurrentMap<LockHolder> locks = new LongObjectConcurrentMap<>();
+
+  /**
+   * @return the number of values currently checked out.
+   */
+  public int getLockTableSize() {
+    return locks.size();
+  }
+
+  /**
+   * checks out the lock associated with the given value.
+   * <p>
+   * @param value the value
+   * <p>
+   * @return the lock.
+   */
+  public ReentrantLock checkOutLock( final long value ) {
+    KeyedLockCheckoutEvent event = KeyedLockCheckoutEvent.start();
+    LockHolder holder = locks.get( value );
+    int refCount = holder == null ? -1 : holder.tryCheckOut();
+    if ( refCount < 0 ) {
+      lock.lock();
+      try {
+        holder = locks.get( value );
+        // a holder that is still in the table may be revived, the thread that released it will not remove it then.
+        refCount = holder == null ? -1 : holder.tryCheckOut();
+        if ( refCount < 0 ) {
+          holder = new LockHolder();
+          refCount = holder.tryCheckOut();
+          locks.put( value, holder );
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    if ( event != null ) {
+      event.finish( value, refCount );
+    }
+    return holder.lock;
+  }
+
+  /**
+   * checks in the lock associated with the given value.
+   * <p>
+   * @param value the value.
+   */
+  public void checkInLock( final long value ) {
+    final LockHolder holder = locks.get( value );
+    if ( holder == null || !holder.checkIn() ) {
+      throw new IllegalStateException( "Reentrant lock for the given value does not exist." );
+    }
+    if ( holder.refCount.get() == 0 ) {
+      lock.lock();
+      try {
+        // only remove the holder if nobody checked it out again in the meantime.
+        if ( holder.refCount.compareAndSet( 0, -1 ) ) {
+          locks.remove( value, holder );
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private static class LockHolder {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // -1 once the holder has been removed from the table.
+    private final AtomicInteger refCount = new AtomicInteger( 0 );
+
+    // returns the new reference count or -1 if the holder was removed from the table.
+    int tryCheckOut() {
+      for ( ;; ) {
+        int count = refCount.get();
+        if ( count < 0 ) {
+          return -1;
+        }
+        if ( refCount.compareAndSet( count, count + 1 ) ) {
+          return count + 1;
+        }
+      }
+    }
+
+    boolean checkIn() {
+      for ( ;; ) {
+        int count = refCount.get();
+        if ( count <= 0 ) {
+          return false;
+        }
+        if ( refCount.compareAndSet( count, count - 1 ) ) {
+          return true;
+        }
+      }
+    }
+  }
+}
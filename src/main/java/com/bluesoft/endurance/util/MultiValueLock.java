@@ -0,0 +1,223 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The locks of several values checked out together from a {@link ValueBasedReentrantLock}, see
+ * {@link ValueBasedReentrantLock#checkOutLocks(java.util.Collection)}. The locks are always acquired in the same canonical order, so two
+ * threads locking overlapping sets of values can not deadlock, and all the try variants either acquire every lock or none of them.
+ * <p>
+ * A handle belongs to the thread that checked it out and is not thread safe. Closing it releases the holds taken through it and checks
+ * the values in:
+ * <pre>
+ * try ( MultiValueLock&lt;Account&gt; locks = accountLocks.checkOutLocks( Arrays.asList( from, to ) ) ) {
+ *   locks.lock();
+ *   transfer( from, to, amount );
+ * }
+ * </pre>
+ * <p>
+ * @param <V> the value type.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class MultiValueLock<V> implements AutoCloseable {
+
+  // taken while acquiring locks whose order is not total, so two threads never acquire the tied locks at the same time.
+  private static final ReentrantLock TIE_LOCK = new ReentrantLock();
+  private final ValueBasedReentrantLock<V> owner;
+  private final List<V> values;
+  private final ReentrantLock[] locks;
+  private final boolean tied;
+  private int holdCount = 0;
+  private boolean checkedIn = false;
+
+  /**
+   * Create a handle, called by the {@link ValueBasedReentrantLock} once the values are checked out.
+   * <p>
+   * @param owner  the lock table the values were checked out from.
+   * @param values the distinct values in lock order.
+   * @param locks  the locks of the values in the same order.
+   */
+  public MultiValueLock( ValueBasedReentrantLock<V> owner, List<V> values, ReentrantLock[] locks ) {
+    this( owner, values, locks, false );
+  }
+
+  /**
+   * Create a handle for locks whose order has ties, the locks are acquired while holding a global tie lock.
+   * <p>
+   * @param owner  the lock table the values were checked out from.
+   * @param values the distinct values in lock order.
+   * @param locks  the locks of the values in the same order.
+   * @param tied   true if some locks could not be ordered against each other.
+   */
+  MultiValueLock( ValueBasedReentrantLock<V> owner, List<V> values, ReentrantLock[] locks, boolean tied ) {
+    this.owner = owner;
+    this.values = Collections.unmodifiableList( values );
+    this.locks = locks;
+    this.tied = tied;
+  }
+
+  /**
+   * @return the distinct values in the order their locks are acquired.
+   */
+  public List<V> getValues() {
+    return values;
+  }
+
+  /**
+   * Acquire the locks of all the values, blocking until each is available.
+   */
+  public void lock() {
+    checkNotCheckedIn();
+    if ( tied ) {
+      TIE_LOCK.lock();
+    }
+    try {
+      for ( ReentrantLock lock : locks ) {
+        lock.lock();
+      }
+    } finally {
+      if ( tied ) {
+        TIE_LOCK.unlock();
+      }
+    }
+    holdCount += 1;
+  }
+
+  /**
+   * Acquire the locks of all the values if none of them is held by another thread.
+   * <p>
+   * @return true if all the locks were acquired, false if none was.
+   */
+  public boolean tryLock() {
+    checkNotCheckedIn();
+    if ( tied && !TIE_LOCK.tryLock() ) {
+      return false;
+    }
+    try {
+      for ( int i = 0; i < locks.length; i++ ) {
+        if ( !locks[i].tryLock() ) {
+          release( i );
+          return false;
+        }
+      }
+    } finally {
+      if ( tied ) {
+        TIE_LOCK.unlock();
+      }
+    }
+    holdCount += 1;
+    return true;
+  }
+
+  /**
+   * Acquire the locks of all the values if they all become available within the timeout.
+   * <p>
+   * @param time the most time to wait for all the locks.
+   * @param unit the unit of the time.
+   * <p>
+   * @return true if all the locks were acquired, false if none was.
+   * <p>
+   * @throws InterruptedException if the thread is interrupted while waiting, none of the locks is held then.
+   */
+  public boolean tryLock( long time, TimeUnit unit ) throws InterruptedException {
+    checkNotCheckedIn();
+    long deadline = System.nanoTime() + unit.toNanos( time );
+    if ( tied && !TIE_LOCK.tryLock( deadline - System.nanoTime(), TimeUnit.NANOSECONDS ) ) {
+      return false;
+    }
+    try {
+      for ( int i = 0; i < locks.length; i++ ) {
+        boolean acquired = false;
+        try {
+          acquired = locks[i].tryLock( deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+        } finally {
+          if ( !acquired ) {
+            release( i );
+          }
+        }
+        if ( !acquired ) {
+          return false;
+        }
+      }
+    } finally {
+      if ( tied ) {
+        TIE_LOCK.unlock();
+      }
+    }
+    holdCount += 1;
+    return true;
+  }
+
+  /**
+   * Release one hold on the locks of all the values.
+   */
+  public void unlock() {
+    if ( holdCount == 0 ) {
+      throw new IllegalStateException( "the locks are not held through this handle" );
+    }
+    release( locks.length );
+    holdCount -= 1;
+  }
+
+  /**
+   * Check the values in, the locks must not be held through this handle any more.
+   */
+  public void checkIn() {
+    checkNotCheckedIn();
+    if ( holdCount > 0 ) {
+      throw new IllegalStateException( "the locks are still held" );
+    }
+    checkedIn = true;
+    owner.checkInLocks( values );
+  }
+
+  /**
+   * Release the holds taken through this handle and check the values in, unless that was already done.
+   */
+  @Override
+  public void close() {
+    while (holdCount > 0) {
+      unlock();
+    }
+    if ( !checkedIn ) {
+      checkIn();
+    }
+  }
+
+  private void release( int count ) {
+    for ( int i = count - 1; i >= 0; i-- ) {
+      locks[i].unlock();
+    }
+  }
+
+  private void checkNotCheckedIn() {
+    if ( checkedIn ) {
+      throw new IllegalStateException( "the values were checked in" );
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MultiValueLock" + values;
+  }
+}
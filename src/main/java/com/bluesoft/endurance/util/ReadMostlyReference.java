@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.bluesoft.endurance.instrumentation.Transform;
+
+/**
+ * A reference to a value that is read far more often than it is changed, e.g. configuration or a routing table, in the style of RCU.
+ * Reads are a single volatile load and never wait. Updates are copy-on-write: the value is never changed once it is published, an update
+ * works on a private copy and publishes it when done.
+ * <p>
+ * Concurrent updates are batched. Each update is queued and the writer that gets the update lock applies every queued update, its own and
+ * those of the writers waiting behind it, to one copy and publishes that copy once. The waiting writers then find their update done and
+ * return without copying.
+ * <p>
+ * When the reference is created with a copier, the transforms passed to {@link #update(Transform)} are given the private copy and may
+ * change it in place before returning it. Without a copier, the transforms must not change their argument and return a new value instead.
+ * If a transform throws, the exception is rethrown to the writer that passed it and the rest of the batch is applied to a fresh copy, so a
+ * transform that was applied before the failing one in the same batch runs again.
+ * <p>
+ * A replaced value is reclaimed by the garbage collector once the last reader that loaded it lets go of it, so readers may keep using
+ * the value they read without any grace period bookkeeping.
+ * <p>
+ * @param <T> the type of the value.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class ReadMostlyReference<T> {
+
+  private volatile T value;
+  private final Transform<T, T> copier;
+  private final Queue<Update<T>> pending = new ConcurrentLinkedQueue<>();
+  private final ReentrantLock updateLock = new ReentrantLock();
+  private long batches = 0;
+
+  /**
+   * Create a reference whose updates return new values.
+   * <p>
+   * @param initial the initial value.
+   */
+  public ReadMostlyReference( T initial ) {
+    this( initial, null );
+  }
+
+  /**
+   * Create a reference whose updates change a copy in place.
+   * <p>
+   * @param initial the initial value.
+   * @param copier  makes a private copy of a published value, may be null if the updates return new values.
+   */
+  public ReadMostlyReference( T initial, Transform<T, T> copier ) {
+    this.value = initial;
+    this.copier = copier;
+  }
+
+  /**
+   * @return the current value, it must not be changed.
+   */
+  public T get() {
+    return value;
+  }
+
+  /**
+   * Replace the value.
+   * <p>
+   * @param newValue the new value.
+   */
+  public void set( final T newValue ) {
+    update( new Transform<T, T>() {
+      @Override
+      public T func( T arg ) {
+        return newValue;
+      }
+    } );
+  }
+
+  /**
+   * Update the value. The update may be applied by another writer as part of its batch.
+   * <p>
+   * @param transform calculates the new value from the current one.
+   * <p>
+   * @return the value published by the batch that included this update.
+   */
+  public T update( Transform<T, T> transform ) {
+    Update<T> update = new Update<>( transform );
+    pending.add( update );
+    updateLock.lock();
+    try {
+      if ( !update.done ) {
+        applyPending();
+      }
+    } finally {
+      updateLock.unlock();
+    }
+    if ( update.failure != null ) {
+      if ( update.failure instanceof Error ) {
+        throw (Error)update.failure;
+      }
+      throw (RuntimeException)update.failure;
+    }
+    return update.published;
+  }
+
+  /**
+   * @return the number of times a batch of updates was applied, a batch is applied again when one of its transforms fails.
+   */
+  public long getBatches() {
+    updateLock.lock();
+    try {
+      return batches;
+    } finally {
+      updateLock.unlock();
+    }
+  }
+
+  // only called while holding the update lock.
+  private void applyPending() {
+    List<Update<T>> batch = new ArrayList<>();
+    Update<T> next;
+    while ((next = pending.poll()) != null) {
+      batch.add( next );
+    }
+    T result;
+    boolean retry;
+    do {
+      retry = false;
+      result = copier == null ? value : copier.func( value );
+      batches += 1;
+      for ( Update<T> update : batch ) {
+        if ( update.failure != null ) {
+          continue;
+        }
+        try {
+          result = update.transform.func( result );
+        } catch ( RuntimeException | Error ex ) {
+          update.failure = ex;
+          retry = true;
+          break;
+        }
+      }
+    } while (retry);
+    value = result;
+    for ( Update<T> update : batch ) {
+      update.published = result;
+      update.done = true;
+    }
+  }
+
+  private static class Update<T> {
+
+    private final Transform<T, T> transform;
+    // only read and written while holding the update lock.
+    private T published;
+    private Throwable failure;
+    private boolean done;
+
+    Update( Transform<T, T> transform ) {
+      this.transform = transform;
+    }
+  }
+}
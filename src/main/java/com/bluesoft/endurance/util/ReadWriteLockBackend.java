@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+/**
+ * The read write lock used by a {@link ReentrantReadWriteLockHelper}. A backend must be reentrant for both the read and the write lock, and
+ * the thread holding the write lock must be able to acquire the read lock, i.e. to downgrade. The read lock can not be upgraded, the
+ * helper releases the read holds of the current thread before it acquires the write lock. See {@link ReadWriteLockBackends} for the
+ * available implementations.
+ * <p>
+ * A backend may also support optimistic reads. The helper then first runs the lambdas passed to its {@code readLock} methods without
+ * locking and only runs them again under the read lock when a write happened in the meantime.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public interface ReadWriteLockBackend {
+
+  /**
+   * Acquire the read lock, blocking until it is available.
+   */
+  void lockRead();
+
+  /**
+   * Acquire the read lock if it becomes available within the timeout. A thread that is interrupted while waiting gives up and keeps its
+   * interrupt status.
+   * <p>
+   * @param nanos the most time to wait in nanoseconds.
+   * <p>
+   * @return true if the read lock was acquired.
+   */
+  boolean tryLockRead( long nanos );
+
+  /**
+   * Release one hold on the read lock.
+   */
+  void unlockRead();
+
+  /**
+   * Acquire the write lock, blocking until it is available.
+   */
+  void lockWrite();
+
+  /**
+   * Acquire the write lock if it becomes available within the timeout. A thread that is interrupted while waiting gives up and keeps its
+   * interrupt status.
+   * <p>
+   * @param nanos the most time to wait in nanoseconds.
+   * <p>
+   * @return true if the write lock was acquired.
+   */
+  boolean tryLockWrite( long nanos );
+
+  /**
+   * Release one hold on the write lock.
+   */
+  void unlockWrite();
+
+  /**
+   * @return the number of holds on the read lock by the current thread.
+   */
+  int getReadHoldCount();
+
+  /**
+   * @return the number of holds on the write lock by the current thread.
+   */
+  int getWriteHoldCount();
+
+  /**
+   * Start an optimistic read.
+   * <p>
+   * @return a stamp to {@link #validate(long)} once the read is done or 0 if an optimistic read is not possible, either because the backend
+   *         does not support them or because the write lock is held.
+   */
+  long tryOptimisticRead();
+
+  /**
+   * @param stamp the stamp returned by {@link #tryOptimisticRead()}.
+   * <p>
+   * @return true if no write lock was acquired since the stamp was issued.
+   */
+  boolean validate( long stamp );
+}
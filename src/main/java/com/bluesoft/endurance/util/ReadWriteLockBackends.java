@@ -0,0 +1,433 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Factory methods for the {@link ReadWriteLockBackend}s of a {@link ReentrantReadWriteLockHelper}.
+ * <ul>
+ * <li>{@link #reentrant(boolean)} uses a {@link ReentrantReadWriteLock}, fair scheduling is considerably slower under contention.</li>
+ * <li>{@link #fast(boolean)} uses a {@link FastReadWriteLock}, which has no limit on the number of readers.</li>
+ * <li>{@link #stamped()} uses a {@link StampedLock} and supports optimistic reads.</li>
+ * <li>{@link #striped(int)} spreads the readers over several {@link ReentrantReadWriteLock}s so they do not contend on one lock word, at
+ * the cost of a writer having to acquire every stripe.</li>
+ * </ul>
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public final class ReadWriteLockBackends {
+
+  private ReadWriteLockBackends() {
+  }
+
+  /**
+   * @param fair true if "fair" scheduling should be used.
+   * <p>
+   * @return a backend that uses a {@link ReentrantReadWriteLock}.
+   */
+  public static ReadWriteLockBackend reentrant( boolean fair ) {
+    return new Reentrant( new ReentrantReadWriteLock( fair ) );
+  }
+
+  /**
+   * @param fair true if "fair" scheduling should be used.
+   * <p>
+   * @return a backend that uses a {@link FastReadWriteLock}.
+   */
+  public static ReadWriteLockBackend fast( boolean fair ) {
+    return new Fast( new FastReadWriteLock( fair ) );
+  }
+
+  /**
+   * @return a backend that uses a {@link StampedLock} and supports optimistic reads.
+   */
+  public static ReadWriteLockBackend stamped() {
+    return new Stamped();
+  }
+
+  /**
+   * @param stripes the number of stripes, rounded up to a power of two.
+   * <p>
+   * @return a backend that spreads the readers over several non-fair {@link ReentrantReadWriteLock}s.
+   */
+  public static ReadWriteLockBackend striped( int stripes ) {
+    if ( stripes < 1 ) {
+      throw new IllegalArgumentException( "stripes must be positive: " + stripes );
+    }
+    int count = 1;
+    while (count < stripes) {
+      count <<= 1;
+    }
+    return new Striped( count );
+  }
+
+  private static boolean tryLock( Lock lock, long nanos ) {
+    try {
+      return lock.tryLock( nanos, TimeUnit.NANOSECONDS );
+    } catch ( InterruptedException ex ) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private abstract static class Pessimistic implements ReadWriteLockBackend {
+
+    @Override
+    public long tryOptimisticRead() {
+      return 0L;
+    }
+
+    @Override
+    public boolean validate( long stamp ) {
+      return false;
+    }
+  }
+
+  private static class Reentrant extends Pessimistic {
+
+    private final ReentrantReadWriteLock lock;
+
+    Reentrant( ReentrantReadWriteLock lock ) {
+      this.lock = lock;
+    }
+
+    @Override
+    public void lockRead() {
+      lock.readLock().lock();
+    }
+
+    @Override
+    public boolean tryLockRead( long nanos ) {
+      return tryLock( lock.readLock(), nanos );
+    }
+
+    @Override
+    public void unlockRead() {
+      lock.readLock().unlock();
+    }
+
+    @Override
+    public void lockWrite() {
+      lock.writeLock().lock();
+    }
+
+    @Override
+    public boolean tryLockWrite( long nanos ) {
+      return tryLock( lock.writeLock(), nanos );
+    }
+
+    @Override
+    public void unlockWrite() {
+      lock.writeLock().unlock();
+    }
+
+    @Override
+    public int getReadHoldCount() {
+      return lock.getReadHoldCount();
+    }
+
+    @Override
+    public int getWriteHoldCount() {
+      return lock.getWriteHoldCount();
+    }
+
+    @Override
+    public String toString() {
+      return lock.isFair() ? "reentrant-fair" : "reentrant";
+    }
+  }
+
+  private static class Fast extends Pessimistic {
+
+    private final FastReadWriteLock lock;
+
+    Fast( FastReadWriteLock lock ) {
+      this.lock = lock;
+    }
+
+    @Override
+    public void lockRead() {
+      lock.readLock().lock();
+    }
+
+    @Override
+    public boolean tryLockRead( long nanos ) {
+      return tryLock( lock.readLock(), nanos );
+    }
+
+    @Override
+    public void unlockRead() {
+      lock.readLock().unlock();
+    }
+
+    @Override
+    public void lockWrite() {
+      lock.writeLock().lock();
+    }
+
+    @Override
+    public boolean tryLockWrite( long nanos ) {
+      return tryLock( lock.writeLock(), nanos );
+    }
+
+    @Override
+    public void unlockWrite() {
+      lock.writeLock().unlock();
+    }
+
+    @Override
+    public int getReadHoldCount() {
+      return lock.getReadHoldCount();
+    }
+
+    @Override
+    public int getWriteHoldCount() {
+      return lock.getWriteHoldCount();
+    }
+
+    @Override
+    public String toString() {
+      return "fast";
+    }
+  }
+
+  /**
+   * A {@link StampedLock} is not reentrant, so the holds of each thread are counted here and only the first hold touches the lock. As in
+   * {@link FastReadWriteLock} the read holds are kept in a map that only has entries for the threads holding the read lock. The read holds
+   * of the thread holding the write lock are only counted, when it releases the write lock while still holding them the write lock is
+   * converted to a read lock.
+   */
+  private static class Stamped implements ReadWriteLockBackend {
+
+    private final StampedLock lock = new StampedLock();
+    private final ConcurrentHashMap<Thread, Integer> readHoldCounts = new ConcurrentHashMap<>();
+    private volatile Thread writeOwner;
+    private int writeHoldCount;
+    private long writeStamp;
+
+    @Override
+    public void lockRead() {
+      Thread current = Thread.currentThread();
+      Integer holds = readHoldCounts.get( current );
+      if ( holds == null && writeOwner != current ) {
+        lock.readLock();
+      }
+      readHoldCounts.put( current, holds == null ? 1 : holds + 1 );
+    }
+
+    @Override
+    public boolean tryLockRead( long nanos ) {
+      Thread current = Thread.currentThread();
+      Integer holds = readHoldCounts.get( current );
+      if ( holds == null && writeOwner != current ) {
+        try {
+          if ( lock.tryReadLock( nanos, TimeUnit.NANOSECONDS ) == 0L ) {
+            return false;
+          }
+        } catch ( InterruptedException ex ) {
+          current.interrupt();
+          return false;
+        }
+      }
+      readHoldCounts.put( current, holds == null ? 1 : holds + 1 );
+      return true;
+    }
+
+    @Override
+    public void unlockRead() {
+      Thread current = Thread.currentThread();
+      Integer holds = readHoldCounts.get( current );
+      if ( holds == null ) {
+        throw new IllegalStateException( "no read lock aquired by current thread" );
+      }
+      if ( holds == 1 ) {
+        readHoldCounts.remove( current );
+        if ( writeOwner != current ) {
+          lock.tryUnlockRead();
+        }
+      } else {
+        readHoldCounts.put( current, holds - 1 );
+      }
+    }
+
+    @Override
+    public void lockWrite() {
+      Thread current = Thread.currentThread();
+      if ( writeOwner == current ) {
+        writeHoldCount += 1;
+        return;
+      }
+      if ( readHoldCounts.containsKey( current ) ) {
+        throw new IllegalStateException( "the read lock can not be upgraded" );
+      }
+      writeStamp = lock.writeLock();
+      writeOwner = current;
+      writeHoldCount = 1;
+    }
+
+    @Override
+    public boolean tryLockWrite( long nanos ) {
+      Thread current = Thread.currentThread();
+      if ( writeOwner == current ) {
+        writeHoldCount += 1;
+        return true;
+      }
+      if ( readHoldCounts.containsKey( current ) ) {
+        throw new IllegalStateException( "the read lock can not be upgraded" );
+      }
+      long stamp;
+      try {
+        stamp = lock.tryWriteLock( nanos, TimeUnit.NANOSECONDS );
+      } catch ( InterruptedException ex ) {
+        current.interrupt();
+        return false;
+      }
+      if ( stamp == 0L ) {
+        return false;
+      }
+      writeStamp = stamp;
+      writeOwner = current;
+      writeHoldCount = 1;
+      return true;
+    }
+
+    @Override
+    public void unlockWrite() {
+      Thread current = Thread.currentThread();
+      if ( writeOwner != current ) {
+        throw new IllegalStateException( "no write lock aquired by current thread" );
+      }
+      if ( --writeHoldCount == 0 ) {
+        writeOwner = null;
+        if ( readHoldCounts.containsKey( current ) ) {
+          lock.tryConvertToReadLock( writeStamp );
+        } else {
+          lock.unlockWrite( writeStamp );
+        }
+      }
+    }
+
+    @Override
+    public int getReadHoldCount() {
+      Integer holds = readHoldCounts.get( Thread.currentThread() );
+      return holds == null ? 0 : holds;
+    }
+
+    @Override
+    public int getWriteHoldCount() {
+      return writeOwner == Thread.currentThread() ? writeHoldCount : 0;
+    }
+
+    @Override
+    public long tryOptimisticRead() {
+      return lock.tryOptimisticRead();
+    }
+
+    @Override
+    public boolean validate( long stamp ) {
+      return lock.validate( stamp );
+    }
+
+    @Override
+    public String toString() {
+      return "stamped";
+    }
+  }
+
+  /**
+   * Each thread reads through the stripe picked by its id, a writer acquires the write lock of every stripe in order.
+   */
+  private static class Striped extends Pessimistic {
+
+    private final ReentrantReadWriteLock[] stripes;
+
+    Striped( int count ) {
+      stripes = new ReentrantReadWriteLock[count];
+      for ( int i = 0; i < count; i++ ) {
+        stripes[i] = new ReentrantReadWriteLock( false );
+      }
+    }
+
+    private ReentrantReadWriteLock stripe() {
+      long hash = System.identityHashCode( Thread.currentThread() ) * 0x9E3779B97F4A7C15L;
+      return stripes[(int)(hash >>> 32) & (stripes.length - 1)];
+    }
+
+    @Override
+    public void lockRead() {
+      stripe().readLock().lock();
+    }
+
+    @Override
+    public boolean tryLockRead( long nanos ) {
+      return tryLock( stripe().readLock(), nanos );
+    }
+
+    @Override
+    public void unlockRead() {
+      stripe().readLock().unlock();
+    }
+
+    @Override
+    public void lockWrite() {
+      for ( ReentrantReadWriteLock stripe : stripes ) {
+        stripe.writeLock().lock();
+      }
+    }
+
+    @Override
+    public boolean tryLockWrite( long nanos ) {
+      long deadline = System.nanoTime() + nanos;
+      for ( int i = 0; i < stripes.length; i++ ) {
+        if ( !tryLock( stripes[i].writeLock(), deadline - System.nanoTime() ) ) {
+          while (--i >= 0) {
+            stripes[i].writeLock().unlock();
+          }
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public void unlockWrite() {
+      for ( int i = stripes.length - 1; i >= 0; i-- ) {
+        stripes[i].writeLock().unlock();
+      }
+    }
+
+    @Override
+    public int getReadHoldCount() {
+      return stripe().getReadHoldCount();
+    }
+
+    @Override
+    public int getWriteHoldCount() {
+      return stripes[0].getWriteHoldCount();
+    }
+
+    @Override
+    public String toString() {
+      return "striped-" + stripes.length;
+    }
+  }
+}
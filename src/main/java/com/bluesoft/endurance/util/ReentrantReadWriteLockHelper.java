@@ -15,20 +15,98 @@
  */
 package com.bluesoft.endurance.util;
 
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
+import com.bluesoft.endurance.instrumentation.BooleanLambda;
+import com.bluesoft.endurance.instrumentation.DoubleLambda;
+import com.bluesoft.endurance.instrumentation.IntLambda;
 import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.LongLambda;
 import com.bluesoft.endurance.instrumentation.Procedure;
 
 /**
- * A helper that wraps a ReentrantReadWriteLock and implements template functions for manipulating it.
+ * A helper that wraps a read write lock and implements template functions for manipulating it. The lock is provided by a
+ * {@link ReadWriteLockBackend}, see {@link ReadWriteLockBackends}, by default a fair {@link java.util.concurrent.locks.ReentrantReadWriteLock}.
+ * <p>
+ * The read lock may be acquired again by a thread that already holds it or the write lock. When a thread holding the read lock acquires
+ * the write lock, all of its read holds are released first and reacquired once the write lock is released, so another writer may run in
+ * between.
+ * <p>
+ * When the backend supports optimistic reads, e.g. {@link ReadWriteLockBackends#stamped()}, the lambdas passed to the value returning
+ * {@code readLock} methods are first run without the lock and only run again under the read lock if a writer acquired the lock in the
+ * meantime. Such lambdas must only read the guarded state and must tolerate seeing it half way through a write; an exception thrown by an
+ * optimistic run that turns out to be invalid is discarded. {@link #readLock(Procedure)} always locks.
+ * <p>
+ * {@link #tryReadLock(long, TimeUnit, Lambda, Lambda)} and {@link #tryWriteLock(long, TimeUnit, Lambda, Lambda)} bound the time spent
+ * waiting for the lock, e.g. to cap the tail latency of requests during a burst of writes. When the lock is not acquired in time a
+ * fallback runs instead, which may serve a stale value or reject the request, and the operation is counted as shed, see
+ * {@link #getShedCount()}.
+ * <p>
+ * A helper created in combining mode runs {@link #writeLock(Lambda)} and {@link #writeLock(Procedure)} by flat combining: the caller
+ * queues its lambda and the thread that acquires the write lock runs a batch of the queued lambdas, up to {@value #COMBINING_BATCH}, in one
+ * critical section before handing the results back to the waiting callers. Under heavy contention on small updates this replaces most of
+ * the lock handoffs with plain method calls. The lambdas may run on another thread, so they must not depend on the calling thread, e.g.
+ * on its {@link ThreadLocal}s. A thread that already holds the lock, and the primitive {@code writeLock} overloads, do not combine.
+ * <p>
+ * The helper may be used from virtual threads, it does not synchronize and none of the backends keep per thread state once the thread
+ * lets go of the lock. Note that the JDK lock allows at most 65535 read holds at once, see {@link FastReadWriteLock} for a lock without
+ * that limit.
  * <p>
  * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
  * @since 1.0.0
  */
 public class ReentrantReadWriteLockHelper {
 
-  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock( true );
+  /**
+   * The most writes run by a combining thread in one critical section.
+   */
+  public static final int COMBINING_BATCH = 64;
+  private final ReadWriteLockBackend backend;
+  private final LongAdder shed = new LongAdder();
+  private final Queue<WriteRequest> combining;
+
+  /**
+   * Create a helper that uses a fair {@link java.util.concurrent.locks.ReentrantReadWriteLock}.
+   */
+  public ReentrantReadWriteLockHelper() {
+    this( ReadWriteLockBackends.reentrant( true ) );
+  }
+
+  /**
+   * Create a helper.
+   * <p>
+   * @param backend the lock to use.
+   */
+  public ReentrantReadWriteLockHelper( ReadWriteLockBackend backend ) {
+    this( backend, false );
+  }
+
+  /**
+   * Create a helper.
+   * <p>
+   * @param backend   the lock to use.
+   * @param combining true if the writes should be run by flat combining.
+   */
+  public ReentrantReadWriteLockHelper( ReadWriteLockBackend backend, boolean combining ) {
+    if ( backend == null ) {
+      throw new IllegalArgumentException( "backend is required" );
+    }
+    this.backend = backend;
+    this.combining = combining ? new ConcurrentLinkedQueue<WriteRequest>() : null;
+  }
+
+  /**
+   * @return the lock used by this helper.
+   */
+  public ReadWriteLockBackend getBackend() {
+    return backend;
+  }
 
   /**
    * Acquires a read lock and then executes the passed {@link Lambda}. Releases the lock after the lambda exits.
@@ -39,17 +117,141 @@ public class ReentrantReadWriteLockHelper {
    * @return the value returned from the lambda.
    */
   public <T> T readLock( Lambda<T> todo ) {
-    boolean hasReadLock = lock.getReadHoldCount() == 1;
-    if ( !hasReadLock ) {
-      lock.readLock().lock();
+    long stamp = optimisticRead();
+    if ( stamp != 0L ) {
+      try {
+        T result = todo.func();
+        if ( backend.validate( stamp ) ) {
+          return result;
+        }
+      } catch ( RuntimeException ex ) {
+        if ( backend.validate( stamp ) ) {
+          throw ex;
+        }
+      }
+    }
+    boolean held = readAcquire();
+    try {
+      return todo.func();
+    } finally {
+      readRelease( held );
+    }
+  }
+
+  /**
+   * Acquires a read lock and then executes the passed {@link LongLambda}. Releases the lock after the lambda exits. The result is not boxed.
+   * <p>
+   * @param todo the lambda to execute.
+   * <p>
+   * @return the value returned from the lambda.
+   */
+  public long readLock( LongLambda todo ) {
+    long stamp = optimisticRead();
+    if ( stamp != 0L ) {
+      try {
+        long result = todo.func();
+        if ( backend.validate( stamp ) ) {
+          return result;
+        }
+      } catch ( RuntimeException ex ) {
+        if ( backend.validate( stamp ) ) {
+          throw ex;
+        }
+      }
+    }
+    boolean held = readAcquire();
+    try {
+      return todo.func();
+    } finally {
+      readRelease( held );
+    }
+  }
+
+  /**
+   * Acquires a read lock and then executes the passed {@link IntLambda}. Releases the lock after the lambda exits. The result is not boxed.
+   * <p>
+   * @param todo the lambda to execute.
+   * <p>
+   * @return the value returned from the lambda.
+   */
+  public int readLock( IntLambda todo ) {
+    long stamp = optimisticRead();
+    if ( stamp != 0L ) {
+      try {
+        int result = todo.func();
+        if ( backend.validate( stamp ) ) {
+          return result;
+        }
+      } catch ( RuntimeException ex ) {
+        if ( backend.validate( stamp ) ) {
+          throw ex;
+        }
+      }
     }
+    boolean held = readAcquire();
     try {
       return todo.func();
     } finally {
-      if ( !hasReadLock ) {
-        lock.readLock().unlock();
+      readRelease( held );
+    }
+  }
+
+  /**
+   * Acquires a read lock and then executes the passed {@link DoubleLambda}. Releases the lock after the lambda exits. The result is not boxed.
+   * <p>
+   * @param todo the lambda to execute.
+   * <p>
+   * @return the value returned from the lambda.
+   */
+  public double readLock( DoubleLambda todo ) {
+    long stamp = optimisticRead();
+    if ( stamp != 0L ) {
+      try {
+        double result = todo.func();
+        if ( backend.validate( stamp ) ) {
+          return result;
+        }
+      } catch ( RuntimeException ex ) {
+        if ( backend.validate( stamp ) ) {
+          throw ex;
+        }
       }
     }
+    boolean held = readAcquire();
+    try {
+      return todo.func();
+    } finally {
+      readRelease( held );
+    }
+  }
+
+  /**
+   * Acquires a read lock and then executes the passed {@link BooleanLambda}. Releases the lock after the lambda exits. The result is not boxed.
+   * <p>
+   * @param todo the lambda to execute.
+   * <p>
+   * @return the value returned from the lambda.
+   */
+  public boolean readLock( BooleanLambda todo ) {
+    long stamp = optimisticRead();
+    if ( stamp != 0L ) {
+      try {
+        boolean result = todo.func();
+        if ( backend.validate( stamp ) ) {
+          return result;
+        }
+      } catch ( RuntimeException ex ) {
+        if ( backend.validate( stamp ) ) {
+          throw ex;
+        }
+      }
+    }
+    boolean held = readAcquire();
+    try {
+      return todo.func();
+    } finally {
+      readRelease( held );
+    }
   }
 
   /**
@@ -57,14 +259,13 @@ public class ReentrantReadWriteLockHelper {
    * <p>
    * @param todo the procedure to execute.
    */
-  public void readLock( final Procedure todo ) {
-    readLock( new Lambda<Void>() {
-      @Override
-      public Void func() {
-        todo.func();
-        return null;
-      }
-    } );
+  public void readLock( Procedure todo ) {
+    boolean held = readAcquire();
+    try {
+      todo.func();
+    } finally {
+      readRelease( held );
+    }
   }
 
   /**
@@ -76,18 +277,80 @@ public class ReentrantReadWriteLockHelper {
    * @return the value returned from the lambda.
    */
   public <T> T writeLock( Lambda<T> todo ) {
-    boolean hasReadLock = lock.getReadHoldCount() == 1;
-    if ( hasReadLock ) {
-      lock.readLock().unlock();
+    if ( combines() ) {
+      @SuppressWarnings( "unchecked" )
+      T result = (T)combine( new WriteRequest( todo, null ) );
+      return result;
     }
-    lock.writeLock().lock();
+    int readHolds = writeAcquire();
     try {
       return todo.func();
     } finally {
-      if ( hasReadLock ) {
-        lock.readLock().lock();
-      }
-      lock.writeLock().unlock();
+      writeRelease( readHolds );
+    }
+  }
+
+  /**
+   * Acquires a write lock and then executes the passed {@link LongLambda}. Releases the lock after the lambda exits. The result is not boxed.
+   * <p>
+   * @param todo the lambda to execute.
+   * <p>
+   * @return the value returned from the lambda.
+   */
+  public long writeLock( LongLambda todo ) {
+    int readHolds = writeAcquire();
+    try {
+      return todo.func();
+    } finally {
+      writeRelease( readHolds );
+    }
+  }
+
+  /**
+   * Acquires a write lock and then executes the passed {@link IntLambda}. Releases the lock after the lambda exits. The result is not boxed.
+   * <p>
+   * @param todo the lambda to execute.
+   * <p>
+   * @return the value returned from the lambda.
+   */
+  public int writeLock( IntLambda todo ) {
+    int readHolds = writeAcquire();
+    try {
+      return todo.func();
+    } finally {
+      writeRelease( readHolds );
+    }
+  }
+
+  /**
+   * Acquires a write lock and then executes the passed {@link DoubleLambda}. Releases the lock after the lambda exits. The result is not boxed.
+   * <p>
+   * @param todo the lambda to execute.
+   * <p>
+   * @return the value returned from the lambda.
+   */
+  public double writeLock( DoubleLambda todo ) {
+    int readHolds = writeAcquire();
+    try {
+      return todo.func();
+    } finally {
+      writeRelease( readHolds );
+    }
+  }
+
+  /**
+   * Acquires a write lock and then executes the passed {@link BooleanLambda}. Releases the lock after the lambda exits. The result is not boxed.
+   * <p>
+   * @param todo the lambda to execute.
+   * <p>
+   * @return the value returned from the lambda.
+   */
+  public boolean writeLock( BooleanLambda todo ) {
+    int readHolds = writeAcquire();
+    try {
+      return todo.func();
+    } finally {
+      writeRelease( readHolds );
     }
   }
 
@@ -96,13 +359,210 @@ public class ReentrantReadWriteLockHelper {
    * <p>
    * @param todo the procedure to execute.
    */
-  public void writeLock( final Procedure todo ) {
-    writeLock( new Lambda<Void>() {
-      @Override
-      public Void func() {
-        todo.func();
-        return null;
+  public void writeLock( Procedure todo ) {
+    if ( combines() ) {
+      combine( new WriteRequest( null, todo ) );
+      return;
+    }
+    int readHolds = writeAcquire();
+    try {
+      todo.func();
+    } finally {
+      writeRelease( readHolds );
+    }
+  }
+
+  /**
+   * Acquires a read lock, waiting at most the timeout, and then executes the passed {@link Lambda}. Releases the lock after the lambda
+   * exits. If the lock is not acquired in time, or the thread is interrupted while waiting, the fallback is executed without the lock.
+   * <p>
+   * @param <T>      the return type of the {@link Lambda}
+   * @param timeout  the most time to wait for the lock.
+   * @param unit     the unit of the timeout.
+   * @param todo     the lambda to execute.
+   * @param fallback the lambda to execute when the lock is not acquired in time.
+   * <p>
+   * @return the value returned from the lambda or the fallback.
+   */
+  public <T> T tryReadLock( long timeout, TimeUnit unit, Lambda<T> todo, Lambda<T> fallback ) {
+    long stamp = optimisticRead();
+    if ( stamp != 0L ) {
+      try {
+        T result = todo.func();
+        if ( backend.validate( stamp ) ) {
+          return result;
+        }
+      } catch ( RuntimeException ex ) {
+        if ( backend.validate( stamp ) ) {
+          throw ex;
+        }
       }
-    } );
+    }
+    boolean held = backend.getReadHoldCount() > 0 || backend.getWriteHoldCount() > 0;
+    if ( !held && !backend.tryLockRead( unit.toNanos( timeout ) ) ) {
+      shed.increment();
+      return fallback.func();
+    }
+    try {
+      return todo.func();
+    } finally {
+      readRelease( held );
+    }
+  }
+
+  /**
+   * Acquires a write lock, waiting at most the timeout, and then executes the passed {@link Lambda}. Releases the lock after the lambda
+   * exits. If the lock is not acquired in time, or the thread is interrupted while waiting, the fallback is executed without the lock. A
+   * thread holding the read lock, but not the write lock, runs the fallback straight away: giving up its read holds to wait for the write
+   * lock would mean taking them back with no bound on the wait once the timeout passed.
+   * <p>
+   * @param <T>      the return type of the {@link Lambda}
+   * @param timeout  the most time to wait for the lock.
+   * @param unit     the unit of the timeout.
+   * @param todo     the lambda to execute.
+   * @param fallback the lambda to execute when the lock is not acquired in time.
+   * <p>
+   * @return the value returned from the lambda or the fallback.
+   */
+  public <T> T tryWriteLock( long timeout, TimeUnit unit, Lambda<T> todo, Lambda<T> fallback ) {
+    if ( (backend.getWriteHoldCount() == 0 && backend.getReadHoldCount() > 0) || !backend.tryLockWrite( unit.toNanos( timeout ) ) ) {
+      shed.increment();
+      return fallback.func();
+    }
+    try {
+      return todo.func();
+    } finally {
+      backend.unlockWrite();
+    }
+  }
+
+  /**
+   * @return the number of operations that did not acquire the lock in time and ran their fallback instead.
+   */
+  public long getShedCount() {
+    return shed.sum();
+  }
+
+  private boolean combines() {
+    return combining != null && backend.getReadHoldCount() == 0 && backend.getWriteHoldCount() == 0;
+  }
+
+  // the thread at the head of the queue waits for the write lock and runs a batch, the others park until their write is done or they
+  // reach the head. Every combining thread wakes the threads it ran the writes of and the new head once it released the lock. The wait
+  // is not interruptible, an interrupt is cleared so park() keeps blocking and is restored once the write is done.
+  private Object combine( WriteRequest request ) {
+    boolean interrupted = false;
+    combining.add( request );
+    while (!request.done) {
+      if ( combining.peek() != request ) {
+        LockSupport.park( this );
+        interrupted |= Thread.interrupted();
+        continue;
+      }
+      List<WriteRequest> batch = new ArrayList<>( COMBINING_BATCH );
+      backend.lockWrite();
+      try {
+        WriteRequest next;
+        while (batch.size() < COMBINING_BATCH && (next = combining.poll()) != null) {
+          next.run();
+          batch.add( next );
+        }
+      } finally {
+        backend.unlockWrite();
+      }
+      for ( WriteRequest done : batch ) {
+        done.done = true;
+        LockSupport.unpark( done.thread );
+      }
+      WriteRequest head = combining.peek();
+      if ( head != null ) {
+        LockSupport.unpark( head.thread );
+      }
+    }
+    if ( interrupted ) {
+      Thread.currentThread().interrupt();
+    }
+    if ( request.failure != null ) {
+      // a lambda may sneak a checked exception through, it reaches the caller as it was thrown.
+      ReentrantReadWriteLockHelper.<RuntimeException>rethrow( request.failure );
+    }
+    return request.result;
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private static <E extends Throwable> void rethrow( Throwable failure ) throws E {
+    throw (E)failure;
+  }
+
+  // an optimistic read is only attempted by a thread that does not hold the lock already.
+  private long optimisticRead() {
+    if ( backend.getReadHoldCount() > 0 || backend.getWriteHoldCount() > 0 ) {
+      return 0L;
+    }
+    return backend.tryOptimisticRead();
+  }
+
+  // returns true if the current thread already held the read or the write lock, in which case it is left alone.
+  private boolean readAcquire() {
+    boolean held = backend.getReadHoldCount() > 0 || backend.getWriteHoldCount() > 0;
+    if ( !held ) {
+      backend.lockRead();
+    }
+    return held;
+  }
+
+  private void readRelease( boolean held ) {
+    if ( !held ) {
+      backend.unlockRead();
+    }
+  }
+
+  // returns the number of read holds the current thread gave up to acquire the write lock, they are reacquired by writeRelease.
+  private int writeAcquire() {
+    if ( backend.getWriteHoldCount() > 0 ) {
+      backend.lockWrite();
+      return 0;
+    }
+    int readHolds = backend.getReadHoldCount();
+    for ( int i = 0; i < readHolds; i++ ) {
+      backend.unlockRead();
+    }
+    backend.lockWrite();
+    return readHolds;
+  }
+
+  private void writeRelease( int readHolds ) {
+    for ( int i = 0; i < readHolds; i++ ) {
+      backend.lockRead();
+    }
+    backend.unlockWrite();
+  }
+
+  private static class WriteRequest {
+
+    private final Lambda<?> lambda;
+    private final Procedure procedure;
+    private final Thread thread = Thread.currentThread();
+    // written by the combining thread before it sets done.
+    private Object result;
+    private Throwable failure;
+    private volatile boolean done;
+
+    WriteRequest( Lambda<?> lambda, Procedure procedure ) {
+      this.lambda = lambda;
+      this.procedure = procedure;
+    }
+
+    void run() {
+      try {
+        if ( lambda != null ) {
+          result = lambda.func();
+        } else {
+          procedure.func();
+        }
+      } catch ( Throwable ex ) {
+        failure = ex;
+      }
+    }
   }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A small record of {@code long} fields guarded by a sequence lock. Readers never write shared memory: they read the version, the fields
+ * and the version again and retry when a write happened in between, so any number of cores can read the record at a very high rate
+ * without contending on a cache line. Writers are serialized by the version itself, which is odd while a write is in progress.
+ * <p>
+ * A consistent read of several fields looks like this:
+ * <pre>
+ * long a, b;
+ * long version;
+ * do {
+ *   version = value.readBegin();
+ *   a = value.get( 0 );
+ *   b = value.get( 1 );
+ * } while (!value.validate( version ));
+ * </pre>
+ * and a write like this:
+ * <pre>
+ * value.beginWrite();
+ * try {
+ *   value.set( 0, a );
+ *   value.set( 1, b );
+ * } finally {
+ *   value.endWrite();
+ * }
+ * </pre>
+ * The write lock is not reentrant and the writes must be short, a waiting writer spins. {@code double} fields are stored as their raw long
+ * bits, see {@link #getDouble(int)} and {@link #setDouble(int, double)}.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class SeqLockValue {
+
+  private static final int SPINS_BEFORE_YIELD = 64;
+  private final AtomicLong version = new AtomicLong( 0 );
+  private final AtomicLongArray fields;
+
+  /**
+   * Create a record with all fields set to 0.
+   * <p>
+   * @param size the number of fields.
+   */
+  public SeqLockValue( int size ) {
+    fields = new AtomicLongArray( size );
+  }
+
+  /**
+   * @return the number of fields.
+   */
+  public int size() {
+    return fields.length();
+  }
+
+  /**
+   * Start a read, waiting for a write in progress to finish.
+   * <p>
+   * @return the version to {@link #validate(long)} once the fields are read.
+   */
+  public long readBegin() {
+    long current;
+    int spins = 0;
+    while (((current = version.get()) & 1L) != 0L) {
+      spins = spin( spins );
+    }
+    return current;
+  }
+
+  /**
+   * @param readVersion the version returned by {@link #readBegin()}.
+   * <p>
+   * @return true if the fields read since {@link #readBegin()} are consistent, i.e. no write happened in between.
+   */
+  public boolean validate( long readVersion ) {
+    return version.get() == readVersion;
+  }
+
+  /**
+   * Read a field, only consistent with the other fields read between {@link #readBegin()} and a successful {@link #validate(long)}.
+   * <p>
+   * @param field the index of the field.
+   * <p>
+   * @return the value of the field.
+   */
+  public long get( int field ) {
+    return fields.get( field );
+  }
+
+  /**
+   * Read a field holding a {@code double}, see {@link #get(int)}.
+   * <p>
+   * @param field the index of the field.
+   * <p>
+   * @return the value of the field.
+   */
+  public double getDouble( int field ) {
+    return Double.longBitsToDouble( fields.get( field ) );
+  }
+
+  /**
+   * Read all the fields consistently.
+   * <p>
+   * @param into receives the fields, must have at least {@link #size()} elements.
+   */
+  public void snapshot( long[] into ) {
+    long readVersion;
+    do {
+      readVersion = readBegin();
+      for ( int i = 0; i < into.length && i < fields.length(); i++ ) {
+        into[i] = fields.get( i );
+      }
+    } while (!validate( readVersion ));
+  }
+
+  /**
+   * Start a write, waiting for a write in progress to finish. Must be followed by {@link #endWrite()}.
+   */
+  public void beginWrite() {
+    int spins = 0;
+    for ( ;; ) {
+      long current = version.get();
+      if ( (current & 1L) == 0L && version.compareAndSet( current, current + 1 ) ) {
+        return;
+      }
+      spins = spin( spins );
+    }
+  }
+
+  /**
+   * Set a field, only allowed between {@link #beginWrite()} and {@link #endWrite()}.
+   * <p>
+   * @param field the index of the field.
+   * @param value the new value.
+   */
+  public void set( int field, long value ) {
+    // the CAS in beginWrite() keeps this store after the odd version, a full fence is not needed.
+    fields.lazySet( field, value );
+  }
+
+  /**
+   * Set a field holding a {@code double}, see {@link #set(int, long)}.
+   * <p>
+   * @param field the index of the field.
+   * @param value the new value.
+   */
+  public void setDouble( int field, double value ) {
+    fields.lazySet( field, Double.doubleToRawLongBits( value ) );
+  }
+
+  /**
+   * End a write and publish the fields to the readers.
+   */
+  public void endWrite() {
+    long current = version.get();
+    if ( (current & 1L) == 0L ) {
+      throw new IllegalStateException( "no write in progress" );
+    }
+    // a release store, the field stores before it become visible no later than the even version.
+    version.lazySet( current + 1 );
+  }
+
+  private static int spin( int spins ) {
+    if ( spins < SPINS_BEFORE_YIELD ) {
+      return spins + 1;
+    }
+    Thread.yield();
+    return spins;
+  }
+}
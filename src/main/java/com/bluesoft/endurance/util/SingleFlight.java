@@ -0,0 +1,207 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.time.Timing;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the loader and every caller that asks for the key while that load is
+ * in flight waits for it and shares its result, or its failure, instead of running the loader again. Once the load completes the key is
+ * forgotten, so the next caller starts a new load. This is what keeps a stampede of callers for an expired cache entry from turning into
+ * a stampede on the backend.
+ * <p>
+ * Serializing the callers with a {@link ValueBasedReentrantLock} is not enough, every caller would still run the load in turn. A
+ * SingleFlight created with a lock runs each load holding the key's lock instead, so loads stay serialized with the other code that
+ * changes the key under the same lock while the callers waiting for the load do not touch the lock at all.
+ * <p>
+ * The shared failure is the exception thrown by the loader, rethrown to every caller of the flight.
+ * <p>
+ * @param <K> the key type.
+ * @param <V> the value type.
+ * <p>
+ * @author danap@bluesoftdev.com &lt;Dana H. P'Simer&gt;
+ * @since 1.0.0
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+  private final ValueBasedReentrantLock<K> locks;
+  private final ConcurrentHashMap<K, Timing> timings;
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder shared = new LongAdder();
+
+  /**
+   * Create a SingleFlight that does not lock and does not time the loads.
+   */
+  public SingleFlight() {
+    this( null, false );
+  }
+
+  /**
+   * Create a SingleFlight.
+   * <p>
+   * @param locks the locks held while a key is loaded, may be null.
+   * @param timed true if the loads are timed per key, see {@link #getTiming(java.lang.Object)}. A Timing is kept for every key ever
+   *              loaded, so only time loads of a bounded set of keys.
+   */
+  public SingleFlight( ValueBasedReentrantLock<K> locks, boolean timed ) {
+    this.locks = locks;
+    this.timings = timed ? new ConcurrentHashMap<K, Timing>() : null;
+  }
+
+  /**
+   * Load the value of a key, or wait for the load that is already in flight for it.
+   * <p>
+   * @param key    the key.
+   * @param loader the loader, only run if no load of the key is in flight.
+   * <p>
+   * @return the value loaded.
+   */
+  public V load( K key, Lambda<V> loader ) {
+    CompletableFuture<V> flight = new CompletableFuture<>();
+    CompletableFuture<V> existing = flights.putIfAbsent( key, flight );
+    if ( existing != null ) {
+      shared.increment();
+      return await( existing );
+    }
+    run( key, loader, flight );
+    return await( flight );
+  }
+
+  /**
+   * Load the value of a key on an executor, or join the load that is already in flight for it.
+   * <p>
+   * @param key      the key.
+   * @param loader   the loader, only run if no load of the key is in flight.
+   * @param executor the executor that runs the loader.
+   * <p>
+   * @return a future completed with the value loaded. Completing or cancelling it does not affect the other callers.
+   */
+  public CompletableFuture<V> loadAsync( final K key, final Lambda<V> loader, Executor executor ) {
+    final CompletableFuture<V> flight = new CompletableFuture<>();
+    CompletableFuture<V> existing = flights.putIfAbsent( key, flight );
+    if ( existing != null ) {
+      shared.increment();
+      return existing.copy();
+    }
+    try {
+      executor.execute( new Runnable() {
+        @Override
+        public void run() {
+          SingleFlight.this.run( key, loader, flight );
+        }
+      } );
+    } catch ( RejectedExecutionException ex ) {
+      flights.remove( key, flight );
+      flight.completeExceptionally( ex );
+    }
+    return flight.copy();
+  }
+
+  private void run( K key, Lambda<V> loader, CompletableFuture<V> flight ) {
+    loads.increment();
+    long start = System.nanoTime();
+    ReentrantLock lock = null;
+    try {
+      if ( locks != null ) {
+        lock = locks.checkOutLock( key );
+        lock.lock();
+      }
+      V value = loader.func();
+      // forget the flight first, a caller that comes after the result is out starts a new load.
+      flights.remove( key, flight );
+      flight.complete( value );
+    } catch ( Throwable ex ) {
+      // anything else, e.g. a checked exception sneaked out of the loader, would leave the flight in the map and hang the key.
+      flights.remove( key, flight );
+      flight.completeExceptionally( ex );
+    } finally {
+      if ( lock != null ) {
+        lock.unlock();
+        locks.checkInLock( key );
+      }
+      if ( timings != null ) {
+        timing( key ).recordSample( start, System.nanoTime() );
+      }
+    }
+  }
+
+  private V await( CompletableFuture<V> flight ) {
+    try {
+      return flight.join();
+    } catch ( CompletionException ex ) {
+      // the loader's failure reaches every caller as it was thrown, even a checked exception sneaked out of the loader.
+      SingleFlight.<RuntimeException>rethrow( ex.getCause() );
+      throw ex;
+    }
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private static <E extends Throwable> void rethrow( Throwable failure ) throws E {
+    throw (E)failure;
+  }
+
+  private Timing timing( K key ) {
+    Timing timing = timings.get( key );
+    if ( timing == null ) {
+      Timing created = new Timing( String.valueOf( key ) );
+      timing = timings.putIfAbsent( key, created );
+      if ( timing == null ) {
+        timing = created;
+      }
+    }
+    return timing;
+  }
+
+  /**
+   * @param key the key.
+   * <p>
+   * @return the timing of the loads of the key or null if the loads are not timed or the key was never loaded.
+   */
+  public Timing getTiming( K key ) {
+    return timings == null ? null : timings.get( key );
+  }
+
+  /**
+   * @return the number of times a loader was run.
+   */
+  public long getLoadCount() {
+    return loads.sum();
+  }
+
+  /**
+   * @return the number of calls that shared a load already in flight instead of running the loader.
+   */
+  public long getSharedCount() {
+    return shared.sum();
+  }
+
+  /**
+   * @return the number of keys with a load in flight.
+   */
+  public int getInFlight() {
+    return flights.size();
+  }
+}
@@ -15,6 +15,12 @@
  */
 package com.bluesoft.endurance.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -43,4 +49,53 @@ public interface ValueBasedReentrantLock<V> {
    */
   ReentrantLock checkOutLock( final V value );
 
+  /**
+   * checks out the locks associated with several values in one operation. Duplicate values are checked out once.
+   * <p>
+   * The default implementation checks out each lock with {@link #checkOutLock(Object)} and orders them by their identity hash code, a lock
+   * stays the same while it is checked out so every thread sees the same order. When two identity hash codes collide, the handle acquires
+   * the locks while holding a global tie lock, implementations that can order their locks without ties should override this.
+   * <p>
+   * @param values the values.
+   * <p>
+   * @return a handle that acquires the locks in a canonical order and checks them in again.
+   */
+  default MultiValueLock<V> checkOutLocks( final Collection<? extends V> values ) {
+    final List<V> keys = new ArrayList<>( new LinkedHashSet<>( values ) );
+    final ReentrantLock[] locks = new ReentrantLock[keys.size()];
+    for ( int i = 0; i < locks.length; i++ ) {
+      locks[i] = checkOutLock( keys.get( i ) );
+    }
+    Integer[] order = new Integer[locks.length];
+    for ( int i = 0; i < order.length; i++ ) {
+      order[i] = i;
+    }
+    Arrays.sort( order, new Comparator<Integer>() {
+      @Override
+      public int compare( Integer a, Integer b ) {
+        return Integer.compare( System.identityHashCode( locks[a] ), System.identityHashCode( locks[b] ) );
+      }
+    } );
+    List<V> sortedValues = new ArrayList<>( order.length );
+    ReentrantLock[] sortedLocks = new ReentrantLock[order.length];
+    boolean tied = false;
+    for ( int i = 0; i < order.length; i++ ) {
+      sortedValues.add( keys.get( order[i] ) );
+      sortedLocks[i] = locks[order[i]];
+      tied |= i > 0 && System.identityHashCode( sortedLocks[i] ) == System.identityHashCode( sortedLocks[i - 1] );
+    }
+    return new MultiValueLock<>( this, sortedValues, sortedLocks, tied );
+  }
+
+  /**
+   * checks in the locks associated with several values in one operation. The default implementation checks in each lock with
+   * {@link #checkInLock(Object)}.
+   * <p>
+   * @param values the distinct values.
+   */
+  default void checkInLocks( final Collection<? extends V> values ) {
+    for ( V value : values ) {
+      checkInLock( value );
+    }
+  }
 }
@@ -0,0 +1,776 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.time.Timing;
+import com.bluesoft.endurance.util.SingleFlight;
+
+/**
+ * A bounded concurrent cache with W-TinyLFU eviction. The entries live in a {@link ConcurrentHashMap}, so reads never lock. What the
+ * eviction policy needs to know about the reads is recorded in small striped ring buffers that drop records when they are full, and the
+ * writes are queued. Both are replayed to the policy later, by whichever thread gets the eviction lock or by the maintenance executor, so
+ * the policy itself needs no concurrency control and never slows down a read.
+ * <p>
+ * The policy keeps a small LRU admission window, 1% of the capacity, in front of a segmented LRU main space split into a probation and a
+ * protected segment, 80% of the main space. An entry that leaves the window only gets into the main space if a {@link FrequencySketch}
+ * says its key is more popular than the key that would have to be evicted for it, so a scan of keys that are seen once does not flush the
+ * entries that are used over and over. The sketch halves its counts periodically so that old popularity fades.
+ * <p>
+ * The capacity is a number of entries or, with a {@link Weigher}, a total weight. Entries may also expire a fixed time after they are
+ * written or last read. Expired entries are not returned and are removed during maintenance, which walks a write order and an access order
+ * list from the oldest end. A read whose record was dropped still refreshes the entry, it just takes its place in the access order when
+ * the walk gets to it.
+ * <p>
+ * Null keys and values are not allowed.
+ * <p>
+ * @param <K> the key type.
+ * @param <V> the value type.
+ * <p>
+ * @author Dana P'Simer &lt;danap@bluesoftdev.com&gt;
+ */
+public class BoundedCache<K, V> {
+
+  /**
+   * Computes the weight of an entry, i.e. its share of the capacity of the cache.
+   * <p>
+   * @param <K> the key type.
+   * @param <V> the value type.
+   */
+  public interface Weigher<K, V> {
+
+    /**
+     * @param key   the key.
+     * @param value the value.
+     * <p>
+     * @return the weight of the entry, not negative.
+     */
+    int weigh( K key, V value );
+  }
+
+  private static final int WINDOW = 0;
+  private static final int PROBATION = 1;
+  private static final int PROTECTED = 2;
+  private static final int UNLINKED = -1;
+  // the links a NodeList goes through.
+  private static final int SEGMENT_LINKS = 0;
+  private static final int WRITE_LINKS = 1;
+  private static final int ACCESS_LINKS = 2;
+  private static final int READ_BUFFER_SIZE = 16;
+  private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+  private final long maximum;
+  private final long windowMaximum;
+  private final long mainMaximum;
+  private final long protectedMaximum;
+  private final Weigher<K, V> weigher;
+  private final long expireAfterWriteNanos;
+  private final long expireAfterAccessNanos;
+  private final Executor executor;
+  private final Ticker ticker;
+  private final ReadBuffer[] readBuffers;
+  private final ConcurrentLinkedQueue<WriteTask<K, V>> writeBuffer = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean maintenanceScheduled = new AtomicBoolean( false );
+  private final Runnable maintenance = new Runnable() {
+    @Override
+    public void run() {
+      maintenanceScheduled.set( false );
+      drain();
+    }
+  };
+  private final SingleFlight<K, V> loads = new SingleFlight<>();
+  private final Timing loadTiming = new Timing( "BoundedCache.load" );
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+  // the policy, only used while holding the eviction lock.
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final FrequencySketch sketch;
+  private final NodeList<K, V> window = new NodeList<>( SEGMENT_LINKS );
+  private final NodeList<K, V> probation = new NodeList<>( SEGMENT_LINKS );
+  private final NodeList<K, V> protectedSegment = new NodeList<>( SEGMENT_LINKS );
+  private final NodeList<K, V> writeOrder = new NodeList<>( WRITE_LINKS );
+  // the segments are not in access order, entries move between them and dropped reads are not replayed, so expiry has its own list.
+  private final NodeList<K, V> accessOrder = new NodeList<>( ACCESS_LINKS );
+  private long windowWeight = 0;
+  private long mainWeight = 0;
+  private long protectedWeight = 0;
+
+  /**
+   * Create a cache of a number of entries that does not expire entries. Maintenance is done by the threads using the cache.
+   * <p>
+   * @param maximumSize the most entries kept.
+   */
+  public BoundedCache( long maximumSize ) {
+    this( maximumSize, null, 0L, 0L, TimeUnit.NANOSECONDS, null );
+  }
+
+  /**
+   * Create a cache.
+   * <p>
+   * @param maximum           the most entries kept or, with a weigher, the largest total weight.
+   * @param weigher           the weigher of the entries, null if every entry weighs 1.
+   * @param expireAfterWrite  the time an entry expires after it was written, 0 if entries do not expire after writes.
+   * @param expireAfterAccess the time an entry expires after it was last read or written, 0 if entries do not expire after reads.
+   * @param unit              the unit of the expiry times.
+   * @param executor          the executor maintenance is done on, null to do it on the threads using the cache.
+   */
+  public BoundedCache( long maximum, Weigher<K, V> weigher, long expireAfterWrite, long expireAfterAccess, TimeUnit unit,
+                       Executor executor ) {
+    this( maximum, weigher, unit.toNanos( expireAfterWrite ), unit.toNanos( expireAfterAccess ), executor, Ticker.SYSTEM );
+  }
+
+  BoundedCache( long maximum, Weigher<K, V> weigher, long expireAfterWriteNanos, long expireAfterAccessNanos, Executor executor,
+                Ticker ticker ) {
+    if ( maximum < 0 || expireAfterWriteNanos < 0 || expireAfterAccessNanos < 0 ) {
+      throw new IllegalArgumentException( "the maximum and the expiry times may not be negative" );
+    }
+    this.maximum = maximum;
+    this.windowMaximum = Math.min( maximum, Math.max( 1L, maximum / 100 ) );
+    this.mainMaximum = maximum - windowMaximum;
+    this.protectedMaximum = mainMaximum * 8 / 10;
+    this.weigher = weigher;
+    this.expireAfterWriteNanos = expireAfterWriteNanos;
+    this.expireAfterAccessNanos = expireAfterAccessNanos;
+    this.executor = executor;
+    this.ticker = ticker;
+    this.sketch = new FrequencySketch( weigher == null ? maximum : Math.min( maximum, 1 << 20 ) );
+    int stripes = 4;
+    while (stripes < 4 * Runtime.getRuntime().availableProcessors() && stripes < 64) {
+      stripes <<= 1;
+    }
+    readBuffers = new ReadBuffer[stripes];
+    for ( int i = 0; i < stripes; i++ ) {
+      readBuffers[i] = new ReadBuffer();
+    }
+  }
+
+  /**
+   * @param key the key.
+   * <p>
+   * @return the value cached for the key or null if there is none or it expired.
+   */
+  public V get( K key ) {
+    Node<K, V> node = data.get( key );
+    if ( node == null ) {
+      misses.increment();
+      return null;
+    }
+    long now = expires() ? ticker.nanoTime() : 0L;
+    if ( hasExpired( node, now ) ) {
+      misses.increment();
+      if ( data.remove( key, node ) ) {
+        expirations.increment();
+        retire( node );
+      }
+      return null;
+    }
+    if ( expireAfterAccessNanos > 0 ) {
+      node.accessTime = now;
+    }
+    hits.increment();
+    afterRead( node );
+    return node.value;
+  }
+
+  /**
+   * Get the value cached for a key, loading it if there is none. Concurrent loads of the same key are coalesced, only one caller runs the
+   * loader and the others wait for its result, see {@link SingleFlight}. The loads are timed, see {@link #getLoadTiming()}.
+   * <p>
+   * @param key    the key.
+   * @param loader the loader, must not return null.
+   * <p>
+   * @return the cached or loaded value.
+   */
+  public V get( final K key, final Lambda<V> loader ) {
+    V value = get( key );
+    if ( value != null ) {
+      return value;
+    }
+    return loads.load( key, new Lambda<V>() {
+      @Override
+      public V func() {
+        V loaded = loadTiming.time( loader );
+        put( key, loaded );
+        return loaded;
+      }
+    } );
+  }
+
+  /**
+   * Cache a value.
+   * <p>
+   * @param key   the key.
+   * @param value the value.
+   * <p>
+   * @return the value previously cached for the key or null.
+   */
+  public V put( K key, V value ) {
+    if ( key == null || value == null ) {
+      throw new IllegalArgumentException( "null keys and values are not allowed" );
+    }
+    int weight = weigher == null ? 1 : weigher.weigh( key, value );
+    if ( weight < 0 ) {
+      throw new IllegalArgumentException( "negative weight " + weight + " for " + key );
+    }
+    long now = expires() ? ticker.nanoTime() : 0L;
+    Node<K, V> node = new Node<>( key, value, weight, now );
+    Node<K, V> old = data.put( key, node );
+    if ( old != null ) {
+      retire( old );
+    }
+    afterWrite( new WriteTask<>( node, true ) );
+    return old == null || hasExpired( old, now ) ? null : old.value;
+  }
+
+  /**
+   * Remove the value cached for a key.
+   * <p>
+   * @param key the key.
+   * <p>
+   * @return the value that was cached for the key or null.
+   */
+  public V remove( K key ) {
+    Node<K, V> node = data.remove( key );
+    if ( node == null ) {
+      return null;
+    }
+    retire( node );
+    return node.value;
+  }
+
+  /**
+   * Remove all the cached values.
+   */
+  public void clear() {
+    for ( K key : data.keySet() ) {
+      remove( key );
+    }
+  }
+
+  /**
+   * @return the number of entries in the cache. Writes and evictions are applied to the policy in batches, so for a moment the cache may
+   *         hold more entries than its maximum.
+   */
+  public long size() {
+    return data.size();
+  }
+
+  /**
+   * @return the total weight of the entries known to the policy.
+   */
+  public long getWeightedSize() {
+    evictionLock.lock();
+    try {
+      return windowWeight + mainWeight;
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Apply all the pending reads and writes to the policy and evict and expire entries now, waiting for the eviction lock if need be.
+   */
+  public void cleanUp() {
+    evictionLock.lock();
+    try {
+      maintain();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of reads that found a value.
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * @return the number of reads that did not find a value.
+   */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the share of the reads that found a value, 0 if there were no reads.
+   */
+  public double getHitRate() {
+    long hitCount = hits.sum();
+    long total = hitCount + misses.sum();
+    return total == 0 ? 0.0 : (double)hitCount / total;
+  }
+
+  /**
+   * @return the number of entries evicted to stay within the maximum.
+   */
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * @return the number of entries removed because they expired.
+   */
+  public long getExpirationCount() {
+    return expirations.sum();
+  }
+
+  /**
+   * @return the timing of the loads run by {@link #get(java.lang.Object, com.bluesoft.endurance.instrumentation.Lambda)}.
+   */
+  public Timing getLoadTiming() {
+    return loadTiming;
+  }
+
+  private boolean expires() {
+    return expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0;
+  }
+
+  private boolean hasExpired( Node<K, V> node, long now ) {
+    return (expireAfterWriteNanos > 0 && now - node.writeTime >= expireAfterWriteNanos)
+           || (expireAfterAccessNanos > 0 && now - node.accessTime >= expireAfterAccessNanos);
+  }
+
+  // called once the node is no longer in the map.
+  private void retire( Node<K, V> node ) {
+    node.retired = true;
+    afterWrite( new WriteTask<>( node, false ) );
+  }
+
+  private void afterRead( Node<K, V> node ) {
+    int id = System.identityHashCode( Thread.currentThread() );
+    int stripe = (id ^ (id >>> 16)) * 0x9E3779B9 >>> 16 & (readBuffers.length - 1);
+    if ( !readBuffers[stripe].offer( node ) ) {
+      scheduleDrain();
+    }
+  }
+
+  private void afterWrite( WriteTask<K, V> task ) {
+    writeBuffer.add( task );
+    scheduleDrain();
+  }
+
+  private void scheduleDrain() {
+    if ( executor == null ) {
+      drain();
+    } else if ( maintenanceScheduled.compareAndSet( false, true ) ) {
+      try {
+        executor.execute( maintenance );
+      } catch ( RejectedExecutionException ex ) {
+        maintenanceScheduled.set( false );
+        drain();
+      }
+    }
+  }
+
+  private void drain() {
+    // a write queued while another thread held the lock is picked up by that thread once it let go of the lock.
+    while (evictionLock.tryLock()) {
+      try {
+        maintain();
+      } finally {
+        evictionLock.unlock();
+      }
+      if ( writeBuffer.isEmpty() ) {
+        break;
+      }
+    }
+  }
+
+  // only called while holding the eviction lock.
+  private void maintain() {
+    for ( ReadBuffer buffer : readBuffers ) {
+      buffer.drain( this );
+    }
+    WriteTask<K, V> task;
+    while ((task = writeBuffer.poll()) != null) {
+      if ( task.add ) {
+        onAdd( task.node );
+      } else {
+        unlink( task.node );
+      }
+    }
+    if ( expires() ) {
+      expire( ticker.nanoTime() );
+    }
+    evict();
+  }
+
+  private void onAdd( Node<K, V> node ) {
+    if ( node.retired ) {
+      // replaced or removed before its addition was replayed.
+      return;
+    }
+    sketch.increment( node.key );
+    node.queue = WINDOW;
+    window.linkLast( node );
+    windowWeight += node.weight;
+    if ( expireAfterWriteNanos > 0 ) {
+      writeOrder.linkLast( node );
+    }
+    if ( expireAfterAccessNanos > 0 ) {
+      node.orderedAccessTime = node.accessTime;
+      accessOrder.linkLast( node );
+    }
+  }
+
+  private void onAccess( Node<K, V> node ) {
+    sketch.increment( node.key );
+    if ( expireAfterAccessNanos > 0 && node.queue != UNLINKED ) {
+      node.orderedAccessTime = node.accessTime;
+      accessOrder.moveToLast( node );
+    }
+    switch ( node.queue ) {
+      case WINDOW:
+        window.moveToLast( node );
+        break;
+      case PROBATION:
+        probation.unlink( node );
+        node.queue = PROTECTED;
+        protectedSegment.linkLast( node );
+        protectedWeight += node.weight;
+        // demote the least recently used protected entries to make room.
+        while (protectedWeight > protectedMaximum) {
+          Node<K, V> demoted = protectedSegment.first;
+          protectedSegment.unlink( demoted );
+          protectedWeight -= demoted.weight;
+          demoted.queue = PROBATION;
+          probation.linkLast( demoted );
+        }
+        break;
+      case PROTECTED:
+        protectedSegment.moveToLast( node );
+        break;
+      default:
+      // not added yet or already removed.
+    }
+  }
+
+  private void unlink( Node<K, V> node ) {
+    switch ( node.queue ) {
+      case WINDOW:
+        window.unlink( node );
+        windowWeight -= node.weight;
+        break;
+      case PROBATION:
+        probation.unlink( node );
+        mainWeight -= node.weight;
+        break;
+      case PROTECTED:
+        protectedSegment.unlink( node );
+        mainWeight -= node.weight;
+        protectedWeight -= node.weight;
+        break;
+      default:
+        return;
+    }
+    node.queue = UNLINKED;
+    if ( expireAfterWriteNanos > 0 ) {
+      writeOrder.unlink( node );
+    }
+    if ( expireAfterAccessNanos > 0 ) {
+      accessOrder.unlink( node );
+    }
+  }
+
+  private void evict() {
+    while (windowWeight > windowMaximum) {
+      Node<K, V> candidate = window.first;
+      window.unlink( candidate );
+      windowWeight -= candidate.weight;
+      candidate.queue = UNLINKED;
+      admit( candidate );
+    }
+    // an entry heavier than the whole main space can leave the window over the maximum.
+    while (windowWeight + mainWeight > maximum) {
+      Node<K, V> victim = probation.first != null ? probation.first : protectedSegment.first != null ? protectedSegment.first
+                                                                      : window.first;
+      discard( victim, evictions );
+    }
+  }
+
+  // the TinyLFU filter: a candidate from the window only displaces the least recently used main entries if its key is more popular.
+  private void admit( Node<K, V> candidate ) {
+    for ( ;; ) {
+      if ( mainWeight + candidate.weight <= mainMaximum ) {
+        candidate.queue = PROBATION;
+        probation.linkLast( candidate );
+        mainWeight += candidate.weight;
+        return;
+      }
+      Node<K, V> victim = probation.first != null ? probation.first : protectedSegment.first;
+      if ( victim == null || candidate.weight > mainMaximum
+           || sketch.frequency( candidate.key ) <= sketch.frequency( victim.key ) ) {
+        if ( expireAfterWriteNanos > 0 ) {
+          writeOrder.unlink( candidate );
+        }
+        if ( expireAfterAccessNanos > 0 ) {
+          accessOrder.unlink( candidate );
+        }
+        if ( data.remove( candidate.key, candidate ) ) {
+          candidate.retired = true;
+          evictions.increment();
+        }
+        return;
+      }
+      discard( victim, evictions );
+    }
+  }
+
+  private void expire( long now ) {
+    if ( expireAfterAccessNanos > 0 ) {
+      expireAfterAccess( now );
+    }
+    if ( expireAfterWriteNanos > 0 ) {
+      while (writeOrder.first != null && now - writeOrder.first.writeTime >= expireAfterWriteNanos) {
+        discard( writeOrder.first, expirations );
+      }
+    }
+  }
+
+  // a node read since its place in the access order was set had its read record dropped, it moves to the end instead of ending the scan.
+  // Each node is looked at once at most, the scan stops after the node that was last when it started.
+  private void expireAfterAccess( long now ) {
+    Node<K, V> end = accessOrder.last;
+    Node<K, V> node;
+    while ((node = accessOrder.first) != null) {
+      long accessTime = node.accessTime;
+      if ( now - accessTime >= expireAfterAccessNanos ) {
+        discard( node, expirations );
+      } else if ( accessTime != node.orderedAccessTime ) {
+        node.orderedAccessTime = accessTime;
+        accessOrder.moveToLast( node );
+      } else {
+        return;
+      }
+      if ( node == end ) {
+        return;
+      }
+    }
+  }
+
+  // removes a node the policy decided to let go of, it is only counted if it was still in the map.
+  private void discard( Node<K, V> node, LongAdder counter ) {
+    unlink( node );
+    if ( data.remove( node.key, node ) ) {
+      node.retired = true;
+      counter.increment();
+    }
+  }
+
+  abstract static class Ticker {
+
+    static final Ticker SYSTEM = new Ticker() {
+      @Override
+      long nanoTime() {
+        return System.nanoTime();
+      }
+    };
+
+    abstract long nanoTime();
+  }
+
+  private static final class Node<K, V> {
+
+    private final K key;
+    private final V value;
+    private final int weight;
+    private final long writeTime;
+    private volatile long accessTime;
+    private volatile boolean retired = false;
+    // only used while holding the eviction lock.
+    private int queue = UNLINKED;
+    private Node<K, V> prev;
+    private Node<K, V> next;
+    private Node<K, V> writePrev;
+    private Node<K, V> writeNext;
+    private Node<K, V> accessPrev;
+    private Node<K, V> accessNext;
+    // the access time when the node took its place in the access order.
+    private long orderedAccessTime;
+
+    Node( K key, V value, int weight, long now ) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+      this.writeTime = now;
+      this.accessTime = now;
+    }
+  }
+
+  // a doubly linked list through the segment, the write order or the access order links of the nodes.
+  private static final class NodeList<K, V> {
+
+    private final int links;
+    private Node<K, V> first;
+    private Node<K, V> last;
+
+    NodeList( int links ) {
+      this.links = links;
+    }
+
+    private Node<K, V> prev( Node<K, V> node ) {
+      switch ( links ) {
+        case WRITE_LINKS:
+          return node.writePrev;
+        case ACCESS_LINKS:
+          return node.accessPrev;
+        default:
+          return node.prev;
+      }
+    }
+
+    private Node<K, V> next( Node<K, V> node ) {
+      switch ( links ) {
+        case WRITE_LINKS:
+          return node.writeNext;
+        case ACCESS_LINKS:
+          return node.accessNext;
+        default:
+          return node.next;
+      }
+    }
+
+    private void setPrev( Node<K, V> node, Node<K, V> prev ) {
+      switch ( links ) {
+        case WRITE_LINKS:
+          node.writePrev = prev;
+          break;
+        case ACCESS_LINKS:
+          node.accessPrev = prev;
+          break;
+        default:
+          node.prev = prev;
+      }
+    }
+
+    private void setNext( Node<K, V> node, Node<K, V> next ) {
+      switch ( links ) {
+        case WRITE_LINKS:
+          node.writeNext = next;
+          break;
+        case ACCESS_LINKS:
+          node.accessNext = next;
+          break;
+        default:
+          node.next = next;
+      }
+    }
+
+    void linkLast( Node<K, V> node ) {
+      setPrev( node, last );
+      setNext( node, null );
+      if ( last == null ) {
+        first = node;
+      } else {
+        setNext( last, node );
+      }
+      last = node;
+    }
+
+    // unlinking a node that is not in the list does nothing.
+    void unlink( Node<K, V> node ) {
+      Node<K, V> prev = prev( node );
+      Node<K, V> next = next( node );
+      if ( prev == null && first != node ) {
+        return;
+      }
+      if ( prev == null ) {
+        first = next;
+      } else {
+        setNext( prev, next );
+      }
+      if ( next == null ) {
+        last = prev;
+      } else {
+        setPrev( next, prev );
+      }
+      setPrev( node, null );
+      setNext( node, null );
+    }
+
+    void moveToLast( Node<K, V> node ) {
+      if ( last != node ) {
+        unlink( node );
+        linkLast( node );
+      }
+    }
+  }
+
+  private static final class WriteTask<K, V> {
+
+    private final Node<K, V> node;
+    private final boolean add;
+
+    WriteTask( Node<K, V> node, boolean add ) {
+      this.node = node;
+      this.add = add;
+    }
+  }
+
+  // a lossy ring buffer of reads, filled by any thread and drained while holding the eviction lock.
+  private static final class ReadBuffer {
+
+    private final AtomicReferenceArray<Node<?, ?>> buffer = new AtomicReferenceArray<>( READ_BUFFER_SIZE );
+    private final AtomicLong tail = new AtomicLong( 0 );
+    private volatile long head = 0;
+
+    // returns false if the buffer is full and should be drained, the read is dropped then.
+    boolean offer( Node<?, ?> node ) {
+      long h = head;
+      long t = tail.get();
+      if ( t - h >= READ_BUFFER_SIZE ) {
+        return false;
+      }
+      if ( tail.compareAndSet( t, t + 1 ) ) {
+        buffer.lazySet( (int)t & (READ_BUFFER_SIZE - 1), node );
+        return t + 1 - h < READ_BUFFER_SIZE;
+      }
+      // lost a race with another reader, dropping the read is cheaper than retrying.
+      return true;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    <K, V> void drain( BoundedCache<K, V> cache ) {
+      long h = head;
+      long t = tail.get();
+      for ( ; h < t; h++ ) {
+        int index = (int)h & (READ_BUFFER_SIZE - 1);
+        Node<?, ?> node = buffer.get( index );
+        if ( node == null ) {
+          // the reader that claimed the slot has not written it yet.
+          break;
+        }
+        buffer.lazySet( index, null );
+        cache.onAccess( (Node<K, V>)node );
+      }
+      head = h;
+    }
+  }
+}
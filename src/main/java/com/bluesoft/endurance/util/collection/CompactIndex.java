@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+/**
+ * The open addressing hash index shared by {@link CompactMap} and {@link CompactSet}. The keys are kept in insertion order in a flat array,
+ * {@code stride} slots apart, and the index maps a key's hash to its position plus one, 0 marking an empty slot. The index is at most half
+ * full so probes are short. Collections of up to {@link #LINEAR_MAX} keys have no index and are scanned instead.
+ * <p>
+ * @author Dana P'Simer &lt;danap@bluesoftdev.com&gt;
+ */
+final class CompactIndex {
+
+  static final int LINEAR_MAX = 4;
+
+  private CompactIndex() {
+  }
+
+  static int hash( Object key ) {
+    int h = key == null ? 0 : key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  static boolean eq( Object a, Object b ) {
+    return a == b || (a != null && a.equals( b ));
+  }
+
+  /**
+   * @return the index for the first {@code count} keys or null if they are few enough to scan.
+   */
+  static int[] build( Object[] table, int stride, int count ) {
+    if ( count <= LINEAR_MAX ) {
+      return null;
+    }
+    int[] index = allocate( count );
+    for ( int i = 0; i < count; i++ ) {
+      add( index, table, stride, i );
+    }
+    return index;
+  }
+
+  /**
+   * @return an empty index for up to {@code count} keys, null if they are few enough to scan.
+   */
+  static int[] allocate( int count ) {
+    return count <= LINEAR_MAX ? null : new int[Integer.highestOneBit( count * 2 - 1 ) << 1];
+  }
+
+  /**
+   * Add the key at the position to the index, the key must not be in the index yet.
+   */
+  static void add( int[] index, Object[] table, int stride, int position ) {
+    if ( index == null ) {
+      return;
+    }
+    int mask = index.length - 1;
+    int slot = hash( table[position * stride] ) & mask;
+    while (index[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    index[slot] = position + 1;
+  }
+
+  /**
+   * @return the position of the key or -1 if it is not among the first {@code count} keys.
+   */
+  static int find( int[] index, Object[] table, int stride, int count, Object key ) {
+    if ( index == null ) {
+      for ( int i = 0; i < count; i++ ) {
+        if ( eq( table[i * stride], key ) ) {
+          return i;
+        }
+      }
+      return -1;
+    }
+    int mask = index.length - 1;
+    int slot = hash( key ) & mask;
+    int entry;
+    while ((entry = index[slot]) != 0) {
+      if ( eq( table[(entry - 1) * stride], key ) ) {
+        return entry - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map that keeps its keys and values interleaved in one array in insertion order, indexed by a {@link CompactIndex}. See
+ * {@link Maps#immutableMap(Object[])}.
+ * <p>
+ * @author Dana P'Simer &lt;danap@bluesoftdev.com&gt;
+ */
+final class CompactMap<K, V> extends AbstractMap<K, V> {
+
+  static final CompactMap<Object, Object> EMPTY = new CompactMap<>( new Object[0], 0, null );
+  private final Object[] table;
+  private final int size;
+  private final int[] index;
+
+  private CompactMap( Object[] table, int size, int[] index ) {
+    this.table = table;
+    this.size = size;
+    this.index = index;
+  }
+
+  /**
+   * Make a map from alternating keys and values. A key that appears more than once keeps its first position and its last value, as in a
+   * {@link java.util.LinkedHashMap}.
+   */
+  @SuppressWarnings( "unchecked" )
+  static <K, V> Map<K, V> of( Object[] keysAndValues, int pairs ) {
+    if ( pairs == 0 ) {
+      return (Map<K, V>)EMPTY;
+    }
+    Object[] table = new Object[pairs * 2];
+    int[] index = CompactIndex.allocate( pairs );
+    int size = 0;
+    for ( int i = 0; i < pairs; i++ ) {
+      int existing = CompactIndex.find( index, table, 2, size, keysAndValues[i * 2] );
+      if ( existing >= 0 ) {
+        table[existing * 2 + 1] = keysAndValues[i * 2 + 1];
+      } else {
+        table[size * 2] = keysAndValues[i * 2];
+        table[size * 2 + 1] = keysAndValues[i * 2 + 1];
+        CompactIndex.add( index, table, 2, size );
+        size += 1;
+      }
+    }
+    if ( size < pairs ) {
+      // there were duplicate keys, trim the table and size the index for the keys that are left.
+      table = Arrays.copyOf( table, size * 2 );
+      index = CompactIndex.build( table, 2, size );
+    }
+    return new CompactMap<>( table, size, index );
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey( Object key ) {
+    return CompactIndex.find( index, table, 2, size, key ) >= 0;
+  }
+
+  @Override
+  @SuppressWarnings( "unchecked" )
+  public V get( Object key ) {
+    int i = CompactIndex.find( index, table, 2, size, key );
+    return i < 0 ? null : (V)table[i * 2 + 1];
+  }
+
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    return new AbstractSet<Entry<K, V>>() {
+      @Override
+      public Iterator<Entry<K, V>> iterator() {
+        return new Iterator<Entry<K, V>>() {
+          private int next = 0;
+
+          @Override
+          public boolean hasNext() {
+            return next < size;
+          }
+
+          @Override
+          @SuppressWarnings( "unchecked" )
+          public Entry<K, V> next() {
+            if ( next >= size ) {
+              throw new NoSuchElementException();
+            }
+            int i = next++;
+            return new SimpleImmutableEntry<>( (K)table[i * 2], (V)table[i * 2 + 1] );
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException( "immutable map" );
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable set that keeps its elements in one array in insertion order, indexed by a {@link CompactIndex}. See
+ * {@link Sets#immutableSet(Object[])}.
+ * <p>
+ * @author Dana P'Simer &lt;danap@bluesoftdev.com&gt;
+ */
+final class CompactSet<E> extends AbstractSet<E> {
+
+  static final CompactSet<Object> EMPTY = new CompactSet<>( new Object[0], 0, null );
+  private final Object[] elements;
+  private final int size;
+  private final int[] index;
+
+  private CompactSet( Object[] elements, int size, int[] index ) {
+    this.elements = elements;
+    this.size = size;
+    this.index = index;
+  }
+
+  /**
+   * Make a set, duplicate elements keep their first position.
+   */
+  @SuppressWarnings( "unchecked" )
+  static <E> Set<E> of( Object[] args ) {
+    if ( args.length == 0 ) {
+      return (Set<E>)EMPTY;
+    }
+    Object[] elements = new Object[args.length];
+    int[] index = CompactIndex.allocate( args.length );
+    int size = 0;
+    for ( Object arg : args ) {
+      if ( CompactIndex.find( index, elements, 1, size, arg ) < 0 ) {
+        elements[size] = arg;
+        CompactIndex.add( index, elements, 1, size );
+        size += 1;
+      }
+    }
+    if ( size < args.length ) {
+      // there were duplicates, trim the elements and size the index for the ones that are left.
+      elements = Arrays.copyOf( elements, size );
+      index = CompactIndex.build( elements, 1, size );
+    }
+    return new CompactSet<>( elements, size, index );
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean contains( Object o ) {
+    return CompactIndex.find( index, elements, 1, size, o ) >= 0;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<E>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      @SuppressWarnings( "unchecked" )
+      public E next() {
+        if ( next >= size ) {
+          throw new NoSuchElementException();
+        }
+        return (E)elements[next++];
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException( "immutable set" );
+      }
+    };
+  }
+}
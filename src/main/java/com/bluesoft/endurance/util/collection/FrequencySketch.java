@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+/**
+ * A count-min sketch of the popularity of keys for the TinyLFU admission filter of {@link BoundedCache}. Every key has four 4 bit
+ * counters, each in a long picked by a different hash, and its frequency is the smallest of them, so a key's estimate is never lower
+ * than its true count but collisions may raise it. The counters saturate at 15. The table is capped at {@value #MAXIMUM_LENGTH} longs,
+ * a larger cache shares counters between more keys.
+ * <p>
+ * The sketch ages: once the number of increments reaches ten times the length of the table, every counter is halved, so keys that were
+ * popular long ago lose their advantage over keys that are popular now. Not thread safe, the cache only uses
+ * it while holding its eviction lock.
+ * <p>
+ * @author Dana P'Simer &lt;danap@bluesoftdev.com&gt;
+ */
+final class FrequencySketch {
+
+  private static final int MAXIMUM_LENGTH = 1 << 22;
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+  private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+  private final long[] table;
+  private final int tableMask;
+  private final int sampleSize;
+  private int size = 0;
+
+  /**
+   * @param maximumSize the number of keys the sketch should tell apart, e.g. the maximum size of the cache.
+   */
+  FrequencySketch( long maximumSize ) {
+    int length = 8;
+    while (length < Math.min( maximumSize, MAXIMUM_LENGTH )) {
+      length <<= 1;
+    }
+    table = new long[length];
+    tableMask = length - 1;
+    sampleSize = (int)Math.min( 10L * length, Integer.MAX_VALUE );
+  }
+
+  /**
+   * @param key the key.
+   * <p>
+   * @return the estimated number of times the key was seen, at most 15.
+   */
+  int frequency( Object key ) {
+    int hash = spread( key.hashCode() );
+    int start = (hash & 3) << 2;
+    int frequency = 15;
+    for ( int i = 0; i < 4; i++ ) {
+      long word = table[indexOf( hash, i )];
+      frequency = Math.min( frequency, (int)((word >>> ((start + i) << 2)) & 0xfL) );
+    }
+    return frequency;
+  }
+
+  /**
+   * Count an occurrence of a key, halving all the counters once the sample size is reached.
+   * <p>
+   * @param key the key.
+   */
+  void increment( Object key ) {
+    int hash = spread( key.hashCode() );
+    int start = (hash & 3) << 2;
+    boolean added = false;
+    for ( int i = 0; i < 4; i++ ) {
+      added |= incrementAt( indexOf( hash, i ), start + i );
+    }
+    if ( added && ++size == sampleSize ) {
+      reset();
+    }
+  }
+
+  private boolean incrementAt( int index, int counter ) {
+    int offset = counter << 2;
+    long mask = 0xfL << offset;
+    if ( (table[index] & mask) != mask ) {
+      table[index] += 1L << offset;
+      return true;
+    }
+    return false;
+  }
+
+  private void reset() {
+    int odd = 0;
+    for ( int i = 0; i < table.length; i++ ) {
+      odd += Long.bitCount( table[i] & ONE_MASK );
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    // every odd counter lost a half when it was halved, a quarter per key.
+    size = (size >>> 1) - (odd >>> 2);
+  }
+
+  private int indexOf( int hash, int i ) {
+    long h = (hash + SEEDS[i]) * SEEDS[i];
+    h += h >>> 32;
+    return (int)h & tableMask;
+  }
+
+  private static int spread( int x ) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+import java.util.Objects;
+
+/**
+ * An immutable pair of a {@code long} and an object that does not box the {@code long}, e.g. a composite key of an id and a name. The hash
+ * code is computed once.
+ * <p>
+ * @param <R> the type of the right element.
+ * <p>
+ * @author Dana P'Simer &lt;danap@bluesoftdev.com&gt;
+ */
+public final class LongObjPair<R> {
+
+  private final long left;
+  private final R right;
+  // 0 until computed, see String.hashCode().
+  private int hash;
+
+  private LongObjPair( long left, R right ) {
+    this.left = left;
+    this.right = right;
+  }
+
+  /**
+   * @return the left hand value.
+   */
+  public long getLeft() {
+    return left;
+  }
+
+  /**
+   * @return the right hand value.
+   */
+  public R getRight() {
+    return right;
+  }
+
+  @Override
+  public boolean equals( Object obj ) {
+    if ( obj == this ) {
+      return true;
+    }
+    if ( !(obj instanceof LongObjPair) ) {
+      return false;
+    }
+    LongObjPair<?> other = (LongObjPair<?>)obj;
+    return left == other.left && hashCode() == other.hashCode() && Objects.equals( right, other.right );
+  }
+
+  @Override
+  public int hashCode() {
+    int h = hash;
+    if ( h == 0 ) {
+      h = 31 * (31 + Long.hashCode( left )) + Objects.hashCode( right );
+      hash = h;
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return "(" + left + ", " + right + ")";
+  }
+
+  /**
+   * Make a pair.
+   * <p>
+   * @param <R>   the type of the right hand value.
+   * @param left  the left hand value.
+   * @param right the right hand value.
+   * <p>
+   * @return the pair.
+   */
+  public static <R> LongObjPair<R> pairOf( long left, R right ) {
+    return new LongObjPair<>( left, right );
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent hash map from {@code long} keys to objects that does not box the keys. Like {@link LongObjectHashMap} it uses open
+ * addressing over arrays, here atomic ones. Reads never lock: a reader probes the current table and the value of a slot is published after
+ * its key, so a reader that sees a value also sees the key it belongs to. Writes are serialized by a lock.
+ * <p>
+ * The key of a slot never changes within a table, so a reader that matches a key cannot pick up the value of another key. Removal
+ * therefore leaves a tombstone that only a put of the same key can reuse.
+ * When live entries and tombstones fill half the table it is rebuilt into a new table, which is then published. A read that started on
+ * the old table finishes there and sees the map as it was when the read began.
+ * <p>
+ * Null values are not allowed.
+ * <p>
+ * @param <V> the value type.
+ * <p>
+ * @author Dana P'Simer &lt;danap@bluesoftdev.com&gt;
+ */
+public class LongObjectConcurrentMap<V> {
+
+  private static final int MIN_CAPACITY = 8;
+  private static final Object TOMBSTONE = new Object();
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private volatile Table table;
+  // only changed while holding the write lock.
+  private volatile int size = 0;
+  private int tombstones = 0;
+
+  /**
+   * Create an empty map.
+   */
+  public LongObjectConcurrentMap() {
+    this( MIN_CAPACITY / 2 );
+  }
+
+  /**
+   * Create an empty map.
+   * <p>
+   * @param expectedSize the number of mappings the map can hold without growing.
+   */
+  public LongObjectConcurrentMap( int expectedSize ) {
+    table = new Table( capacityFor( expectedSize ) );
+  }
+
+  private static int capacityFor( int expectedSize ) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * @param key the key.
+   * <p>
+   * @return the value mapped to the key or null.
+   */
+  @SuppressWarnings( "unchecked" )
+  public V get( long key ) {
+    Table t = table;
+    int mask = t.mask;
+    for ( int i = LongObjectHashMap.slot( key, mask );; i = (i + 1) & mask ) {
+      // read the value first, its key was written before it.
+      Object value = t.values.get( i );
+      if ( value == null ) {
+        return null;
+      }
+      if ( t.keys.get( i ) == key && value != TOMBSTONE ) {
+        return (V)value;
+      }
+    }
+  }
+
+  /**
+   * @param key the key.
+   * <p>
+   * @return true if a value is mapped to the key.
+   */
+  public boolean containsKey( long key ) {
+    return get( key ) != null;
+  }
+
+  /**
+   * Map a value to a key.
+   * <p>
+   * @param key   the key.
+   * @param value the value, not null.
+   * <p>
+   * @return the value previously mapped to the key or null.
+   */
+  public V put( long key, V value ) {
+    return put( key, value, false );
+  }
+
+  /**
+   * Map a value to a key unless the key is already mapped.
+   * <p>
+   * @param key   the key.
+   * @param value the value, not null.
+   * <p>
+   * @return the value already mapped to the key, or null if the value was mapped.
+   */
+  public V putIfAbsent( long key, V value ) {
+    V current = get( key );
+    return current != null ? current : put( key, value, true );
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private V put( long key, V value, boolean onlyIfAbsent ) {
+    if ( value == null ) {
+      throw new IllegalArgumentException( "null values are not allowed" );
+    }
+    writeLock.lock();
+    try {
+      Table t = table;
+      int mask = t.mask;
+      int i = LongObjectHashMap.slot( key, mask );
+      for ( Object current = t.values.get( i ); current != null; current = t.values.get( i ) ) {
+        if ( t.keys.get( i ) == key ) {
+          if ( current != TOMBSTONE ) {
+            if ( !onlyIfAbsent ) {
+              t.values.set( i, value );
+            }
+            return (V)current;
+          }
+          // the key's own tombstone is the only one that may be reused.
+          t.values.set( i, value );
+          tombstones -= 1;
+          size += 1;
+          return null;
+        }
+        i = (i + 1) & mask;
+      }
+      t.keys.set( i, key );
+      t.values.set( i, value );
+      size += 1;
+      if ( (size + tombstones) * 2 > t.values.length() ) {
+        rebuild( t );
+      }
+      return null;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Remove the mapping of a key.
+   * <p>
+   * @param key the key.
+   * <p>
+   * @return the value that was mapped to the key or null.
+   */
+  public V remove( long key ) {
+    return remove( key, null );
+  }
+
+  /**
+   * Remove the mapping of a key if it is mapped to the given value.
+   * <p>
+   * @param key   the key.
+   * @param value the value, compared by identity, or null to remove whatever is mapped.
+   * <p>
+   * @return the value that was mapped to the key or null if nothing was removed.
+   */
+  @SuppressWarnings( "unchecked" )
+  public V remove( long key, V value ) {
+    writeLock.lock();
+    try {
+      Table t = table;
+      int mask = t.mask;
+      int i = LongObjectHashMap.slot( key, mask );
+      for ( Object current = t.values.get( i ); current != null; current = t.values.get( i ) ) {
+        if ( current != TOMBSTONE && t.keys.get( i ) == key ) {
+          if ( value != null && current != value ) {
+            return null;
+          }
+          t.values.set( i, TOMBSTONE );
+          size -= 1;
+          tombstones += 1;
+          return (V)current;
+        }
+        i = (i + 1) & mask;
+      }
+      return null;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  // only called while holding the write lock, grows the table only if the live entries need it.
+  private void rebuild( Table old ) {
+    Table t = new Table( capacityFor( size ) );
+    int mask = t.mask;
+    for ( int j = 0; j < old.values.length(); j++ ) {
+      Object value = old.values.get( j );
+      if ( value != null && value != TOMBSTONE ) {
+        long key = old.keys.get( j );
+        int i = LongObjectHashMap.slot( key, mask );
+        while (t.values.get( i ) != null) {
+          i = (i + 1) & mask;
+        }
+        t.keys.set( i, key );
+        t.values.set( i, value );
+      }
+    }
+    tombstones = 0;
+    table = t;
+  }
+
+  /**
+   * @return the number of mappings.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return true if there are no mappings.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Remove all the mappings.
+   */
+  public void clear() {
+    writeLock.lock();
+    try {
+      table = new Table( MIN_CAPACITY );
+      size = 0;
+      tombstones = 0;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * @return the keys, in no particular order, of the table as it is when the call begins. Concurrent writes may or may not be seen.
+   */
+  public long[] keys() {
+    Table t = table;
+    long[] ret = new long[t.values.length()];
+    int n = 0;
+    for ( int i = 0; i < ret.length; i++ ) {
+      Object value = t.values.get( i );
+      if ( value != null && value != TOMBSTONE ) {
+        ret[n++] = t.keys.get( i );
+      }
+    }
+    return Arrays.copyOf( ret, n );
+  }
+
+  private static final class Table {
+
+    private final AtomicLongArray keys;
+    private final AtomicReferenceArray<Object> values;
+    private final int mask;
+
+    Table( int capacity ) {
+      keys = new AtomicLongArray( capacity );
+      values = new AtomicReferenceArray<>( capacity );
+      mask = capacity - 1;
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from {@code long} keys to objects that does not box the keys. The keys and values are kept in two parallel arrays with open
+ * addressing and linear probing, so there is no entry object per mapping. Removal shifts the following entries of the probe sequence
+ * back, so no tombstones build up. Null values are not allowed, a null slot marks an empty one. Not thread safe, see
+ * {@link LongObjectConcurrentMap}.
+ * <p>
+ * @param <V> the value type.
+ * <p>
+ * @author Dana P'Simer &lt;danap@bluesoftdev.com&gt;
+ */
+public class LongObjectHashMap<V> {
+
+  private static final int MIN_CAPACITY = 8;
+  private long[] keys;
+  private Object[] values;
+  private int size = 0;
+
+  /**
+   * Create an empty map.
+   */
+  public LongObjectHashMap() {
+    this( MIN_CAPACITY / 2 );
+  }
+
+  /**
+   * Create an empty map.
+   * <p>
+   * @param expectedSize the number of mappings the map can hold without growing.
+   */
+  public LongObjectHashMap( int expectedSize ) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    keys = new long[capacity];
+    values = new Object[capacity];
+  }
+
+  static int slot( long key, int mask ) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int)(h ^ (h >>> 32)) & mask;
+  }
+
+  /**
+   * @param key the key.
+   * <p>
+   * @return the value mapped to the key or null.
+   */
+  @SuppressWarnings( "unchecked" )
+  public V get( long key ) {
+    int mask = keys.length - 1;
+    for ( int i = slot( key, mask );; i = (i + 1) & mask ) {
+      Object value = values[i];
+      if ( value == null ) {
+        return null;
+      }
+      if ( keys[i] == key ) {
+        return (V)value;
+      }
+    }
+  }
+
+  /**
+   * @param key the key.
+   * <p>
+   * @return true if a value is mapped to the key.
+   */
+  public boolean containsKey( long key ) {
+    return get( key ) != null;
+  }
+
+  /**
+   * Map a value to a key.
+   * <p>
+   * @param key   the key.
+   * @param value the value, not null.
+   * <p>
+   * @return the value previously mapped to the key or null.
+   */
+  @SuppressWarnings( "unchecked" )
+  public V put( long key, V value ) {
+    if ( value == null ) {
+      throw new IllegalArgumentException( "null values are not allowed" );
+    }
+    int mask = keys.length - 1;
+    int i = slot( key, mask );
+    while (values[i] != null) {
+      if ( keys[i] == key ) {
+        V old = (V)values[i];
+        values[i] = value;
+        return old;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    if ( ++size * 2 > keys.length ) {
+      resize( keys.length * 2 );
+    }
+    return null;
+  }
+
+  /**
+   * Remove the mapping of a key.
+   * <p>
+   * @param key the key.
+   * <p>
+   * @return the value that was mapped to the key or null.
+   */
+  @SuppressWarnings( "unchecked" )
+  public V remove( long key ) {
+    int mask = keys.length - 1;
+    int i = slot( key, mask );
+    while (values[i] != null) {
+      if ( keys[i] == key ) {
+        V old = (V)values[i];
+        shiftBack( i, mask );
+        size -= 1;
+        return old;
+      }
+      i = (i + 1) & mask;
+    }
+    return null;
+  }
+
+  // fills the hole at the given slot with a later entry of the probe sequence that may move there, repeatedly.
+  private void shiftBack( int hole, int mask ) {
+    for ( int i = (hole + 1) & mask; values[i] != null; i = (i + 1) & mask ) {
+      int home = slot( keys[i], mask );
+      // the entry may move to the hole if the hole lies between its home slot and its slot, cyclically.
+      if ( ((i - home) & mask) >= ((i - hole) & mask) ) {
+        keys[hole] = keys[i];
+        values[hole] = values[i];
+        hole = i;
+      }
+    }
+    values[hole] = null;
+  }
+
+  private void resize( int capacity ) {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new long[capacity];
+    values = new Object[capacity];
+    int mask = capacity - 1;
+    for ( int j = 0; j < oldKeys.length; j++ ) {
+      if ( oldValues[j] != null ) {
+        int i = slot( oldKeys[j], mask );
+        while (values[i] != null) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = oldKeys[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+
+  /**
+   * @return the number of mappings.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return true if there are no mappings.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Remove all the mappings.
+   */
+  public void clear() {
+    Arrays.fill( values, null );
+    size = 0;
+  }
+
+  /**
+   * @return the keys in no particular order.
+   */
+  public long[] keys() {
+    long[] ret = new long[size];
+    int n = 0;
+    for ( int i = 0; i < keys.length; i++ ) {
+      if ( values[i] != null ) {
+        ret[n++] = keys[i];
+      }
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+/**
+ * An immutable pair of {@code long}s that does not box its elements, e.g. a composite key of two ids.
+ * <p>
+ * @author Dana P'Simer &lt;danap@bluesoftdev.com&gt;
+ */
+public final class LongPair {
+
+  private final long left;
+  private final long right;
+
+  private LongPair( long left, long right ) {
+    this.left = left;
+    this.right = right;
+  }
+
+  /**
+   * @return the left hand value.
+   */
+  public long getLeft() {
+    return left;
+  }
+
+  /**
+   * @return the right hand value.
+   */
+  public long getRight() {
+    return right;
+  }
+
+  @Override
+  public boolean equals( Object obj ) {
+    if ( !(obj instanceof LongPair) ) {
+      return false;
+    }
+    LongPair other = (LongPair)obj;
+    return left == other.left && right == other.right;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 + Long.hashCode( left )) + Long.hashCode( right );
+  }
+
+  @Override
+  public String toString() {
+    return "(" + left + ", " + right + ")";
+  }
+
+  /**
+   * Make a pair.
+   * <p>
+   * @param left  the left hand value.
+   * @param right the right hand value.
+   * <p>
+   * @return the pair.
+   */
+  public static LongPair pairOf( long left, long right ) {
+    return new LongPair( left, right );
+  }
+}
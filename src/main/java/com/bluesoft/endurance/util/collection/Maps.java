@@ -49,6 +49,28 @@ public class Maps {
     return ret;
   }
 
+  /**
+   * An immutable map with the keys in insertion order, keeping the entries in flat arrays instead of linked entry objects.
+   */
+  @SafeVarargs
+  public static <V> Map<V, V> immutableMap( V... keysAndValues ) {
+    assert keysAndValues.length % 2 == 0;
+    return CompactMap.of( keysAndValues, keysAndValues.length / 2 );
+  }
+
+  /**
+   * An immutable map with the keys in insertion order, keeping the entries in flat arrays instead of linked entry objects.
+   */
+  @SafeVarargs
+  public static <K, V> Map<K, V> immutableMap( Pair<K, V>... keysAndValues ) {
+    Object[] flat = new Object[keysAndValues.length * 2];
+    for ( int i = 0; i < keysAndValues.length; i++ ) {
+      flat[i * 2] = keysAndValues[i].getLeft();
+      flat[i * 2 + 1] = keysAndValues[i].getRight();
+    }
+    return CompactMap.of( flat, keysAndValues.length );
+  }
+
   public static <V> SortedMap<V, V> sortedMap( V... keysAndValues ) {
     SortedMap<V, V> ret = new TreeMap<>();
     assert keysAndValues.length % 2 == 0;
@@ -15,9 +15,14 @@
  */
 package com.bluesoft.endurance.util.collection;
 
+import java.util.Objects;
+
 /**
  * A simple Tuple that holds a pair of objects. The left is kept in position 0, the right in position 1.
  * <p>
+ * The elements are kept in fields, so making a pair only allocates the pair, and the hash code is computed once, which makes pairs cheap
+ * composite keys for hash maps.
+ * <p>
  * @param <L> the type of the left element.
  * @param <R> the type of the right element.
  * <p>
@@ -26,23 +31,67 @@ package com.bluesoft.endurance.util.collection;
 public class Pair<L, R> extends Tuple {
 
   private static final org.slf4j.Logger LOG = org.slf4j.LoggerFactory.getLogger( Pair.class );
+  private final L left;
+  private final R right;
+  // 0 until computed, see String.hashCode().
+  private int hash;
 
   protected Pair( L left, R right ) {
-    super( left, right );
+    this.left = left;
+    this.right = right;
   }
 
   /**
    * @return the left hand value.
    */
   public L getLeft() {
-    return (L)super.get( 0 );
+    return left;
   }
 
   /**
    * @return the right hand value.
    */
   public R getRight() {
-    return (R)super.get( 1 );
+    return right;
+  }
+
+  @Override
+  public Object get( int i ) {
+    switch ( i ) {
+      case 0:
+        return left;
+      case 1:
+        return right;
+      default:
+        throw new IndexOutOfBoundsException( "index " + i + " of a pair" );
+    }
+  }
+
+  @Override
+  public int size() {
+    return 2;
+  }
+
+  @Override
+  public boolean equals( Object obj ) {
+    if ( obj == this ) {
+      return true;
+    }
+    if ( obj == null || obj.getClass() != getClass() ) {
+      return false;
+    }
+    Pair<?, ?> other = (Pair<?, ?>)obj;
+    return hashCode() == other.hashCode() && Objects.equals( left, other.left ) && Objects.equals( right, other.right );
+  }
+
+  @Override
+  public int hashCode() {
+    int h = hash;
+    if ( h == 0 ) {
+      h = 31 * (31 + Objects.hashCode( left )) + Objects.hashCode( right );
+      hash = h;
+    }
+    return h;
   }
 
   /**
@@ -56,6 +105,6 @@ public class Pair<L, R> extends Tuple {
    * @return the pair.
    */
   public static <L, R> Pair<L, R> pairOf( L left, R right ) {
-    return new Pair( left, right );
+    return new Pair<>( left, right );
   }
 }
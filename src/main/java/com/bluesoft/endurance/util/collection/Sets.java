@@ -35,4 +35,12 @@ public class Sets {
     ret.addAll( Arrays.asList( args ) );
     return ret;
   }
+
+  /**
+   * An immutable set with the elements in insertion order, keeping them in a flat array instead of linked entry objects.
+   */
+  @SafeVarargs
+  public static <T> Set<T> immutableSet( T... args ) {
+    return CompactSet.of( args );
+  }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+import java.util.Objects;
+
+/**
+ * A simple Tuple that holds three objects. The left is kept in position 0, the middle in position 1 and the right in position 2. Like
+ * {@link Pair} the elements are kept in fields and the hash code is computed once.
+ * <p>
+ * @param <L> the type of the left element.
+ * @param <M> the type of the middle element.
+ * @param <R> the type of the right element.
+ * <p>
+ * @author Dana P'Simer &lt;danap@bluesoftdev.com&gt;
+ */
+public class Triple<L, M, R> extends Tuple<Object> {
+
+  private final L left;
+  private final M middle;
+  private final R right;
+  // 0 until computed, see String.hashCode().
+  private int hash;
+
+  protected Triple( L left, M middle, R right ) {
+    this.left = left;
+    this.middle = middle;
+    this.right = right;
+  }
+
+  /**
+   * @return the left hand value.
+   */
+  public L getLeft() {
+    return left;
+  }
+
+  /**
+   * @return the middle value.
+   */
+  public M getMiddle() {
+    return middle;
+  }
+
+  /**
+   * @return the right hand value.
+   */
+  public R getRight() {
+    return right;
+  }
+
+  @Override
+  public Object get( int i ) {
+    switch ( i ) {
+      case 0:
+        return left;
+      case 1:
+        return middle;
+      case 2:
+        return right;
+      default:
+        throw new IndexOutOfBoundsException( "index " + i + " of a triple" );
+    }
+  }
+
+  @Override
+  public int size() {
+    return 3;
+  }
+
+  @Override
+  public boolean equals( Object obj ) {
+    if ( obj == this ) {
+      return true;
+    }
+    if ( obj == null || obj.getClass() != getClass() ) {
+      return false;
+    }
+    Triple<?, ?, ?> other = (Triple<?, ?, ?>)obj;
+    return hashCode() == other.hashCode() && Objects.equals( left, other.left ) && Objects.equals( middle, other.middle )
+           && Objects.equals( right, other.right );
+  }
+
+  @Override
+  public int hashCode() {
+    int h = hash;
+    if ( h == 0 ) {
+      h = 31 * (31 * (31 + Objects.hashCode( left )) + Objects.hashCode( middle )) + Objects.hashCode( right );
+      hash = h;
+    }
+    return h;
+  }
+
+  /**
+   * Make a triple.
+   * <p>
+   * @param <L>    the type of the left hand value.
+   * @param <M>    the type of the middle value.
+   * @param <R>    the type of the right hand value.
+   * @param left   the left hand value.
+   * @param middle the middle value.
+   * @param right  the right hand value.
+   * <p>
+   * @return the triple.
+   */
+  public static <L, M, R> Triple<L, M, R> tripleOf( L left, M middle, R right ) {
+    return new Triple<>( left, middle, right );
+  }
+}
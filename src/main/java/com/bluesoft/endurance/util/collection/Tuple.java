@@ -18,7 +18,10 @@ package com.bluesoft.endurance.util.collection;
 import java.util.Arrays;
 
 /**
- * A simple immutable holder of a group of values.
+ * A simple immutable holder of a group of values. Tuples are values: two tuples of the same class are equal when their elements are.
+ * <p>
+ * Subclasses for a fixed number of elements, e.g. {@link Pair} and {@link Triple}, keep the elements in fields instead of an array and
+ * override {@link #get(int)} and {@link #size()}.
  * <p>
  * @author Dana P'Simer &lt;danap@bluesoftdev.com&gt;
  */
@@ -31,10 +34,68 @@ public class Tuple<T> {
     this.values = Arrays.copyOf( values, values.length );
   }
 
+  /**
+   * For subclasses that keep their elements in fields.
+   */
+  protected Tuple() {
+    this.values = null;
+  }
+
   public Object get( int i ) {
     return values[i];
   }
 
+  /**
+   * @return the number of elements.
+   */
+  public int size() {
+    return values.length;
+  }
+
+  @Override
+  public boolean equals( Object obj ) {
+    if ( obj == this ) {
+      return true;
+    }
+    if ( obj == null || obj.getClass() != getClass() ) {
+      return false;
+    }
+    Tuple<?> other = (Tuple<?>)obj;
+    if ( other.size() != size() ) {
+      return false;
+    }
+    for ( int i = 0; i < size(); i++ ) {
+      Object a = get( i );
+      Object b = other.get( i );
+      if ( a == null ? b != null : !a.equals( b ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 1;
+    for ( int i = 0; i < size(); i++ ) {
+      Object element = get( i );
+      hash = 31 * hash + (element == null ? 0 : element.hashCode());
+    }
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder ret = new StringBuilder( "(" );
+    for ( int i = 0; i < size(); i++ ) {
+      if ( i > 0 ) {
+        ret.append( ", " );
+      }
+      ret.append( get( i ) );
+    }
+    return ret.append( ')' ).toString();
+  }
+
   public static <T> Tuple of( T... values ) {
     return new Tuple( values );
   }
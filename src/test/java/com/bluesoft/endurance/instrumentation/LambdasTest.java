@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bluesoft.endurance.instrumentation.time.Timing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class LambdasTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( LambdasTest.class );
+  private static final int READS = 10000000;
+  private String field = "value";
+  // what a hand written double checked lazy field reads.
+  private volatile String volatileField = "value";
+
+  private static <T> List<T> callConcurrently( int threads, final Lambda<T> lambda ) throws Exception {
+    final CountDownLatch start = new CountDownLatch( 1 );
+    ExecutorService executor = Executors.newFixedThreadPool( threads );
+    List<Future<T>> futures = new ArrayList<>();
+    for ( int i = 0; i < threads; i++ ) {
+      futures.add( executor.submit( new Callable<T>() {
+        @Override
+        public T call() throws Exception {
+          start.await();
+          return lambda.func();
+        }
+      } ) );
+    }
+    start.countDown();
+    List<T> results = new ArrayList<>();
+    for ( Future<T> f : futures ) {
+      results.add( f.get() );
+    }
+    executor.shutdown();
+    return results;
+  }
+
+  private static Lambda<Integer> slowCounter( final AtomicInteger calls ) {
+    return new Lambda<Integer>() {
+      @Override
+      public Integer func() {
+        int call = calls.incrementAndGet();
+        try {
+          Thread.sleep( 50L );
+        } catch ( InterruptedException ex ) {
+          Thread.currentThread().interrupt();
+        }
+        return call;
+      }
+    };
+  }
+
+  @Test( timeOut = 10000L )
+  public void testMemoizeComputesOnce() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    Lambda<Integer> memo = Lambdas.memoize( slowCounter( calls ) );
+    for ( Integer result : callConcurrently( 16, memo ) ) {
+      assertEquals( result, (Integer)1 );
+    }
+    assertEquals( calls.get(), 1 );
+
+    final AtomicInteger attempts = new AtomicInteger();
+    Lambda<String> flaky = Lambdas.memoize( new Lambda<String>() {
+      @Override
+      public String func() {
+        if ( attempts.incrementAndGet() == 1 ) {
+          throw new IllegalStateException( "first attempt fails" );
+        }
+        return null;
+      }
+    } );
+    try {
+      flaky.func();
+      fail( "the failure should be thrown" );
+    } catch ( IllegalStateException ex ) {
+      // expected
+    }
+    assertNull( flaky.func() );
+    assertNull( flaky.func() );
+    assertEquals( attempts.get(), 2, "failures are retried, null results are remembered" );
+  }
+
+  @Test( timeOut = 10000L )
+  public void testExpiryRefreshesWithoutBlockingReaders() throws Exception {
+    final CountDownLatch refreshing = new CountDownLatch( 1 );
+    final CountDownLatch finishRefresh = new CountDownLatch( 1 );
+    final AtomicInteger calls = new AtomicInteger();
+    ExecutorService refresher = Executors.newSingleThreadExecutor();
+    Lambda<Integer> memo = Lambdas.memoizeWithExpiry( new Lambda<Integer>() {
+      @Override
+      public Integer func() {
+        int call = calls.incrementAndGet();
+        if ( call > 1 ) {
+          refreshing.countDown();
+          try {
+            finishRefresh.await();
+          } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return call;
+      }
+    }, 20, TimeUnit.MILLISECONDS, refresher );
+    assertEquals( memo.func(), (Integer)1 );
+    Thread.sleep( 30L );
+    assertEquals( memo.func(), (Integer)1, "the stale value is returned while the refresh is scheduled" );
+    refreshing.await();
+    for ( int i = 0; i < 100; i++ ) {
+      assertEquals( memo.func(), (Integer)1, "readers do not wait for the refresh" );
+    }
+    assertEquals( calls.get(), 2, "only one refresh at a time" );
+    finishRefresh.countDown();
+    refresher.shutdown();
+    refresher.awaitTermination( 5, TimeUnit.SECONDS );
+    assertEquals( memo.func(), (Integer)2 );
+
+    AtomicInteger inlineCalls = new AtomicInteger();
+    Lambda<Integer> inline = Lambdas.memoizeWithExpiry( slowCounter( inlineCalls ), 1, TimeUnit.HOURS );
+    for ( Integer result : callConcurrently( 16, inline ) ) {
+      assertEquals( result, (Integer)1 );
+    }
+    assertEquals( inlineCalls.get(), 1 );
+  }
+
+  @Test( timeOut = 10000L )
+  public void testKeyedMemoize() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    final Transform<Integer, String> square = Lambdas.memoize( new Transform<Integer, String>() {
+      @Override
+      public String func( Integer arg ) {
+        calls.incrementAndGet();
+        try {
+          Thread.sleep( 20L );
+        } catch ( InterruptedException ex ) {
+          Thread.currentThread().interrupt();
+        }
+        return String.valueOf( arg * arg );
+      }
+    } );
+    final AtomicInteger next = new AtomicInteger();
+    List<String> results = callConcurrently( 16, new Lambda<String>() {
+      @Override
+      public String func() {
+        return square.func( next.getAndIncrement() % 4 );
+      }
+    } );
+    assertEquals( results.size(), 16 );
+    assertEquals( calls.get(), 4, "once per argument" );
+    assertEquals( square.func( 3 ), "9" );
+  }
+
+  @Test
+  public void testReadPathCost() {
+    final Lambda<String> memo = Lambdas.memoize( new Lambda<String>() {
+      @Override
+      public String func() {
+        return "value";
+      }
+    } );
+    final int[] lengths = new int[3];
+    Timing fieldTiming = new Timing( "field" );
+    Timing volatileTiming = new Timing( "volatile field" );
+    Timing memoTiming = new Timing( "memoized" );
+    for ( int round = 0; round < 5; round++ ) {
+      fieldTiming.time( new Procedure() {
+        @Override
+        public void func() {
+          for ( int i = 0; i < READS; i++ ) {
+            lengths[0] += field.length();
+          }
+        }
+      } );
+      volatileTiming.time( new Procedure() {
+        @Override
+        public void func() {
+          for ( int i = 0; i < READS; i++ ) {
+            lengths[1] += volatileField.length();
+          }
+        }
+      } );
+      memoTiming.time( new Procedure() {
+        @Override
+        public void func() {
+          for ( int i = 0; i < READS; i++ ) {
+            lengths[2] += memo.func().length();
+          }
+        }
+      } );
+    }
+    assertEquals( lengths[0], lengths[1] );
+    assertEquals( lengths[0], lengths[2] );
+    // the plain field read may be hoisted out of the loop, the volatile read is the cost of a correct lazy field.
+    LOG.info( "{} reads, best of 5: plain field {} ms, volatile field {} ms, memoized lambda {} ms", READS, fieldTiming.getMin() / 1e6,
+              volatileTiming.getMin() / 1e6, memoTiming.getMin() / 1e6 );
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class MeterTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( MeterTest.class );
+  private static final int THREADS = 4;
+  private static final int EVENTS = 5000000;
+
+  private static class TestClock extends Meter.Clock {
+
+    private long now = 0L;
+
+    @Override
+    long nanoTime() {
+      return now;
+    }
+
+    void advance( long time, TimeUnit unit ) {
+      now += unit.toNanos( time );
+    }
+  }
+
+  @Test
+  public void testRates() {
+    TestClock clock = new TestClock();
+    Meter meter = new Meter( clock );
+    meter.mark( 300 );
+    assertEquals( meter.getOneMinuteRate(), 0.0, "no tick yet" );
+    clock.advance( 5, TimeUnit.SECONDS );
+    assertEquals( meter.getOneMinuteRate(), 60.0, 0.001 );
+    assertEquals( meter.getFiveMinuteRate(), 60.0, 0.001 );
+    assertEquals( meter.getFifteenMinuteRate(), 60.0, 0.001 );
+    assertEquals( meter.getMeanRate(), 60.0, 0.001 );
+
+    // a minute without events decays the one minute rate by a factor of e.
+    clock.advance( 60, TimeUnit.SECONDS );
+    assertEquals( meter.getOneMinuteRate(), 60.0 / Math.E, 0.001 );
+    assertEquals( meter.getFiveMinuteRate(), 60.0 * Math.exp( -1.0 / 5 ), 0.001 );
+    assertEquals( meter.getCount(), 300 );
+
+    // a long idle period decays the rates in one step.
+    clock.advance( 365, TimeUnit.DAYS );
+    assertEquals( meter.getFifteenMinuteRate(), 0.0, 0.001 );
+  }
+
+  @Test
+  public void testRatesReadAfterManyIntervals() {
+    TestClock clock = new TestClock();
+    Meter meter = new Meter( clock );
+    // ten events a second for fifteen minutes without reading the rates once.
+    for ( int second = 0; second < 15 * 60; second++ ) {
+      meter.mark( 10 );
+      clock.advance( 1, TimeUnit.SECONDS );
+    }
+    assertEquals( meter.getOneMinuteRate(), 10.0, 0.001 );
+    assertEquals( meter.getFiveMinuteRate(), 10.0, 0.001 );
+    assertEquals( meter.getFifteenMinuteRate(), 10.0, 0.001 );
+    assertEquals( meter.getMeanRate(), 10.0, 0.001 );
+  }
+
+  @Test
+  public void testConcurrentMarks() throws Exception {
+    final Meter meter = new Meter();
+    ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+    List<Future<?>> futures = new ArrayList<>();
+    long start = System.nanoTime();
+    for ( int t = 0; t < THREADS; t++ ) {
+      futures.add( executor.submit( new Runnable() {
+        @Override
+        public void run() {
+          for ( int i = 0; i < EVENTS; i++ ) {
+            meter.mark();
+          }
+        }
+      } ) );
+    }
+    for ( Future<?> f : futures ) {
+      f.get();
+    }
+    long elapsed = System.nanoTime() - start;
+    executor.shutdown();
+    assertEquals( meter.getCount(), (long)THREADS * EVENTS );
+    LOG.info( "{} marks/s across {} threads", (double)THREADS * EVENTS * TimeUnit.SECONDS.toNanos( 1 ) / elapsed, THREADS );
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.jfr;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.bluesoft.endurance.instrumentation.Procedure;
+import com.bluesoft.endurance.instrumentation.time.Timing;
+import com.bluesoft.endurance.util.DefaultValueBasedReentrantLock;
+import com.bluesoft.endurance.util.FastReadWriteLock;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class JfrEventsTest {
+
+  private static int count( List<RecordedEvent> events, String type ) {
+    int count = 0;
+    for ( RecordedEvent event : events ) {
+      if ( event.getEventType().getName().equals( type ) ) {
+        count += 1;
+      }
+    }
+    return count;
+  }
+
+  private static RecordedEvent first( List<RecordedEvent> events, String type ) {
+    for ( RecordedEvent event : events ) {
+      if ( event.getEventType().getName().equals( type ) ) {
+        return event;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void testEventsAreRecorded() throws Exception {
+    final Timing timing = new Timing( "slow-op" );
+    ReadWriteLock rwLock = new FastReadWriteLock();
+    DefaultValueBasedReentrantLock<String> keyedLocks = new DefaultValueBasedReentrantLock<>();
+    File file = File.createTempFile( "endurance", ".jfr" );
+    try ( Recording recording = new Recording() ) {
+      recording.enable( TimedOperationEvent.class ).withThreshold( java.time.Duration.ofMillis( 5 ) );
+      recording.enable( LockWaitEvent.class ).withThreshold( java.time.Duration.ZERO );
+      recording.enable( KeyedLockCheckoutEvent.class ).withThreshold( java.time.Duration.ZERO );
+      recording.start();
+
+      timing.time( new Procedure() {
+        @Override
+        public void func() {
+          try {
+            Thread.sleep( 20L );
+          } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      } );
+      timing.time( new Procedure() {
+        @Override
+        public void func() {
+          // too fast to pass the threshold.
+        }
+      } );
+      rwLock.writeLock().lock();
+      rwLock.writeLock().unlock();
+      ReentrantLock valueLock = keyedLocks.checkOutLock( "account-1" );
+      keyedLocks.checkInLock( "account-1" );
+      assertNotNull( valueLock );
+
+      recording.stop();
+      recording.dump( file.toPath() );
+    }
+    try {
+      List<RecordedEvent> events = RecordingFile.readAllEvents( file.toPath() );
+      assertEquals( count( events, "com.bluesoft.endurance.TimedOperation" ), 1, "only the slow operation should be committed" );
+      assertEquals( first( events, "com.bluesoft.endurance.TimedOperation" ).getString( "name" ), "slow-op" );
+      RecordedEvent wait = first( events, "com.bluesoft.endurance.LockWait" );
+      assertNotNull( wait );
+      assertEquals( wait.getString( "mode" ), "write" );
+      assertTrue( wait.getBoolean( "acquired" ) );
+      RecordedEvent checkout = first( events, "com.bluesoft.endurance.KeyedLockCheckout" );
+      assertNotNull( checkout );
+      assertEquals( checkout.getString( "value" ), "account-1" );
+      assertEquals( checkout.getInt( "refCount" ), 1 );
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.shm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.bluesoft.endurance.instrumentation.time.Timing;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class SharedStatsTest {
+
+  @Test
+  public void testReaderSeesWriterStats() throws Exception {
+    File file = File.createTempFile( "endurance", ".stats" );
+    try ( SharedStatsWriter writer = new SharedStatsWriter( file, 4 );
+          SharedStatsReader reader = new SharedStatsReader( file ) ) {
+      assertEquals( reader.getCapacity(), 4 );
+      assertEquals( reader.getSlotCount(), 0 );
+      Timing timing = writer.timing( "op" );
+      timing.recordSample( 0L, 1000L );
+      timing.recordSample( 0L, 3000L );
+      timing.recordSample( 0L, 100000L );
+      SharedStatsSlot requests = writer.slot( "requests" );
+      requests.add( 5L );
+      assertSame( writer.slot( "requests" ), requests, "a name gets one slot" );
+      assertEquals( reader.getSlotCount(), 2 );
+      assertEquals( reader.getWriterPid(), ProcessHandle.current().pid() );
+
+      SharedStatsReader.Snapshot op = reader.read( 0 );
+      assertEquals( op.getName(), "op" );
+      assertEquals( op.getCount(), 3L );
+      assertEquals( op.getTotal(), 104000L );
+      assertEquals( op.getMin(), 1000L );
+      assertEquals( op.getMax(), 100000L );
+      assertEquals( op.getCount(), timing.getCount() );
+      assertEquals( op.getBucket( SharedStatsLayout.bucket( 1000L ) ), 1L );
+      assertEquals( op.getPercentile( 0.5 ), 4095L, "the upper bound of the bucket of 3000" );
+      assertEquals( op.getPercentile( 1.0 ), 100000L, "capped by the max" );
+      SharedStatsReader.Snapshot counter = reader.read( 1 );
+      assertEquals( counter.getName(), "requests" );
+      assertEquals( counter.getCount(), 5L );
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      reader.print( new PrintStream( out, true ) );
+      assertTrue( out.toString().contains( "requests" ) );
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test( expectedExceptions = IllegalStateException.class )
+  public void testCapacity() throws Exception {
+    File file = File.createTempFile( "endurance", ".stats" );
+    try ( SharedStatsWriter writer = new SharedStatsWriter( file, 1 ) ) {
+      writer.slot( "a" );
+      writer.slot( "b" );
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test( expectedExceptions = IOException.class )
+  public void testNotAStatsFile() throws Exception {
+    File file = File.createTempFile( "endurance", ".stats" );
+    try {
+      Files.write( file.toPath(), new byte[128] );
+      new SharedStatsReader( file ).close();
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test( timeOut = 20000L )
+  public void testConcurrentWriters() throws Exception {
+    File file = File.createTempFile( "endurance", ".stats" );
+    try ( SharedStatsWriter writer = new SharedStatsWriter( file, 1 );
+          SharedStatsReader reader = new SharedStatsReader( file ) ) {
+      final SharedStatsSlot slot = writer.slot( "op" );
+      ExecutorService executor = Executors.newFixedThreadPool( 4 );
+      List<Future<?>> futures = new ArrayList<>();
+      for ( int t = 0; t < 4; t++ ) {
+        futures.add( executor.submit( new Runnable() {
+          @Override
+          public void run() {
+            for ( int i = 1; i <= 10000; i++ ) {
+              slot.record( i );
+            }
+          }
+        } ) );
+      }
+      for ( Future<?> f : futures ) {
+        f.get();
+      }
+      executor.shutdown();
+      SharedStatsReader.Snapshot s = reader.read( 0 );
+      assertEquals( s.getCount(), 40000L );
+      assertEquals( s.getTotal(), 4L * 10000L * 10001L / 2L );
+      assertEquals( s.getMin(), 1L );
+      assertEquals( s.getMax(), 10000L );
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testRecordingDoesNotAllocate() throws Exception {
+    File file = File.createTempFile( "endurance", ".stats" );
+    try ( SharedStatsWriter writer = new SharedStatsWriter( file, 1 ) ) {
+      SharedStatsSlot slot = writer.slot( "op" );
+      com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+      long id = Thread.currentThread().getId();
+      // warm up so the allocation of the class loading and the compilation is not counted.
+      for ( int i = 0; i < 100000; i++ ) {
+        slot.record( i );
+      }
+      long before = threads.getThreadAllocatedBytes( id );
+      for ( int i = 0; i < 1000000; i++ ) {
+        slot.record( i );
+      }
+      long allocated = threads.getThreadAllocatedBytes( id ) - before;
+      assertTrue( allocated < 1024L, allocated + " bytes allocated for 1000000 samples" );
+    } finally {
+      file.delete();
+    }
+  }
+}
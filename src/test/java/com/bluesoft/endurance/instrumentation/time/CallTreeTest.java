@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.time;
+
+import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.Procedure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class CallTreeTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( CallTreeTest.class );
+
+  private static void sleep( long millis ) {
+    try {
+      Thread.sleep( millis );
+    } catch ( InterruptedException ex ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  public void testNestedSpans() {
+    final CallTree tree = new CallTree();
+    for ( int i = 0; i < 3; i++ ) {
+      tree.time( "request", new Procedure() {
+        @Override
+        public void func() {
+          sleep( 10L );
+          String result = tree.time( "db", new Lambda<String>() {
+            @Override
+            public String func() {
+              sleep( 20L );
+              return "rows";
+            }
+          } );
+          assertEquals( result, "rows" );
+        }
+      } );
+    }
+    LOG.info( "{}", tree );
+
+    CallTree.Node request = tree.getRoot().getChild( "request" );
+    assertNotNull( request );
+    CallTree.Node db = request.getChild( "db" );
+    assertNotNull( db );
+    assertNull( tree.getRoot().getChild( "db" ), "db should only be nested in request" );
+    assertEquals( request.getTotal().getCount(), 3 );
+    assertEquals( db.getTotal().getCount(), 3 );
+    assertTrue( request.getTotal().getAverage() >= 30000000L, "request.total = " + request.getTotal().getAverage() );
+    assertTrue( Math.abs( request.getSelf().getAverage() - 10000000L ) < 5000000L, "request.self = " + request.getSelf().getAverage() );
+    assertEquals( request.getSelf().getTotal(), request.getTotal().getTotal() - db.getTotal().getTotal() );
+    assertEquals( db.getSelf().getTotal(), db.getTotal().getTotal() );
+  }
+
+  @Test
+  public void testSpanClosedOnException() {
+    final CallTree tree = new CallTree();
+    try {
+      tree.time( "failing", new Procedure() {
+        @Override
+        public void func() {
+          throw new IllegalArgumentException( "boom" );
+        }
+      } );
+      fail( "exception expected" );
+    } catch ( IllegalArgumentException ex ) {
+      // expected
+    }
+    tree.time( "after", new Procedure() {
+      @Override
+      public void func() {
+      }
+    } );
+    assertEquals( tree.getRoot().getChild( "failing" ).getTotal().getCount(), 1 );
+    assertNotNull( tree.getRoot().getChild( "after" ), "after should be a root span" );
+  }
+
+  @Test( expectedExceptions = IllegalStateException.class )
+  public void testExitWithoutEnter() {
+    new CallTree().exit();
+  }
+}
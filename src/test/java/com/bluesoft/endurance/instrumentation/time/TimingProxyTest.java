@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.instrumentation.time;
+
+import java.lang.reflect.Method;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class TimingProxyTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( TimingProxyTest.class );
+  private static final int ITERATIONS = 2000000;
+
+  public interface Dao {
+
+    int add( int a, int b );
+
+    String find( String id );
+
+    void fail();
+  }
+
+  private static class DaoImpl implements Dao {
+
+    @Override
+    public int add( int a, int b ) {
+      return a + b;
+    }
+
+    @Override
+    public String find( String id ) {
+      return "found " + id;
+    }
+
+    @Override
+    public void fail() {
+      throw new IllegalStateException( "failed" );
+    }
+
+    @Override
+    public String toString() {
+      return "DaoImpl";
+    }
+  }
+
+  @Test
+  public void testDelegatesAndTimes() throws Exception {
+    TimingProxy<Dao> timed = TimingProxy.instrument( Dao.class, new DaoImpl() );
+    Dao dao = timed.getProxy();
+    assertEquals( dao.add( 2, 3 ), 5 );
+    assertEquals( dao.add( 4, 3 ), 7 );
+    assertEquals( dao.find( "x" ), "found x" );
+    assertEquals( dao.toString(), "DaoImpl" );
+
+    assertEquals( timed.getTimings().size(), 3 );
+    assertEquals( timed.getTiming( Dao.class.getMethod( "add", int.class, int.class ) ).getCount(), 2 );
+    assertEquals( timed.getTiming( Dao.class.getMethod( "find", String.class ) ).getCount(), 1 );
+  }
+
+  @Test
+  public void testExceptionsAreNotWrapped() throws Exception {
+    TimingProxy<Dao> timed = TimingProxy.instrument( Dao.class, new DaoImpl() );
+    try {
+      timed.getProxy().fail();
+      fail( "exception expected" );
+    } catch ( IllegalStateException ex ) {
+      assertEquals( ex.getMessage(), "failed" );
+    }
+    assertEquals( timed.getTiming( Dao.class.getMethod( "fail" ) ).getCount(), 1 );
+  }
+
+  @Test( expectedExceptions = IllegalArgumentException.class )
+  public void testRequiresInterface() {
+    TimingProxy.instrument( DaoImpl.class, new DaoImpl() );
+  }
+
+  @Test
+  public void testOverhead() throws Exception {
+    Dao direct = new DaoImpl();
+    Dao proxied = TimingProxy.instrument( Dao.class, direct ).getProxy();
+    Timing handTimed = new Timing();
+    Method reflective = Dao.class.getMethod( "add", int.class, int.class );
+    long sink = 0;
+    // warm up
+    for ( int i = 0; i < ITERATIONS; i++ ) {
+      sink += direct.add( i, 1 ) + proxied.add( i, 1 ) + (Integer)reflective.invoke( direct, i, 1 );
+    }
+    long start = System.nanoTime();
+    for ( int i = 0; i < ITERATIONS; i++ ) {
+      sink += direct.add( i, 1 );
+    }
+    long directNanos = System.nanoTime() - start;
+    start = System.nanoTime();
+    for ( int i = 0; i < ITERATIONS; i++ ) {
+      sink += (Integer)reflective.invoke( direct, i, 1 );
+    }
+    long reflectiveNanos = System.nanoTime() - start;
+    start = System.nanoTime();
+    for ( int i = 0; i < ITERATIONS; i++ ) {
+      long callStart = System.nanoTime();
+      sink += direct.add( i, 1 );
+      handTimed.recordSample( callStart, System.nanoTime() );
+    }
+    long handTimedNanos = System.nanoTime() - start;
+    start = System.nanoTime();
+    for ( int i = 0; i < ITERATIONS; i++ ) {
+      sink += proxied.add( i, 1 );
+    }
+    long proxiedNanos = System.nanoTime() - start;
+    LOG.info( "per call: direct = {}ns, reflective = {}ns, hand timed = {}ns, timed proxy = {}ns, dispatch overhead = {}ns ({})",
+              (double)directNanos / ITERATIONS, (double)reflectiveNanos / ITERATIONS, (double)handTimedNanos / ITERATIONS,
+              (double)proxiedNanos / ITERATIONS, (double)(proxiedNanos - handTimedNanos) / ITERATIONS, sink );
+  }
+}
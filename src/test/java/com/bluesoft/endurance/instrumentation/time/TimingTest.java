@@ -15,11 +15,16 @@
  */
 package com.bluesoft.endurance.instrumentation.time;
 
+import com.bluesoft.endurance.instrumentation.BooleanLambda;
+import com.bluesoft.endurance.instrumentation.DoubleLambda;
+import com.bluesoft.endurance.instrumentation.IntLambda;
 import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.LongLambda;
 import com.bluesoft.endurance.instrumentation.Procedure;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -150,4 +155,80 @@ public class TimingTest {
     assert Math.abs( test.getMax() - expectedMax.get() ) < 5000000L : "test.max = " + test.getMax();
     assert Math.abs( test.getStandardDev() - expectedStandardDeviation ) < 5000000L : "test.stdDev = " + test.getStandardDev();
   }
+
+  @Test( timeOut = 4000L )
+  public void testConcurrencyTracking() throws Exception {
+    final Timing test = new Timing( true );
+    final CountDownLatch allInFlight = new CountDownLatch( 4 );
+    final CountDownLatch release = new CountDownLatch( 1 );
+    ExecutorService executor = Executors.newFixedThreadPool( 4 );
+    List<Future<?>> futures = new ArrayList<>();
+    for ( int i = 0; i < 4; i++ ) {
+      futures.add( executor.submit( new Runnable() {
+        @Override
+        public void run() {
+          test.time( new Procedure() {
+            @Override
+            public void func() {
+              allInFlight.countDown();
+              try {
+                release.await();
+                Thread.sleep( 50L );
+              } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+              }
+            }
+          } );
+        }
+      } ) );
+    }
+    allInFlight.await();
+    assert test.getConcurrency().getInFlight() == 4 : "in flight = " + test.getConcurrency().getInFlight();
+    // start the window once all the operations are in flight so the thread pool start up is not part of it.
+    test.getConcurrency().snapshot();
+    release.countDown();
+    for ( Future<?> f : futures ) {
+      f.get();
+    }
+    executor.shutdown();
+
+    ConcurrencyGauge.Snapshot snapshot = test.getConcurrency().snapshot();
+    assert snapshot.getInFlight() == 0 : "in flight = " + snapshot.getInFlight();
+    assert snapshot.getPeak() == 4 : "peak = " + snapshot.getPeak();
+    assert snapshot.getAverageConcurrency() > 1.0 && snapshot.getAverageConcurrency() <= 4.0 : "average concurrency = " + snapshot.
+            getAverageConcurrency();
+    assert test.getConcurrency().getPeak() == 0 : "peak after snapshot = " + test.getConcurrency().getPeak();
+    assert new Timing().getConcurrency() == null;
+  }
+
+  @Test
+  public void testPrimitiveTiming() {
+    Timing test = new Timing();
+    long l = test.time( new LongLambda() {
+      @Override
+      public long func() {
+        return 42L;
+      }
+    } );
+    int i = test.time( new IntLambda() {
+      @Override
+      public int func() {
+        return 7;
+      }
+    } );
+    double d = test.time( new DoubleLambda() {
+      @Override
+      public double func() {
+        return 0.5;
+      }
+    } );
+    boolean b = test.time( new BooleanLambda() {
+      @Override
+      public boolean func() {
+        return true;
+      }
+    } );
+    assert l == 42L && i == 7 && d == 0.5 && b;
+    assert test.getCount() == 4 : "test.count = " + test.getCount();
+  }
 }
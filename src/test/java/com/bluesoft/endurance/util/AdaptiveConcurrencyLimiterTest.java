@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bluesoft.endurance.instrumentation.Lambda;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( AdaptiveConcurrencyLimiterTest.class );
+
+  // a backend that serves 8 calls at a time in 2 ms each and queues the rest.
+  private static Lambda<Boolean> backend( final Semaphore capacity ) {
+    return new Lambda<Boolean>() {
+      @Override
+      public Boolean func() {
+        capacity.acquireUninterruptibly();
+        try {
+          Thread.sleep( 2L );
+        } catch ( InterruptedException ex ) {
+          Thread.currentThread().interrupt();
+        } finally {
+          capacity.release();
+        }
+        return true;
+      }
+    };
+  }
+
+  @Test( timeOut = 30000L )
+  public void testLimitAdaptsToAnOverloadedBackend() throws Exception {
+    final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter( "backend", 64, 1, 1000, 2.0 );
+    final Lambda<Boolean> backend = backend( new Semaphore( 8 ) );
+    final Lambda<Boolean> fallback = new Lambda<Boolean>() {
+      @Override
+      public Boolean func() {
+        try {
+          Thread.sleep( 1L );
+        } catch ( InterruptedException ex ) {
+          Thread.currentThread().interrupt();
+        }
+        return false;
+      }
+    };
+    final AtomicBoolean done = new AtomicBoolean( false );
+    final AtomicLong served = new AtomicLong();
+    ExecutorService executor = Executors.newFixedThreadPool( 64 );
+    List<Future<?>> clients = new ArrayList<>();
+    for ( int i = 0; i < 64; i++ ) {
+      clients.add( executor.submit( new Runnable() {
+        @Override
+        public void run() {
+          while (!done.get()) {
+            if ( limiter.call( backend, fallback ) ) {
+              served.incrementAndGet();
+            }
+          }
+        }
+      } ) );
+    }
+    Thread.sleep( 3000L );
+    done.set( true );
+    for ( Future<?> f : clients ) {
+      f.get();
+    }
+    executor.shutdown();
+    LOG.info( "64 clients on a backend of 8: limit {}, {} served, {} rejected, {}", limiter.getLimit(), served.get(),
+              limiter.getRejectedCount(), limiter.getTiming() );
+    assertTrue( limiter.getLimit() < 32, "the limit should shrink towards the backend's capacity, was " + limiter.getLimit() );
+    assertTrue( limiter.getRejectedCount() > 0 );
+    assertEquals( limiter.getInFlight(), 0 );
+  }
+
+  @Test( timeOut = 10000L )
+  public void testLimitDoesNotGrowWhenUnused() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter( "idle", 20, 1, 1000, 2.0 );
+    Lambda<Boolean> backend = backend( new Semaphore( 8 ) );
+    for ( int i = 0; i < 500; i++ ) {
+      limiter.call( backend );
+    }
+    assertTrue( limiter.getLimit() <= 20, "a single caller does not justify a higher limit, was " + limiter.getLimit() );
+    assertEquals( limiter.getRejectedCount(), 0L );
+  }
+
+  @Test( timeOut = 10000L )
+  public void testFastFailuresDoNotShrinkTheLimit() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter( "failing", 20, 1, 1000, 2.0 );
+    Lambda<Boolean> backend = backend( new Semaphore( 8 ) );
+    Lambda<Boolean> failing = new Lambda<Boolean>() {
+      @Override
+      public Boolean func() {
+        throw new IllegalStateException( "connection refused" );
+      }
+    };
+    int failures = 0;
+    for ( int i = 0; i < 400; i++ ) {
+      try {
+        limiter.call( i % 5 == 0 ? failing : backend );
+      } catch ( IllegalStateException ex ) {
+        failures += 1;
+      }
+    }
+    assertEquals( failures, 80 );
+    assertEquals( limiter.getTiming().getCount(), 320 );
+    assertEquals( limiter.getLimit(), 20, "calls that fail at once must not pass for the latency of an idle backend" );
+    assertEquals( limiter.getInFlight(), 0 );
+  }
+
+  @Test
+  public void testExcessCallsAreRejectedImmediately() {
+    final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter( "single", 1, 1, 1, 1.0 );
+    long start = System.nanoTime();
+    String result = limiter.call( new Lambda<String>() {
+      @Override
+      public String func() {
+        try {
+          return limiter.call( new Lambda<String>() {
+            @Override
+            public String func() {
+              return "nested";
+            }
+          } );
+        } catch ( RejectedExecutionException ex ) {
+          return "rejected";
+        }
+      }
+    } );
+    assertEquals( result, "rejected" );
+    assertTrue( System.nanoTime() - start < TimeUnit.SECONDS.toNanos( 1 ) );
+    assertEquals( limiter.getRejectedCount(), 1L );
+    assertEquals( limiter.getTiming().getCount(), 1 );
+  }
+
+  @Test( expectedExceptions = IllegalArgumentException.class )
+  public void testInvalidLimits() {
+    new AdaptiveConcurrencyLimiter( "bad", 10, 20, 30, 2.0 );
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class ContentionTrackerTest {
+
+  @Test
+  public void testSpaceSaving() {
+    ContentionTracker<String> tracker = new ContentionTracker<>( 3 );
+    for ( int i = 0; i < 100; i++ ) {
+      tracker.recordWait( "hot", 0L, 1000L );
+      tracker.recordWait( "cold-" + i, 0L, 10L );
+    }
+    List<ContentionTracker.HotKey<String>> top = tracker.getTopKeys();
+    assertEquals( top.size(), 3 );
+    assertEquals( top.get( 0 ).getValue(), "hot" );
+    assertEquals( top.get( 0 ).getCount() - top.get( 0 ).getError(), 100L, "the hot value is never evicted" );
+    assertEquals( top.get( 0 ).getWaits().getAverage(), 1000L );
+    assertEquals( tracker.getTotalWaits(), 200L );
+    for ( ContentionTracker.HotKey<String> key : top ) {
+      assertTrue( key.getCount() >= key.getError() );
+    }
+  }
+
+  @Test( timeOut = 5000L )
+  public void testWaitsAreTracked() throws Exception {
+    final DefaultValueBasedReentrantLock<String> locks = new DefaultValueBasedReentrantLock<>( new ContentionTracker<String>( 8 ) );
+    final ReentrantLock hot = locks.checkOutLock( "hot" );
+    ReentrantLock quiet = locks.checkOutLock( "quiet" );
+    assertEquals( locks.getLockTableSize(), 2 );
+    quiet.lock();
+    quiet.unlock();
+    locks.checkInLock( "quiet" );
+
+    final CountDownLatch waiting = new CountDownLatch( 1 );
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        ReentrantLock lock = locks.checkOutLock( "hot" );
+        waiting.countDown();
+        lock.lock();
+        lock.unlock();
+        locks.checkInLock( "hot" );
+      }
+    };
+    hot.lock();
+    try {
+      waiter.start();
+      waiting.await();
+      while (!hot.hasQueuedThreads()) {
+        Thread.sleep( 1L );
+      }
+      Thread.sleep( 10L );
+    } finally {
+      hot.unlock();
+    }
+    waiter.join();
+    locks.checkInLock( "hot" );
+    assertEquals( locks.getLockTableSize(), 0 );
+
+    List<ContentionTracker.HotKey<String>> top = locks.getContentionTracker().getTopKeys();
+    assertEquals( top.size(), 1, "only the contended value is tracked" );
+    assertEquals( top.get( 0 ).getValue(), "hot" );
+    assertTrue( top.get( 0 ).getWaits().getMax() >= 10000000L, "waited " + top.get( 0 ).getWaits().getMax() );
+    assertNull( new DefaultValueBasedReentrantLock<String>().getContentionTracker() );
+  }
+}
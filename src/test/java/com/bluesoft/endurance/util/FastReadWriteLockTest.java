@@ -213,4 +213,112 @@ public class FastReadWriteLockTest {
     final ReadWriteLock lock = new FastReadWriteLock();
     lock.writeLock().unlock();
   }
+
+  @Test( timeOut = 1000L )
+  public void testHoldCounts() {
+    final FastReadWriteLock lock = new FastReadWriteLock();
+    lock.readLock().lock();
+    lock.readLock().lock();
+    assertEquals( lock.getReadHoldCount(), 2 );
+    lock.readLock().unlock();
+    lock.readLock().unlock();
+    assertEquals( lock.getReadHoldCount(), 0 );
+    lock.writeLock().lock();
+    lock.writeLock().lock();
+    assertEquals( lock.getWriteHoldCount(), 2 );
+    lock.writeLock().unlock();
+    lock.writeLock().unlock();
+    assertEquals( lock.getWriteHoldCount(), 0 );
+  }
+
+  @Test( timeOut = 1000L )
+  public void testWriterMayAcquireReadLock() throws Exception {
+    final FastReadWriteLock lock = new FastReadWriteLock();
+    lock.writeLock().lock();
+    lock.readLock().lock();
+    lock.writeLock().unlock();
+    assertEquals( lock.getReadHoldCount(), 1 );
+    final boolean[] acquired = new boolean[1];
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        acquired[0] = lock.writeLock().tryLock();
+      }
+    };
+    writer.start();
+    writer.join();
+    assertFalse( acquired[0], "the downgraded read lock should keep writers out" );
+    lock.readLock().unlock();
+  }
+
+  @Test( timeOut = 1000L )
+  public void testWriteReentryWhileHoldingReadLock() throws Exception {
+    final FastReadWriteLock lock = new FastReadWriteLock();
+    lock.writeLock().lock();
+    lock.readLock().lock();
+    lock.writeLock().lock();
+    assertEquals( lock.getWriteHoldCount(), 2 );
+    assertTrue( lock.writeLock().tryLock(), "the owner may reenter the write lock" );
+    assertEquals( lock.getWriteHoldCount(), 3 );
+    lock.writeLock().unlock();
+    lock.writeLock().unlock();
+    final boolean[] acquired = new boolean[1];
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        acquired[0] = lock.readLock().tryLock();
+      }
+    };
+    reader.start();
+    reader.join();
+    assertFalse( acquired[0], "the outer write hold should keep readers out" );
+    lock.writeLock().unlock();
+    assertEquals( lock.getWriteHoldCount(), 0 );
+    lock.readLock().unlock();
+    assertEquals( lock.getReadHoldCount(), 0 );
+  }
+
+  @Test( timeOut = 2000L )
+  public void testTryLockTimeout() throws Exception {
+    final FastReadWriteLock lock = new FastReadWriteLock();
+    final boolean[] acquired = new boolean[2];
+    final long[] waited = new long[1];
+    Thread first = new Thread() {
+      @Override
+      public void run() {
+        lock.writeLock().lock();
+        lock.writeLock().unlock();
+        acquired[0] = true;
+      }
+    };
+    lock.writeLock().lock();
+    try {
+      // a waiter that is first in the queue, the timed out reader must not take its place.
+      first.start();
+      Thread.sleep( 20L );
+      long start = System.nanoTime();
+      Thread reader = new Thread() {
+        @Override
+        public void run() {
+          try {
+            acquired[1] = lock.readLock().tryLock( 50, TimeUnit.MILLISECONDS );
+          } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      };
+      reader.start();
+      reader.join();
+      waited[0] = System.nanoTime() - start;
+    } finally {
+      lock.writeLock().unlock();
+    }
+    first.join();
+    assertFalse( acquired[1], "the read lock should have timed out" );
+    assertTrue( waited[0] >= TimeUnit.MILLISECONDS.toNanos( 50 ) && waited[0] < TimeUnit.MILLISECONDS.toNanos( 1000 ),
+                "waited " + waited[0] + "ns" );
+    assertTrue( acquired[0], "the queued writer should have acquired the lock" );
+    assertTrue( lock.readLock().tryLock( 10, TimeUnit.MILLISECONDS ) );
+    lock.readLock().unlock();
+  }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.Procedure;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class KeyedSerialExecutorTest {
+
+  private static final int KEYS = 100;
+  private static final int TASKS = 200000;
+
+  @Test( timeOut = 20000L )
+  public void testTasksOfAValueRunInOrder() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool( 4 );
+    final KeyedSerialExecutor<Integer> executor = new KeyedSerialExecutor<>( pool );
+    final int[] counters = new int[KEYS];
+    final AtomicInteger outOfOrder = new AtomicInteger( 0 );
+    final AtomicInteger[] runningPerKey = new AtomicInteger[KEYS];
+    for ( int k = 0; k < KEYS; k++ ) {
+      runningPerKey[k] = new AtomicInteger( 0 );
+    }
+    List<CompletableFuture<Integer>> futures = new ArrayList<>();
+    for ( int i = 0; i < TASKS; i++ ) {
+      final int key = i % KEYS;
+      final int expected = i / KEYS;
+      futures.add( executor.submit( key, new Lambda<Integer>() {
+        @Override
+        public Integer func() {
+          if ( runningPerKey[key].incrementAndGet() != 1 ) {
+            outOfOrder.incrementAndGet();
+          }
+          if ( counters[key] != expected ) {
+            outOfOrder.incrementAndGet();
+          }
+          counters[key] += 1;
+          runningPerKey[key].decrementAndGet();
+          return expected;
+        }
+      } ) );
+    }
+    for ( int i = 0; i < TASKS; i++ ) {
+      assertEquals( futures.get( i ).get(), Integer.valueOf( i / KEYS ) );
+    }
+    pool.shutdown();
+    assertEquals( outOfOrder.get(), 0, "tasks of a value overlapped or ran out of order" );
+    for ( int k = 0; k < KEYS; k++ ) {
+      assertEquals( counters[k], TASKS / KEYS );
+    }
+    // the drain removes the queue just after completing the last future.
+    for ( int i = 0; i < 100 && executor.getActiveValues() > 0; i++ ) {
+      Thread.sleep( 10L );
+    }
+    assertEquals( executor.getActiveValues(), 0, "idle queues should be removed" );
+  }
+
+  @Test( timeOut = 5000L )
+  public void testFailures() throws Exception {
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>( pool );
+    CompletableFuture<Void> failed = executor.submit( "a", new Procedure() {
+      @Override
+      public void func() {
+        throw new IllegalStateException( "failed" );
+      }
+    } );
+    CompletableFuture<String> next = executor.submit( "a", new Lambda<String>() {
+      @Override
+      public String func() {
+        return "next";
+      }
+    } );
+    assertEquals( next.get(), "next", "a failed task must not stop the queue" );
+    try {
+      failed.get();
+      fail( "the failure should be reported" );
+    } catch ( ExecutionException ex ) {
+      assertTrue( ex.getCause() instanceof IllegalStateException );
+    }
+    // the drain may still be finishing up after completing the future, wait until the queue is retired.
+    while (executor.getActiveValues() > 0) {
+      Thread.yield();
+    }
+    pool.shutdown();
+    CompletableFuture<String> rejected = executor.submit( "a", new Lambda<String>() {
+      @Override
+      public String func() {
+        return "never";
+      }
+    } );
+    try {
+      rejected.get();
+      fail( "the rejection should be reported" );
+    } catch ( ExecutionException ex ) {
+      assertTrue( ex.getCause() instanceof RejectedExecutionException );
+    }
+    assertEquals( executor.getActiveValues(), 0 );
+  }
+
+  @Test( timeOut = 20000L )
+  public void testDirectExecutor() throws Exception {
+    final KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>( new Executor() {
+      @Override
+      public void execute( Runnable command ) {
+        command.run();
+      }
+    } );
+    final int tasks = 100 * KeyedSerialExecutor.DRAIN_BATCH;
+    final AtomicInteger ran = new AtomicInteger( 0 );
+    final Throwable[] failure = new Throwable[1];
+    // a small stack, each drain batch used to add frames when the executor runs the rescheduled drain inline.
+    Thread submitter = new Thread( null, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          executor.submit( "hot", new Procedure() {
+            @Override
+            public void func() {
+              for ( int i = 0; i < tasks; i++ ) {
+                executor.submit( "hot", new Procedure() {
+                  @Override
+                  public void func() {
+                    ran.incrementAndGet();
+                  }
+                } );
+              }
+            }
+          } ).get();
+        } catch ( Throwable ex ) {
+          failure[0] = ex;
+        }
+      }
+    }, "direct-submitter", 64 * 1024 );
+    submitter.start();
+    submitter.join();
+    assertNull( failure[0] );
+    assertEquals( ran.get(), tasks );
+    assertEquals( executor.getActiveValues(), 0 );
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.bluesoft.endurance.instrumentation.Transform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class ReadMostlyReferenceTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( ReadMostlyReferenceTest.class );
+  private static final int WRITERS = 8;
+  private static final int UPDATES = 2000;
+
+  private static Transform<Map<String, Integer>, Map<String, Integer>> copier() {
+    return new Transform<Map<String, Integer>, Map<String, Integer>>() {
+      @Override
+      public Map<String, Integer> func( Map<String, Integer> arg ) {
+        return new HashMap<>( arg );
+      }
+    };
+  }
+
+  private static Transform<Map<String, Integer>, Map<String, Integer>> increment( final String key ) {
+    return new Transform<Map<String, Integer>, Map<String, Integer>>() {
+      @Override
+      public Map<String, Integer> func( Map<String, Integer> arg ) {
+        Integer count = arg.get( key );
+        arg.put( key, count == null ? 1 : count + 1 );
+        return arg;
+      }
+    };
+  }
+
+  @Test
+  public void testUpdate() {
+    ReadMostlyReference<Map<String, Integer>> ref = new ReadMostlyReference<Map<String, Integer>>( new HashMap<String, Integer>(),
+                                                                                                   copier() );
+    Map<String, Integer> before = ref.get();
+    Map<String, Integer> after = ref.update( increment( "a" ) );
+    assertSame( ref.get(), after );
+    assertTrue( before.isEmpty(), "a published value must not change" );
+    assertEquals( after.get( "a" ), Integer.valueOf( 1 ) );
+    ref.set( new HashMap<String, Integer>() );
+    assertTrue( ref.get().isEmpty() );
+  }
+
+  @Test
+  public void testFailedTransform() {
+    ReadMostlyReference<String> ref = new ReadMostlyReference<>( "a" );
+    try {
+      ref.update( new Transform<String, String>() {
+        @Override
+        public String func( String arg ) {
+          throw new IllegalArgumentException( "rejected" );
+        }
+      } );
+      fail( "the exception should be rethrown to the writer" );
+    } catch ( IllegalArgumentException ex ) {
+      assertEquals( ex.getMessage(), "rejected" );
+    }
+    assertEquals( ref.get(), "a" );
+    assertEquals( ref.update( new Transform<String, String>() {
+      @Override
+      public String func( String arg ) {
+        return arg + "b";
+      }
+    } ), "ab" );
+  }
+
+  @Test( timeOut = 10000L )
+  public void testConcurrentUpdates() throws Exception {
+    final ReadMostlyReference<Map<String, Integer>> ref = new ReadMostlyReference<Map<String, Integer>>(
+            new HashMap<String, Integer>(), copier() );
+    final AtomicBoolean done = new AtomicBoolean( false );
+    final long[] reads = new long[1];
+    final AtomicBoolean wentBack = new AtomicBoolean( false );
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        int last = 0;
+        while (!done.get()) {
+          Integer a = ref.get().get( "a" );
+          int current = a == null ? 0 : a;
+          if ( current < last ) {
+            wentBack.set( true );
+          }
+          last = current;
+          reads[0] += 1;
+        }
+      }
+    };
+    reader.start();
+    ExecutorService executor = Executors.newFixedThreadPool( WRITERS );
+    List<Future<?>> futures = new ArrayList<>();
+    for ( int w = 0; w < WRITERS; w++ ) {
+      final String key = w % 2 == 0 ? "a" : "b";
+      futures.add( executor.submit( new Runnable() {
+        @Override
+        public void run() {
+          for ( int i = 0; i < UPDATES; i++ ) {
+            ref.update( increment( key ) );
+          }
+        }
+      } ) );
+    }
+    for ( Future<?> f : futures ) {
+      f.get();
+    }
+    executor.shutdown();
+    done.set( true );
+    reader.join();
+    assertEquals( ref.get().get( "a" ), Integer.valueOf( WRITERS / 2 * UPDATES ) );
+    assertEquals( ref.get().get( "b" ), Integer.valueOf( WRITERS / 2 * UPDATES ) );
+    assertFalse( wentBack.get(), "a reader saw an older value after a newer one" );
+    assertTrue( ref.getBatches() <= WRITERS * UPDATES );
+    LOG.info( "{} updates applied in {} batches while reading {} times", WRITERS * UPDATES, ref.getBatches(), reads[0] );
+  }
+}
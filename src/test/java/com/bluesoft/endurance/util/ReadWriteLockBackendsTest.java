@@ -0,0 +1,256 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.bluesoft.endurance.instrumentation.BooleanLambda;
+import com.bluesoft.endurance.instrumentation.IntLambda;
+import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.Procedure;
+import com.bluesoft.endurance.instrumentation.time.Timing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class ReadWriteLockBackendsTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( ReadWriteLockBackendsTest.class );
+  private static final int THREADS = 4;
+  private static final int OPERATIONS = 200000;
+  private static final int WRITE_PERCENT = 5;
+
+  @DataProvider( name = "backends" )
+  public Object[][] backends() {
+    return new Object[][] {
+      new Object[] { ReadWriteLockBackends.reentrant( true ) },
+      new Object[] { ReadWriteLockBackends.reentrant( false ) },
+      new Object[] { ReadWriteLockBackends.fast( false ) },
+      new Object[] { ReadWriteLockBackends.stamped() },
+      new Object[] { ReadWriteLockBackends.striped( 8 ) }
+    };
+  }
+
+  @Test( dataProvider = "backends", timeOut = 2000L )
+  public void testUpgradeDeepReadHolds( final ReadWriteLockBackend backend ) {
+    final ReentrantReadWriteLockHelper helper = new ReentrantReadWriteLockHelper( backend );
+    final int[] holds = new int[3];
+    helper.readLock( new Procedure() {
+      @Override
+      public void func() {
+        backend.lockRead();
+        backend.lockRead();
+        try {
+          holds[0] = backend.getReadHoldCount();
+          helper.writeLock( new Procedure() {
+            @Override
+            public void func() {
+              holds[1] = backend.getReadHoldCount();
+            }
+          } );
+          holds[2] = backend.getReadHoldCount();
+        } finally {
+          backend.unlockRead();
+          backend.unlockRead();
+        }
+      }
+    } );
+    assertEquals( holds[0], 3, "read holds before the upgrade" );
+    assertEquals( holds[1], 0, "read holds while writing" );
+    assertEquals( holds[2], 3, "read holds after the upgrade" );
+    assertEquals( backend.getReadHoldCount(), 0 );
+    assertEquals( backend.getWriteHoldCount(), 0 );
+  }
+
+  @Test( dataProvider = "backends", timeOut = 2000L )
+  public void testReadWhileWriting( final ReadWriteLockBackend backend ) {
+    final ReentrantReadWriteLockHelper helper = new ReentrantReadWriteLockHelper( backend );
+    int value = helper.writeLock( new IntLambda() {
+      @Override
+      public int func() {
+        return helper.readLock( new IntLambda() {
+          @Override
+          public int func() {
+            return helper.writeLock( new IntLambda() {
+              @Override
+              public int func() {
+                return backend.getWriteHoldCount();
+              }
+            } );
+          }
+        } );
+      }
+    } );
+    assertEquals( value, 2 );
+    // a downgrade: the read lock is still held once the write lock is released.
+    backend.lockWrite();
+    backend.lockRead();
+    backend.unlockWrite();
+    assertEquals( backend.getReadHoldCount(), 1 );
+    assertEquals( backend.getWriteHoldCount(), 0 );
+    backend.unlockRead();
+    helper.writeLock( new Procedure() {
+      @Override
+      public void func() {
+      }
+    } );
+  }
+
+  @Test( dataProvider = "backends" )
+  public void testReadMostly( ReadWriteLockBackend backend ) throws Exception {
+    final ReentrantReadWriteLockHelper helper = new ReentrantReadWriteLockHelper( backend );
+    // the writers keep both values equal, a reader must never see them differ.
+    final long[] values = new long[2];
+    final Timing timing = new Timing();
+    ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+    List<Future<Integer>> futures = new ArrayList<>();
+    for ( int t = 0; t < THREADS; t++ ) {
+      futures.add( executor.submit( new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          final int[] torn = new int[1];
+          timing.time( new Procedure() {
+            @Override
+            public void func() {
+              for ( int i = 0; i < OPERATIONS; i++ ) {
+                if ( ThreadLocalRandom.current().nextInt( 100 ) < WRITE_PERCENT ) {
+                  helper.writeLock( new Procedure() {
+                    @Override
+                    public void func() {
+                      values[0] += 1;
+                      values[1] += 1;
+                    }
+                  } );
+                } else if ( !helper.readLock( new BooleanLambda() {
+                  @Override
+                  public boolean func() {
+                    return values[0] == values[1];
+                  }
+                } ) ) {
+                  torn[0] += 1;
+                }
+              }
+            }
+          } );
+          return torn[0];
+        }
+      } ) );
+    }
+    int torn = 0;
+    for ( Future<Integer> f : futures ) {
+      torn += f.get();
+    }
+    executor.shutdown();
+    assertEquals( torn, 0, "readers saw a write in progress" );
+    assertEquals( values[0], values[1] );
+    LOG.info( "{}: {} operations per thread, {} ns per operation", backend, OPERATIONS, timing.getAverage() / OPERATIONS );
+  }
+
+  @Test( dataProvider = "backends", timeOut = 5000L )
+  public void testShedWhenLockIsBusy( final ReadWriteLockBackend backend ) throws Exception {
+    final ReentrantReadWriteLockHelper helper = new ReentrantReadWriteLockHelper( backend );
+    final CountDownLatch locked = new CountDownLatch( 1 );
+    final CountDownLatch release = new CountDownLatch( 1 );
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        helper.writeLock( new Procedure() {
+          @Override
+          public void func() {
+            locked.countDown();
+            try {
+              release.await();
+            } catch ( InterruptedException ex ) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        } );
+      }
+    };
+    writer.start();
+    locked.await();
+    Lambda<String> fresh = new Lambda<String>() {
+      @Override
+      public String func() {
+        return "fresh";
+      }
+    };
+    Lambda<String> stale = new Lambda<String>() {
+      @Override
+      public String func() {
+        return "stale";
+      }
+    };
+    long start = System.nanoTime();
+    assertEquals( helper.tryReadLock( 20, TimeUnit.MILLISECONDS, fresh, stale ), "stale" );
+    assertEquals( helper.tryWriteLock( 20, TimeUnit.MILLISECONDS, fresh, stale ), "stale" );
+    long elapsed = System.nanoTime() - start;
+    assertTrue( elapsed >= TimeUnit.MILLISECONDS.toNanos( 40 ), "waited " + elapsed + "ns" );
+    assertTrue( elapsed < TimeUnit.MILLISECONDS.toNanos( 1000 ), "waited " + elapsed + "ns" );
+    assertEquals( helper.getShedCount(), 2 );
+    release.countDown();
+    writer.join();
+    assertEquals( helper.tryReadLock( 20, TimeUnit.MILLISECONDS, fresh, stale ), "fresh" );
+    assertEquals( helper.tryWriteLock( 20, TimeUnit.MILLISECONDS, fresh, stale ), "fresh" );
+    assertEquals( helper.getShedCount(), 2 );
+  }
+
+  @Test( dataProvider = "backends", timeOut = 5000L )
+  public void testTryWriteLockWhileHoldingReadLock( final ReadWriteLockBackend backend ) throws Exception {
+    final ReentrantReadWriteLockHelper helper = new ReentrantReadWriteLockHelper( backend );
+    final Lambda<String> fresh = new Lambda<String>() {
+      @Override
+      public String func() {
+        return "fresh";
+      }
+    };
+    final Lambda<String> stale = new Lambda<String>() {
+      @Override
+      public String func() {
+        return "stale";
+      }
+    };
+    final String[] result = new String[1];
+    final long[] elapsed = new long[1];
+    helper.readLock( new Procedure() {
+      @Override
+      public void func() {
+        long start = System.nanoTime();
+        result[0] = helper.tryWriteLock( 1, TimeUnit.SECONDS, fresh, stale );
+        elapsed[0] = System.nanoTime() - start;
+        assertEquals( backend.getReadHoldCount(), 1, "the read hold is kept" );
+      }
+    } );
+    assertEquals( result[0], "stale" );
+    assertTrue( elapsed[0] < TimeUnit.MILLISECONDS.toNanos( 500 ), "waited " + elapsed[0] + "ns" );
+    assertEquals( helper.getShedCount(), 1 );
+    assertEquals( helper.tryWriteLock( 20, TimeUnit.MILLISECONDS, fresh, stale ), "fresh" );
+  }
+}
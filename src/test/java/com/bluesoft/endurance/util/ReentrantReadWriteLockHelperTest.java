@@ -15,9 +15,23 @@
  */
 package com.bluesoft.endurance.util;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bluesoft.endurance.instrumentation.IntLambda;
+import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.LongLambda;
 import com.bluesoft.endurance.instrumentation.Procedure;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import com.bluesoft.endurance.instrumentation.time.Timing;
+import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
 
 /**
@@ -29,6 +43,8 @@ public class ReentrantReadWriteLockHelperTest {
   private ReentrantReadWriteLockHelper lock = new ReentrantReadWriteLockHelper();
   private static final int READER_TIME = 0;
   private static final int WRITER_TIME = 1;
+  private static final int WRITERS = 8;
+  private static final int WRITES = 100000;
 
   @Test
   public void testReadLock() throws Exception {
@@ -78,4 +94,218 @@ public class ReentrantReadWriteLockHelperTest {
     } );
     assert timestamps[WRITER_TIME] < timestamps[READER_TIME];
   }
+
+  @Test
+  public void testPrimitiveLambdas() {
+    final long[] value = new long[]{ 0L };
+    int written = lock.writeLock( new IntLambda() {
+      @Override
+      public int func() {
+        value[0] = 11L;
+        return 1;
+      }
+    } );
+    long read = lock.readLock( new LongLambda() {
+      @Override
+      public long func() {
+        // the helper upgrades the read lock to the write lock.
+        return lock.writeLock( new LongLambda() {
+          @Override
+          public long func() {
+            return value[0];
+          }
+        } );
+      }
+    } );
+    assert written == 1;
+    assert read == 11L : "read = " + read;
+  }
+
+  @Test
+  public void testCombiningWrites() throws Exception {
+    long direct = timeWrites( new ReentrantReadWriteLockHelper( ReadWriteLockBackends.reentrant( false ) ) );
+    long combined = timeWrites( new ReentrantReadWriteLockHelper( ReadWriteLockBackends.reentrant( false ), true ) );
+    LoggerFactory.getLogger( ReentrantReadWriteLockHelperTest.class ).info(
+            "{} writers: {} ns per write locking directly, {} ns per write combining", WRITERS, direct, combined );
+  }
+
+  private long timeWrites( final ReentrantReadWriteLockHelper helper ) throws Exception {
+    final long[] counter = new long[1];
+    Timing timing = new Timing();
+    ExecutorService executor = Executors.newFixedThreadPool( WRITERS );
+    List<Future<?>> futures = new ArrayList<>();
+    long start = System.nanoTime();
+    for ( int w = 0; w < WRITERS; w++ ) {
+      futures.add( executor.submit( new Runnable() {
+        @Override
+        public void run() {
+          for ( int i = 0; i < WRITES; i++ ) {
+            long value = helper.writeLock( new Lambda<Long>() {
+              @Override
+              public Long func() {
+                return ++counter[0];
+              }
+            } );
+            assert value > 0;
+          }
+        }
+      } ) );
+    }
+    for ( Future<?> f : futures ) {
+      f.get();
+    }
+    timing.recordSample( start, System.nanoTime() );
+    executor.shutdown();
+    long total = helper.readLock( new LongLambda() {
+      @Override
+      public long func() {
+        return counter[0];
+      }
+    } );
+    assert total == (long)WRITERS * WRITES : "total = " + total;
+    return timing.getTotal() / ((long)WRITERS * WRITES);
+  }
+
+  @Test( timeOut = 2000L )
+  public void testCombiningFailure() {
+    ReentrantReadWriteLockHelper helper = new ReentrantReadWriteLockHelper( ReadWriteLockBackends.fast( false ), true );
+    try {
+      helper.writeLock( new Procedure() {
+        @Override
+        public void func() {
+          throw new IllegalStateException( "failed" );
+        }
+      } );
+      assert false : "the exception should reach the caller";
+    } catch ( IllegalStateException ex ) {
+      assert "failed".equals( ex.getMessage() );
+    }
+    int value = helper.writeLock( new Lambda<Integer>() {
+      @Override
+      public Integer func() {
+        return 3;
+      }
+    } );
+    assert value == 3;
+  }
+
+  @Test( timeOut = 5000L )
+  public void testCombiningCheckedFailure() throws Exception {
+    final ReentrantReadWriteLockHelper helper = new ReentrantReadWriteLockHelper( ReadWriteLockBackends.reentrant( false ), true );
+    final CountDownLatch locked = new CountDownLatch( 1 );
+    final CountDownLatch release = new CountDownLatch( 1 );
+    final Throwable[] failure = new Throwable[1];
+    final AtomicInteger writes = new AtomicInteger( 0 );
+    Thread holder = new Thread() {
+      @Override
+      public void run() {
+        helper.writeLock( new Procedure() {
+          @Override
+          public void func() {
+            locked.countDown();
+            try {
+              release.await();
+            } catch ( InterruptedException ex ) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        } );
+      }
+    };
+    holder.start();
+    locked.await();
+    Thread failing = new Thread() {
+      @Override
+      public void run() {
+        try {
+          helper.writeLock( new Procedure() {
+            @Override
+            public void func() {
+              ReentrantReadWriteLockHelperTest.<RuntimeException>sneakyThrow( new IOException( "failed" ) );
+            }
+          } );
+        } catch ( Throwable ex ) {
+          failure[0] = ex;
+        }
+      }
+    };
+    failing.start();
+    Thread.sleep( 20L );
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        helper.writeLock( new Procedure() {
+          @Override
+          public void func() {
+            writes.incrementAndGet();
+          }
+        } );
+      }
+    };
+    writer.start();
+    Thread.sleep( 20L );
+    release.countDown();
+    holder.join();
+    failing.join();
+    writer.join();
+    assert failure[0] instanceof IOException : "failure = " + failure[0];
+    assert writes.get() == 1 : "writes = " + writes.get();
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private static <E extends Throwable> void sneakyThrow( Throwable failure ) throws E {
+    throw (E)failure;
+  }
+
+  @Test( timeOut = 5000L )
+  public void testCombiningKeepsInterrupt() throws Exception {
+    final ReentrantReadWriteLockHelper helper = new ReentrantReadWriteLockHelper( ReadWriteLockBackends.reentrant( false ), true );
+    final CountDownLatch locked = new CountDownLatch( 1 );
+    final CountDownLatch release = new CountDownLatch( 1 );
+    final AtomicInteger interrupted = new AtomicInteger( 0 );
+    Thread holder = new Thread() {
+      @Override
+      public void run() {
+        helper.writeLock( new Procedure() {
+          @Override
+          public void func() {
+            locked.countDown();
+            try {
+              release.await();
+            } catch ( InterruptedException ex ) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        } );
+      }
+    };
+    holder.start();
+    locked.await();
+    List<Thread> waiters = new ArrayList<>();
+    for ( int i = 0; i < 3; i++ ) {
+      Thread waiter = new Thread() {
+        @Override
+        public void run() {
+          Thread.currentThread().interrupt();
+          helper.writeLock( new Procedure() {
+            @Override
+            public void func() {
+            }
+          } );
+          if ( Thread.currentThread().isInterrupted() ) {
+            interrupted.incrementAndGet();
+          }
+        }
+      };
+      waiter.start();
+      waiters.add( waiter );
+    }
+    Thread.sleep( 50L );
+    release.countDown();
+    holder.join();
+    for ( Thread waiter : waiters ) {
+      waiter.join();
+    }
+    assert interrupted.get() == 3 : "interrupted = " + interrupted.get();
+  }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.bluesoft.endurance.instrumentation.time.Timing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class SeqLockValueTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( SeqLockValueTest.class );
+  private static final int READERS = 3;
+  private static final int WRITES = 200000;
+
+  @Test
+  public void testReadWrite() {
+    SeqLockValue value = new SeqLockValue( 2 );
+    assertEquals( value.size(), 2 );
+    value.beginWrite();
+    try {
+      value.set( 0, 42L );
+      value.setDouble( 1, 0.25 );
+    } finally {
+      value.endWrite();
+    }
+    long version = value.readBegin();
+    assertEquals( value.get( 0 ), 42L );
+    assertEquals( value.getDouble( 1 ), 0.25 );
+    assertTrue( value.validate( version ) );
+    value.beginWrite();
+    value.endWrite();
+    assertFalse( value.validate( version ), "a write must invalidate the read" );
+    long[] snapshot = new long[2];
+    value.snapshot( snapshot );
+    assertEquals( snapshot[0], 42L );
+  }
+
+  @Test( expectedExceptions = IllegalStateException.class )
+  public void testEndWriteWithoutBegin() {
+    new SeqLockValue( 1 ).endWrite();
+  }
+
+  @Test( timeOut = 20000L )
+  public void testConsistentSnapshots() throws Exception {
+    // the writer keeps the second field at twice and the third at minus the first, a reader must never see otherwise.
+    final SeqLockValue value = new SeqLockValue( 3 );
+    final AtomicBoolean done = new AtomicBoolean( false );
+    final Timing readTiming = new Timing();
+    ExecutorService executor = Executors.newFixedThreadPool( READERS );
+    List<Future<Long>> futures = new ArrayList<>();
+    for ( int r = 0; r < READERS; r++ ) {
+      futures.add( executor.submit( new Callable<Long>() {
+        @Override
+        public Long call() {
+          long[] snapshot = new long[3];
+          long reads = 0;
+          long torn = 0;
+          long start = System.nanoTime();
+          while (!done.get()) {
+            value.snapshot( snapshot );
+            if ( snapshot[1] != 2 * snapshot[0] || snapshot[2] != -snapshot[0] ) {
+              torn += 1;
+            }
+            reads += 1;
+          }
+          readTiming.recordSample( start, System.nanoTime() );
+          assertEquals( torn, 0, "torn snapshots" );
+          return reads;
+        }
+      } ) );
+    }
+    for ( long i = 1; i <= WRITES; i++ ) {
+      value.beginWrite();
+      try {
+        value.set( 0, i );
+        value.set( 1, 2 * i );
+        value.set( 2, -i );
+      } finally {
+        value.endWrite();
+      }
+    }
+    done.set( true );
+    long reads = 0;
+    for ( Future<Long> f : futures ) {
+      reads += f.get();
+    }
+    executor.shutdown();
+    assertEquals( value.get( 0 ), WRITES );
+    LOG.info( "{} writes, {} consistent snapshots by {} readers, {} ns per snapshot", WRITES, reads, READERS,
+              reads == 0 ? 0 : readTiming.getTotal() / reads );
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bluesoft.endurance.instrumentation.Lambda;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class SingleFlightTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( SingleFlightTest.class );
+  private static final int CALLERS = 200;
+
+  private static Lambda<String> slowLoader( final AtomicInteger calls, final long millis ) {
+    return new Lambda<String>() {
+      @Override
+      public String func() {
+        calls.incrementAndGet();
+        try {
+          Thread.sleep( millis );
+        } catch ( InterruptedException ex ) {
+          Thread.currentThread().interrupt();
+        }
+        return "loaded";
+      }
+    };
+  }
+
+  @Test( timeOut = 20000L )
+  public void testStampedeIsCoalesced() throws Exception {
+    DefaultValueBasedReentrantLock<String> locks = new DefaultValueBasedReentrantLock<>();
+    final SingleFlight<String, String> flight = new SingleFlight<>( locks, true );
+    final AtomicInteger calls = new AtomicInteger();
+    final Lambda<String> loader = slowLoader( calls, 500L );
+    final CountDownLatch start = new CountDownLatch( 1 );
+    ExecutorService executor = Executors.newFixedThreadPool( CALLERS );
+    List<Future<String>> futures = new ArrayList<>();
+    for ( int i = 0; i < CALLERS; i++ ) {
+      futures.add( executor.submit( new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          start.await();
+          return flight.load( "expired-entry", loader );
+        }
+      } ) );
+    }
+    start.countDown();
+    for ( Future<String> f : futures ) {
+      assertEquals( f.get(), "loaded" );
+    }
+    executor.shutdown();
+    LOG.info( "{} callers, {} loads, {} shared", CALLERS, flight.getLoadCount(), flight.getSharedCount() );
+    assertEquals( flight.getLoadCount(), (long)calls.get() );
+    assertEquals( flight.getLoadCount() + flight.getSharedCount(), (long)CALLERS );
+    assertTrue( calls.get() < CALLERS / 20, calls.get() + " loads for " + CALLERS + " callers" );
+    assertEquals( flight.getInFlight(), 0 );
+    assertEquals( locks.getLockTableSize(), 0 );
+    assertEquals( flight.getTiming( "expired-entry" ).getCount(), calls.get() );
+    assertNull( flight.getTiming( "never-loaded" ) );
+  }
+
+  @Test( timeOut = 10000L )
+  public void testFailureIsShared() throws Exception {
+    final SingleFlight<String, String> flight = new SingleFlight<>();
+    final CountDownLatch loading = new CountDownLatch( 1 );
+    final CountDownLatch fail = new CountDownLatch( 1 );
+    final AtomicInteger calls = new AtomicInteger();
+    final Lambda<String> loader = new Lambda<String>() {
+      @Override
+      public String func() {
+        calls.incrementAndGet();
+        loading.countDown();
+        try {
+          fail.await();
+        } catch ( InterruptedException ex ) {
+          Thread.currentThread().interrupt();
+        }
+        throw new IllegalStateException( "backend down" );
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool( 2 );
+    CompletableFuture<String> leader = flight.loadAsync( "key", loader, executor );
+    loading.await();
+    CompletableFuture<String> follower = flight.loadAsync( "key", loader, executor );
+    follower.cancel( false );
+    CompletableFuture<String> other = flight.loadAsync( "key", loader, executor );
+    fail.countDown();
+    for ( CompletableFuture<String> f : Arrays.asList( leader, other ) ) {
+      try {
+        f.get();
+        fail( "the failure should be shared" );
+      } catch ( ExecutionException ex ) {
+        assertTrue( ex.getCause() instanceof IllegalStateException );
+      }
+    }
+    assertEquals( calls.get(), 1, "cancelling one caller's future must not affect the others" );
+    try {
+      flight.load( "key", loader );
+      fail( "the loader should fail again" );
+    } catch ( IllegalStateException ex ) {
+      assertEquals( ex.getMessage(), "backend down" );
+    }
+    assertEquals( calls.get(), 2, "a failed flight is forgotten" );
+    executor.shutdown();
+  }
+
+  @Test( timeOut = 5000L )
+  public void testCheckedFailureDoesNotHangTheKey() throws Exception {
+    final SingleFlight<String, String> flight = new SingleFlight<>();
+    try {
+      flight.load( "key", new Lambda<String>() {
+        @Override
+        public String func() {
+          SingleFlightTest.<RuntimeException>sneakyThrow( new IOException( "backend down" ) );
+          return null;
+        }
+      } );
+      fail( "the failure should reach the caller" );
+    } catch ( Exception ex ) {
+      assertTrue( ex instanceof IOException, "failure = " + ex );
+    }
+    assertEquals( flight.load( "key", slowLoader( new AtomicInteger(), 0L ) ), "loaded" );
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private static <E extends Throwable> void sneakyThrow( Throwable failure ) throws E {
+    throw (E)failure;
+  }
+}
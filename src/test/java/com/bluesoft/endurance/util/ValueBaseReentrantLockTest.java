@@ -15,19 +15,26 @@
  */
 package com.bluesoft.endurance.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.testng.annotations.Test;
+import static org.testng.Assert.*;
 
 /**
  *
@@ -87,6 +94,193 @@ public class ValueBaseReentrantLockTest {
 
   }
 
+  @Test( timeOut = 20000L )
+  public void testTransfersDoNotDeadlock() throws Exception {
+    final DefaultValueBasedReentrantLock<Value> locks = new DefaultValueBasedReentrantLock<>();
+    final Value[] accounts = new Value[] { new Value( "a" ), new Value( "b" ), new Value( "c" ), new Value( "d" ) };
+    final Map<Value, Integer> balances = new HashMap<>();
+    for ( Value account : accounts ) {
+      balances.put( account, 100 );
+    }
+    ExecutorService executor = Executors.newFixedThreadPool( 8 );
+    List<Future<?>> futures = new ArrayList<>();
+    for ( int i = 0; i < 20000; i++ ) {
+      futures.add( executor.submit( new Runnable() {
+        @Override
+        public void run() {
+          Value from = accounts[ThreadLocalRandom.current().nextInt( accounts.length )];
+          Value to = accounts[ThreadLocalRandom.current().nextInt( accounts.length )];
+          try ( MultiValueLock<Value> pair = locks.checkOutLocks( Arrays.asList( from, to ) ) ) {
+            pair.lock();
+            balances.put( from, balances.get( from ) - 1 );
+            balances.put( to, balances.get( to ) + 1 );
+          }
+        }
+      } ) );
+    }
+    for ( Future<?> f : futures ) {
+      f.get();
+    }
+    executor.shutdown();
+    int total = 0;
+    for ( Value account : accounts ) {
+      total += balances.get( account );
+    }
+    assert total == 400 : "total = " + total;
+  }
+
+  @Test( timeOut = 5000L )
+  public void testMultiValueTryLock() throws Exception {
+    final DefaultValueBasedReentrantLock<Value> locks = new DefaultValueBasedReentrantLock<>();
+    final Value a = new Value( "a" );
+    final Value b = new Value( "b" );
+    MultiValueLock<Value> ab = locks.checkOutLocks( Arrays.asList( a, b, a ) );
+    MultiValueLock<Value> ba = locks.checkOutLocks( Arrays.asList( b, a ) );
+    assert ab.getValues().equals( ba.getValues() ) : ab.getValues() + " != " + ba.getValues();
+    assert ab.getValues().size() == 2;
+
+    final CountDownLatch locked = new CountDownLatch( 1 );
+    final CountDownLatch release = new CountDownLatch( 1 );
+    Thread holder = new Thread() {
+      @Override
+      public void run() {
+        ReentrantLock lock = locks.checkOutLock( b );
+        lock.lock();
+        try {
+          locked.countDown();
+          release.await();
+        } catch ( InterruptedException ex ) {
+          Thread.currentThread().interrupt();
+        } finally {
+          lock.unlock();
+          locks.checkInLock( b );
+        }
+      }
+    };
+    holder.start();
+    locked.await();
+    try {
+      assertFalse( ab.tryLock(), "b is held by another thread" );
+      assertFalse( ab.tryLock( 20, TimeUnit.MILLISECONDS ), "b is held by another thread" );
+      ReentrantLock lockA = locks.checkOutLock( a );
+      assert !lockA.isHeldByCurrentThread() : "a failed try lock must not keep any lock";
+      locks.checkInLock( a );
+    } finally {
+      release.countDown();
+      holder.join();
+    }
+    assertTrue( ab.tryLock( 1, TimeUnit.SECONDS ) );
+    ab.close();
+    ba.lock();
+    ba.unlock();
+    ba.checkIn();
+    ba.close();
+  }
+
+  @Test( timeOut = 5000L )
+  public void testDefaultMultiValueLock() throws Exception {
+    final DefaultValueBasedReentrantLock<Value> table = new DefaultValueBasedReentrantLock<>();
+    // an implementation that only provides the single value methods gets checkOutLocks and checkInLocks from the interface.
+    ValueBasedReentrantLock<Value> locks = new ValueBasedReentrantLock<Value>() {
+      @Override
+      public void checkInLock( Value value ) {
+        table.checkInLock( value );
+      }
+
+      @Override
+      public ReentrantLock checkOutLock( Value value ) {
+        return table.checkOutLock( value );
+      }
+    };
+    Value a = new Value( "a" );
+    Value b = new Value( "b" );
+    MultiValueLock<Value> ab = locks.checkOutLocks( Arrays.asList( a, b, a ) );
+    MultiValueLock<Value> ba = locks.checkOutLocks( Arrays.asList( b, a ) );
+    assert ab.getValues().equals( ba.getValues() ) : ab.getValues() + " != " + ba.getValues();
+    assert ab.getValues().size() == 2;
+    assert table.getLockTableSize() == 2;
+    ab.lock();
+    ab.close();
+    ba.lock();
+    ba.close();
+    assert table.getLockTableSize() == 0 : "table size = " + table.getLockTableSize();
+  }
+
+  @Test( timeOut = 5000L )
+  public void testTiedMultiValueLock() throws Exception {
+    final DefaultValueBasedReentrantLock<Value> table = new DefaultValueBasedReentrantLock<>();
+    final Value a = new Value( "a" );
+    final Value b = new Value( "b" );
+    // locks that can not be ordered against each other are acquired under the tie lock.
+    ReentrantLock[] ab = { table.checkOutLock( a ), table.checkOutLock( b ) };
+    MultiValueLock<Value> tied = new MultiValueLock<>( table, Arrays.asList( a, b ), ab, true );
+    tied.lock();
+    final boolean[] acquired = new boolean[1];
+    Thread other = new Thread() {
+      @Override
+      public void run() {
+        ReentrantLock[] ba = { table.checkOutLock( b ), table.checkOutLock( a ) };
+        try ( MultiValueLock<Value> reversed = new MultiValueLock<>( table, Arrays.asList( b, a ), ba, true ) ) {
+          acquired[0] = reversed.tryLock( 20, TimeUnit.MILLISECONDS );
+        } catch ( InterruptedException ex ) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    other.start();
+    other.join();
+    assertFalse( acquired[0], "the locks are held by the first handle" );
+    tied.unlock();
+    assertTrue( tied.tryLock() );
+    tied.close();
+    assertEquals( table.getLockTableSize(), 0 );
+  }
+
+  @Test( timeOut = 20000L )
+  public void testLongValueBasedLock() throws Exception {
+    final LongValueBasedReentrantLock locks = new LongValueBasedReentrantLock();
+    final long[] counters = new long[4];
+    ExecutorService executor = Executors.newFixedThreadPool( 8 );
+    List<Future<?>> futures = new ArrayList<>();
+    for ( int i = 0; i < 20000; i++ ) {
+      futures.add( executor.submit( new Runnable() {
+        @Override
+        public void run() {
+          int id = ThreadLocalRandom.current().nextInt( counters.length );
+          ReentrantLock lock = locks.checkOutLock( 1000000L + id );
+          lock.lock();
+          try {
+            counters[id] += 1;
+          } finally {
+            lock.unlock();
+            locks.checkInLock( 1000000L + id );
+          }
+        }
+      } ) );
+    }
+    for ( Future<?> f : futures ) {
+      f.get();
+    }
+    executor.shutdown();
+    long total = 0;
+    for ( long counter : counters ) {
+      total += counter;
+    }
+    assert total == 20000 : "total = " + total;
+    assert locks.getLockTableSize() == 0 : "the table should be empty once every lock is checked in";
+    ReentrantLock first = locks.checkOutLock( 7L );
+    ReentrantLock second = locks.checkOutLock( 7L );
+    assertSame( second, first, "a value checked out twice shares its lock" );
+    locks.checkInLock( 7L );
+    locks.checkInLock( 7L );
+    try {
+      locks.checkInLock( 7L );
+      assert false : "checking in a lock that is not checked out should fail";
+    } catch ( IllegalStateException ex ) {
+      // expected
+    }
+  }
+
   private class Value {
     private String string;
 
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class ValueBasedReadWriteLockTest {
+
+  private static final int READERS = 4;
+
+  @Test( timeOut = 5000L )
+  public void testReadersOfAValueShareTheLock() throws Exception {
+    final DefaultValueBasedReadWriteLock<String> locks = new DefaultValueBasedReadWriteLock<>();
+    final CountDownLatch allReading = new CountDownLatch( READERS );
+    ExecutorService executor = Executors.newFixedThreadPool( READERS );
+    List<Future<Boolean>> futures = new ArrayList<>();
+    for ( int i = 0; i < READERS; i++ ) {
+      futures.add( executor.submit( new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          ReadWriteLock lock = locks.checkOutLock( "hot" );
+          lock.readLock().lock();
+          try {
+            allReading.countDown();
+            // only returns true if every reader holds the read lock at the same time.
+            return allReading.await( 2, TimeUnit.SECONDS );
+          } finally {
+            lock.readLock().unlock();
+            locks.checkInLock( "hot" );
+          }
+        }
+      } ) );
+    }
+    for ( Future<Boolean> f : futures ) {
+      assertTrue( f.get(), "the readers should hold the lock together" );
+    }
+    executor.shutdown();
+  }
+
+  @Test( timeOut = 20000L )
+  public void testWritersExcludeReaders() throws Exception {
+    final DefaultValueBasedReadWriteLock<String> locks = new DefaultValueBasedReadWriteLock<>();
+    final String[] values = new String[] { "a", "b", "c" };
+    final AtomicInteger[] readers = new AtomicInteger[values.length];
+    final AtomicInteger[] writers = new AtomicInteger[values.length];
+    for ( int i = 0; i < values.length; i++ ) {
+      readers[i] = new AtomicInteger( 0 );
+      writers[i] = new AtomicInteger( 0 );
+    }
+    final AtomicInteger violations = new AtomicInteger( 0 );
+    ExecutorService executor = Executors.newFixedThreadPool( 8 );
+    List<Future<?>> futures = new ArrayList<>();
+    for ( int i = 0; i < 20000; i++ ) {
+      futures.add( executor.submit( new Runnable() {
+        @Override
+        public void run() {
+          int index = ThreadLocalRandom.current().nextInt( values.length );
+          boolean write = ThreadLocalRandom.current().nextInt( 10 ) == 0;
+          ReadWriteLock lock = locks.checkOutLock( values[index] );
+          if ( write ) {
+            lock.writeLock().lock();
+            try {
+              if ( writers[index].incrementAndGet() != 1 || readers[index].get() != 0 ) {
+                violations.incrementAndGet();
+              }
+              writers[index].decrementAndGet();
+            } finally {
+              lock.writeLock().unlock();
+              locks.checkInLock( values[index] );
+            }
+          } else {
+            lock.readLock().lock();
+            try {
+              readers[index].incrementAndGet();
+              if ( writers[index].get() != 0 ) {
+                violations.incrementAndGet();
+              }
+              readers[index].decrementAndGet();
+            } finally {
+              lock.readLock().unlock();
+              locks.checkInLock( values[index] );
+            }
+          }
+        }
+      } ) );
+    }
+    for ( Future<?> f : futures ) {
+      f.get();
+    }
+    executor.shutdown();
+    assertEquals( violations.get(), 0 );
+  }
+
+  @Test
+  public void testLocksAreReclaimed() {
+    DefaultValueBasedReadWriteLock<String> locks = new DefaultValueBasedReadWriteLock<>();
+    ReadWriteLock first = locks.checkOutLock( "a" );
+    assertSame( locks.checkOutLock( "a" ), first );
+    locks.checkInLock( "a" );
+    locks.checkInLock( "a" );
+    assertNotSame( locks.checkOutLock( "a" ), first, "the lock should be dropped once every check out is checked in" );
+    locks.checkInLock( "a" );
+  }
+
+  @Test( expectedExceptions = IllegalStateException.class )
+  public void testCheckInWithoutCheckOut() {
+    new DefaultValueBasedReadWriteLock<String>().checkInLock( "a" );
+  }
+}
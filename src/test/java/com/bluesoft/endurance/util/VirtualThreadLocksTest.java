@@ -0,0 +1,224 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.Procedure;
+import com.bluesoft.endurance.instrumentation.time.Timing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Runs the locks under a virtual thread per task executor, skipped on JVMs without virtual threads.
+ *
+ * @author danap
+ */
+public class VirtualThreadLocksTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( VirtualThreadLocksTest.class );
+  private static final int TASKS = 100000;
+  private final Timing jucTiming = new Timing();
+  private final Timing frwTiming = new Timing();
+  private final Timing frwAllReadingTiming = new Timing();
+  private final Timing helperTiming = new Timing();
+  private final Timing valueLockTiming = new Timing();
+
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService)Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+    } catch ( ReflectiveOperationException ex ) {
+      throw new SkipException( "virtual threads are not available on this JVM" );
+    }
+  }
+
+  private static void runTasks( Timing timing, final Runnable task ) throws Exception {
+    final ExecutorService executor = newVirtualThreadPerTaskExecutor();
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Runnable recordingTask = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          task.run();
+        } catch ( Throwable t ) {
+          failure.compareAndSet( null, t );
+        }
+      }
+    };
+    timing.time( new Lambda<Void>() {
+      @Override
+      public Void func() {
+        for ( int i = 0; i < TASKS; i++ ) {
+          executor.submit( recordingTask );
+        }
+        executor.shutdown();
+        try {
+          assertTrue( executor.awaitTermination( 60, TimeUnit.SECONDS ), "tasks did not finish" );
+        } catch ( InterruptedException ex ) {
+          throw new IllegalStateException( ex );
+        }
+        return null;
+      }
+    } );
+    if ( failure.get() != null ) {
+      throw new AssertionError( "a task failed", failure.get() );
+    }
+  }
+
+  private static void pause() {
+    try {
+      Thread.sleep( 1L );
+    } catch ( InterruptedException ex ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @DataProvider( name = "locks" )
+  public Object[][] locks() {
+    return new Object[][] {
+      new Object[] { new ReentrantReadWriteLock(), jucTiming },
+      new Object[] { new FastReadWriteLock(), frwTiming }
+    };
+  }
+
+  @Test( dataProvider = "locks" )
+  public void testReadWriteLock( final ReadWriteLock lock, Timing timing ) throws Exception {
+    final int[] counter = new int[1];
+    final int[] writes = new int[1];
+    runTasks( timing, new Runnable() {
+      @Override
+      public void run() {
+        boolean write = ThreadLocalRandom.current().nextInt( 10 ) == 0;
+        Lock theLock = write ? lock.writeLock() : lock.readLock();
+        pause();
+        theLock.lock();
+        try {
+          if ( write ) {
+            counter[0] += 1;
+            writes[0] += 1;
+          } else {
+            assertEquals( counter[0], writes[0] );
+          }
+        } finally {
+          theLock.unlock();
+        }
+      }
+    } );
+    lock.readLock().lock();
+    try {
+      assertEquals( counter[0], writes[0] );
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Test
+  public void testAllTasksHoldReadLock() throws Exception {
+    // more concurrent readers than a ReentrantReadWriteLock supports.
+    final FastReadWriteLock lock = new FastReadWriteLock();
+    final CountDownLatch allReading = new CountDownLatch( TASKS );
+    runTasks( frwAllReadingTiming, new Runnable() {
+      @Override
+      public void run() {
+        lock.readLock().lock();
+        try {
+          allReading.countDown();
+          allReading.await();
+        } catch ( InterruptedException ex ) {
+          Thread.currentThread().interrupt();
+        } finally {
+          lock.readLock().unlock();
+        }
+      }
+    } );
+    assertTrue( lock.writeLock().tryLock(), "all read locks should have been released" );
+    lock.writeLock().unlock();
+  }
+
+  @Test
+  public void testReadWriteLockHelper() throws Exception {
+    final ReentrantReadWriteLockHelper helper = new ReentrantReadWriteLockHelper();
+    final int[] counter = new int[1];
+    runTasks( helperTiming, new Runnable() {
+      @Override
+      public void run() {
+        pause();
+        helper.readLock( new Procedure() {
+          @Override
+          public void func() {
+            helper.writeLock( new Procedure() {
+              @Override
+              public void func() {
+                counter[0] += 1;
+              }
+            } );
+          }
+        } );
+      }
+    } );
+    assertEquals( counter[0], TASKS );
+  }
+
+  @Test
+  public void testValueBasedReentrantLock() throws Exception {
+    final DefaultValueBasedReentrantLock<Integer> locks = new DefaultValueBasedReentrantLock<>();
+    final int[] counters = new int[16];
+    runTasks( valueLockTiming, new Runnable() {
+      @Override
+      public void run() {
+        Integer value = ThreadLocalRandom.current().nextInt( counters.length );
+        ReentrantLock lock = locks.checkOutLock( value );
+        lock.lock();
+        try {
+          counters[value] += 1;
+          pause();
+        } finally {
+          lock.unlock();
+          locks.checkInLock( value );
+        }
+      }
+    } );
+    int total = 0;
+    for ( int count : counters ) {
+      total += count;
+    }
+    assertEquals( total, TASKS );
+  }
+
+  @AfterClass
+  public void printTimings() {
+    LOG.info( "JUC {} virtual threads {}", TASKS, jucTiming );
+    LOG.info( "FRW {} virtual threads {}", TASKS, frwTiming );
+    LOG.info( "FRW ALL READING {} virtual threads {}", TASKS, frwAllReadingTiming );
+    LOG.info( "HELPER {} virtual threads {}", TASKS, helperTiming );
+    LOG.info( "VALUE LOCK {} virtual threads {}", TASKS, valueLockTiming );
+  }
+}
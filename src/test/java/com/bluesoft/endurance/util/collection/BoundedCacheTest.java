@@ -0,0 +1,306 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bluesoft.endurance.instrumentation.Lambda;
+import com.bluesoft.endurance.instrumentation.Procedure;
+import com.bluesoft.endurance.instrumentation.time.Timing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class BoundedCacheTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( BoundedCacheTest.class );
+
+  private static class FakeTicker extends BoundedCache.Ticker {
+
+    private long now = 1000L;
+
+    @Override
+    long nanoTime() {
+      return now;
+    }
+  }
+
+  // a Zipfian trace over a number of keys, the key of rank r is drawn with a probability proportional to 1 / r^skew.
+  private static int[] zipf( int keys, double skew, int length, long seed ) {
+    double[] cumulative = new double[keys];
+    double sum = 0.0;
+    for ( int r = 0; r < keys; r++ ) {
+      sum += 1.0 / Math.pow( r + 1, skew );
+      cumulative[r] = sum;
+    }
+    Random random = new Random( seed );
+    int[] trace = new int[length];
+    for ( int i = 0; i < length; i++ ) {
+      double u = random.nextDouble() * sum;
+      int lo = 0;
+      int hi = keys - 1;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if ( cumulative[mid] < u ) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      // scatter the ranks so the popular keys do not hash next to each other.
+      trace[i] = lo * 0x9E3779B1;
+    }
+    return trace;
+  }
+
+  @Test
+  public void testBasicOperations() {
+    BoundedCache<String, String> cache = new BoundedCache<>( 100 );
+    assertNull( cache.put( "a", "1" ) );
+    assertEquals( cache.get( "a" ), "1" );
+    assertEquals( cache.put( "a", "2" ), "1" );
+    assertEquals( cache.get( "a" ), "2" );
+    assertNull( cache.get( "b" ) );
+    assertEquals( cache.remove( "a" ), "2" );
+    assertNull( cache.get( "a" ) );
+    assertEquals( cache.getHitCount(), 2L );
+    assertEquals( cache.getMissCount(), 2L );
+    assertEquals( cache.getHitRate(), 0.5 );
+    cache.put( "c", "3" );
+    cache.clear();
+    cache.cleanUp();
+    assertEquals( cache.size(), 0L );
+    assertEquals( cache.getWeightedSize(), 0L );
+  }
+
+  @Test
+  public void testSizeAndWeightBounds() {
+    BoundedCache<Integer, Integer> cache = new BoundedCache<>( 100 );
+    for ( int i = 0; i < 10000; i++ ) {
+      cache.put( i, i );
+    }
+    cache.cleanUp();
+    assertEquals( cache.size(), 100L );
+    assertEquals( cache.getWeightedSize(), 100L );
+    assertEquals( cache.getEvictionCount(), 9900L );
+
+    BoundedCache<Integer, String> weighted = new BoundedCache<>( 1000, new BoundedCache.Weigher<Integer, String>() {
+      @Override
+      public int weigh( Integer key, String value ) {
+        return value.length();
+      }
+    }, 0L, 0L, TimeUnit.SECONDS, null );
+    Random random = new Random( 3L );
+    for ( int i = 0; i < 5000; i++ ) {
+      char[] value = new char[1 + random.nextInt( 50 )];
+      weighted.put( i, new String( value ) );
+    }
+    weighted.put( -1, new String( new char[2000] ) );
+    weighted.cleanUp();
+    assertTrue( weighted.getWeightedSize() <= 1000L, "weighted size " + weighted.getWeightedSize() );
+    assertNull( weighted.get( -1 ), "an entry heavier than the cache is not kept" );
+  }
+
+  @Test
+  public void testExpiry() {
+    FakeTicker ticker = new FakeTicker();
+    BoundedCache<String, String> cache = new BoundedCache<>( 100, null, TimeUnit.SECONDS.toNanos( 10 ), TimeUnit.SECONDS.toNanos( 3 ),
+                                                             null, ticker );
+    cache.put( "written", "w" );
+    cache.put( "read", "r" );
+    for ( int i = 0; i < 4; i++ ) {
+      ticker.now += TimeUnit.SECONDS.toNanos( 2 );
+      assertEquals( cache.get( "read" ), "r", "reads keep the entry alive" );
+    }
+    assertNull( cache.get( "written" ), "not read for 8 seconds" );
+    ticker.now += TimeUnit.SECONDS.toNanos( 2 );
+    assertNull( cache.get( "read" ), "written 10 seconds ago" );
+    cache.put( "other", "o" );
+    ticker.now += TimeUnit.SECONDS.toNanos( 5 );
+    cache.cleanUp();
+    assertEquals( cache.size(), 0L );
+    assertEquals( cache.getExpirationCount(), 3L );
+  }
+
+  @Test
+  public void testExpiryBehindARecentlyReadEntry() {
+    FakeTicker ticker = new FakeTicker();
+    BoundedCache<Integer, Integer> cache = new BoundedCache<>( 100, null, 0L, TimeUnit.SECONDS.toNanos( 3 ), null, ticker );
+    for ( int i = 0; i <= 80; i++ ) {
+      cache.put( i, i );
+    }
+    cache.cleanUp();
+    ticker.now += TimeUnit.SECONDS.toNanos( 1 );
+    // promoting 80 entries overflows the protected segment, 0 is demoted to probation read 1 second ago.
+    for ( int i = 0; i < 80; i++ ) {
+      assertEquals( cache.get( i ), Integer.valueOf( i ) );
+      cache.cleanUp();
+    }
+    ticker.now += TimeUnit.SECONDS.toNanos( 1 );
+    // 80 leaves the window for probation behind 0, it was last read when it was written.
+    cache.put( 100, 100 );
+    cache.put( 101, 101 );
+    cache.cleanUp();
+    ticker.now += TimeUnit.SECONDS.toNanos( 3 ) / 2;
+    cache.cleanUp();
+    assertEquals( cache.size(), 82L, "the expired entry must not hide behind one that is still fresh" );
+    assertEquals( cache.getExpirationCount(), 1L );
+  }
+
+  @Test
+  public void testScanResistance() {
+    BoundedCache<Integer, Integer> cache = new BoundedCache<>( 1000 );
+    for ( int round = 0; round < 10; round++ ) {
+      for ( int i = 0; i < 500; i++ ) {
+        if ( cache.get( i ) == null ) {
+          cache.put( i, i );
+        }
+      }
+    }
+    // a scan of keys that are only seen once.
+    for ( int i = 1000000; i < 1100000; i++ ) {
+      cache.put( i, i );
+    }
+    cache.cleanUp();
+    int retained = 0;
+    for ( int i = 0; i < 500; i++ ) {
+      if ( cache.get( i ) != null ) {
+        retained += 1;
+      }
+    }
+    LOG.info( "{} of 500 hot entries survived a scan of 100000 keys", retained );
+    assertTrue( retained > 450, retained + " hot entries retained" );
+  }
+
+  @Test
+  public void testLoadsAreTimedAndCoalesced() {
+    BoundedCache<String, String> cache = new BoundedCache<>( 10 );
+    final AtomicInteger loads = new AtomicInteger();
+    Lambda<String> loader = new Lambda<String>() {
+      @Override
+      public String func() {
+        loads.incrementAndGet();
+        return "loaded";
+      }
+    };
+    assertEquals( cache.get( "k", loader ), "loaded" );
+    assertEquals( cache.get( "k", loader ), "loaded" );
+    assertEquals( loads.get(), 1 );
+    assertEquals( cache.getLoadTiming().getCount(), 1 );
+  }
+
+  @Test
+  public void testSketchOfAHugeCache() {
+    // the table is capped, the sample size used to overflow for caches of more than 2^28 entries.
+    FrequencySketch sketch = new FrequencySketch( Long.MAX_VALUE );
+    for ( int i = 0; i < 20; i++ ) {
+      sketch.increment( "hot" );
+    }
+    sketch.increment( "cold" );
+    assertEquals( sketch.frequency( "hot" ), 15 );
+    assertTrue( sketch.frequency( "cold" ) >= 1 );
+  }
+
+  @Test( timeOut = 30000L )
+  public void testConcurrentAccess() throws Exception {
+    ExecutorService maintenance = Executors.newSingleThreadExecutor();
+    final BoundedCache<Integer, Integer> cache = new BoundedCache<>( 500, null, 0L, 0L, TimeUnit.SECONDS, maintenance );
+    final int[] trace = zipf( 5000, 0.9, 200000, 11L );
+    ExecutorService executor = Executors.newFixedThreadPool( 4 );
+    List<Future<?>> futures = new ArrayList<>();
+    for ( int t = 0; t < 4; t++ ) {
+      final int offset = t * 1000;
+      futures.add( executor.submit( new Runnable() {
+        @Override
+        public void run() {
+          for ( int i = 0; i < trace.length; i++ ) {
+            int key = trace[(i + offset) % trace.length];
+            Integer value = cache.get( key );
+            if ( value == null ) {
+              cache.put( key, key );
+            } else {
+              assertEquals( value.intValue(), key );
+            }
+          }
+        }
+      } ) );
+    }
+    for ( Future<?> f : futures ) {
+      f.get();
+    }
+    executor.shutdown();
+    cache.cleanUp();
+    maintenance.shutdown();
+    assertTrue( cache.size() <= 500L, "size " + cache.size() );
+    assertEquals( cache.getWeightedSize(), cache.size() );
+  }
+
+  @Test
+  public void testZipfianHitRate() {
+    final int capacity = 1000;
+    final int[] trace = zipf( 100000, 0.9, 1000000, 5L );
+    final BoundedCache<Integer, Integer> cache = new BoundedCache<>( capacity );
+    final Map<Integer, Integer> lru = new LinkedHashMap<Integer, Integer>( 16, 0.75f, true ) {
+      @Override
+      protected boolean removeEldestEntry( Map.Entry<Integer, Integer> eldest ) {
+        return size() > capacity;
+      }
+    };
+    final int[] lruHits = new int[1];
+    Timing cacheTiming = new Timing( "BoundedCache" );
+    Timing lruTiming = new Timing( "LinkedHashMap LRU" );
+    cacheTiming.time( new Procedure() {
+      @Override
+      public void func() {
+        for ( int key : trace ) {
+          if ( cache.get( key ) == null ) {
+            cache.put( key, key );
+          }
+        }
+      }
+    } );
+    lruTiming.time( new Procedure() {
+      @Override
+      public void func() {
+        for ( int key : trace ) {
+          if ( lru.get( key ) == null ) {
+            lru.put( key, key );
+          } else {
+            lruHits[0] += 1;
+          }
+        }
+      }
+    } );
+    double lruHitRate = (double)lruHits[0] / trace.length;
+    LOG.info( "Zipf(0.9) over 100000 keys, capacity {}: W-TinyLFU hit rate {} in {} ms, LRU hit rate {} in {} ms", capacity,
+              cache.getHitRate(), cacheTiming.getTotal() / 1000000L, lruHitRate, lruTiming.getTotal() / 1000000L );
+    assertTrue( cache.getHitRate() > lruHitRate, "W-TinyLFU should beat LRU on a skewed trace" );
+  }
+}
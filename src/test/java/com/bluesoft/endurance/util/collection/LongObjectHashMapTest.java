@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.bluesoft.endurance.instrumentation.Procedure;
+import com.bluesoft.endurance.instrumentation.time.Timing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class LongObjectHashMapTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( LongObjectHashMapTest.class );
+  private static final int KEYS = 4096;
+  private static final int LOOKUPS = 2000000;
+
+  @Test
+  public void testAgainstHashMap() {
+    Random random = new Random( 42L );
+    LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+    LongObjectConcurrentMap<Long> concurrentMap = new LongObjectConcurrentMap<>();
+    Map<Long, Long> expected = new HashMap<>();
+    for ( int i = 0; i < 200000; i++ ) {
+      // a small key range with negative keys and zero so keys collide, are removed and come back.
+      long key = random.nextInt( 2000 ) - 1000;
+      switch ( random.nextInt( 3 ) ) {
+        case 0:
+          assertEquals( map.remove( key ), expected.get( key ) );
+          assertEquals( concurrentMap.remove( key ), expected.remove( key ) );
+          break;
+        default:
+          Long value = random.nextLong();
+          assertEquals( map.put( key, value ), expected.get( key ) );
+          assertEquals( concurrentMap.put( key, value ), expected.put( key, value ) );
+      }
+      long probe = random.nextInt( 2000 ) - 1000;
+      assertEquals( map.get( probe ), expected.get( probe ) );
+      assertEquals( concurrentMap.get( probe ), expected.get( probe ) );
+    }
+    assertEquals( map.size(), expected.size() );
+    assertEquals( concurrentMap.size(), expected.size() );
+    for ( long key : map.keys() ) {
+      assertTrue( expected.containsKey( key ) );
+    }
+    assertEquals( concurrentMap.keys().length, expected.size() );
+    assertEquals( concurrentMap.putIfAbsent( 5000L, 1L ), null );
+    assertEquals( concurrentMap.putIfAbsent( 5000L, 2L ), (Long)1L );
+    assertNull( concurrentMap.remove( 5000L, 2L ) );
+    map.clear();
+    concurrentMap.clear();
+    assertTrue( map.isEmpty() );
+    assertTrue( concurrentMap.isEmpty() );
+    assertNull( concurrentMap.get( 5000L ) );
+  }
+
+  @Test( expectedExceptions = IllegalArgumentException.class )
+  public void testNullValuesAreRejected() {
+    new LongObjectConcurrentMap<String>().put( 1L, null );
+  }
+
+  @Test( timeOut = 20000L )
+  public void testReadersSeeConsistentValues() throws Exception {
+    final LongObjectConcurrentMap<Long> map = new LongObjectConcurrentMap<>();
+    final AtomicBoolean done = new AtomicBoolean( false );
+    ExecutorService executor = Executors.newFixedThreadPool( 4 );
+    List<Future<?>> readers = new ArrayList<>();
+    for ( int r = 0; r < 3; r++ ) {
+      readers.add( executor.submit( new Runnable() {
+        @Override
+        public void run() {
+          Random random = new Random();
+          while (!done.get()) {
+            long key = random.nextInt( 10000 );
+            Long value = map.get( key );
+            // every key is only ever mapped to its own negation.
+            assertTrue( value == null || value == -key, key + " -> " + value );
+          }
+        }
+      } ) );
+    }
+    Random random = new Random( 7L );
+    for ( int i = 0; i < 500000; i++ ) {
+      long key = random.nextInt( 10000 );
+      if ( random.nextBoolean() ) {
+        map.put( key, -key );
+      } else {
+        map.remove( key );
+      }
+    }
+    done.set( true );
+    for ( Future<?> f : readers ) {
+      f.get();
+    }
+    executor.shutdown();
+  }
+
+  @Test
+  public void testLookupPerformance() {
+    final LongObjectConcurrentMap<String> primitive = new LongObjectConcurrentMap<>();
+    final LongObjectHashMap<String> unsynchronized = new LongObjectHashMap<>();
+    final Map<Long, String> boxed = new ConcurrentHashMap<>();
+    final long[] ids = new long[KEYS];
+    Random random = new Random( 1L );
+    for ( int i = 0; i < KEYS; i++ ) {
+      // entity ids are mostly beyond the range of the Long cache.
+      ids[i] = 1000000L + random.nextInt( 1000000 );
+      primitive.put( ids[i], "entity-" + ids[i] );
+      unsynchronized.put( ids[i], "entity-" + ids[i] );
+      boxed.put( ids[i], "entity-" + ids[i] );
+    }
+    final int[] hits = new int[3];
+    Timing primitiveTiming = new Timing( "LongObjectConcurrentMap.get" );
+    Timing unsynchronizedTiming = new Timing( "LongObjectHashMap.get" );
+    Timing boxedTiming = new Timing( "ConcurrentHashMap<Long,V>.get" );
+    for ( int round = 0; round < 5; round++ ) {
+      boxedTiming.time( new Procedure() {
+        @Override
+        public void func() {
+          for ( int i = 0; i < LOOKUPS; i++ ) {
+            if ( boxed.get( ids[i & (KEYS - 1)] ) != null ) {
+              hits[0] += 1;
+            }
+          }
+        }
+      } );
+      primitiveTiming.time( new Procedure() {
+        @Override
+        public void func() {
+          for ( int i = 0; i < LOOKUPS; i++ ) {
+            if ( primitive.get( ids[i & (KEYS - 1)] ) != null ) {
+              hits[1] += 1;
+            }
+          }
+        }
+      } );
+      unsynchronizedTiming.time( new Procedure() {
+        @Override
+        public void func() {
+          for ( int i = 0; i < LOOKUPS; i++ ) {
+            if ( unsynchronized.get( ids[i & (KEYS - 1)] ) != null ) {
+              hits[2] += 1;
+            }
+          }
+        }
+      } );
+    }
+    assertEquals( hits[0], hits[1] );
+    assertEquals( hits[0], hits[2] );
+    LOG.info( "{} lookups, best of 5: ConcurrentHashMap<Long,V> {} ms, LongObjectConcurrentMap {} ms, LongObjectHashMap {} ms", LOOKUPS, boxedTiming.getMin() / 1e6,
+              primitiveTiming.getMin() / 1e6, unsynchronizedTiming.getMin() / 1e6 );
+    LOG.info( "{}", boxedTiming );
+    LOG.info( "{}", primitiveTiming );
+    LOG.info( "{}", unsynchronizedTiming );
+  }
+}
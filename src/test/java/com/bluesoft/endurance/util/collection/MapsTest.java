@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class MapsTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( MapsTest.class );
+  private static final int INSTANCES = 100000;
+
+  @Test
+  public void testImmutableMap() {
+    for ( int size = 0; size < 40; size++ ) {
+      Object[] keysAndValues = new Object[size * 2];
+      for ( int i = 0; i < size; i++ ) {
+        keysAndValues[i * 2] = "key-" + i;
+        keysAndValues[i * 2 + 1] = i;
+      }
+      Map<Object, Object> compact = Maps.immutableMap( keysAndValues );
+      Map<Object, Object> linked = Maps.map( keysAndValues );
+      assertEquals( compact, linked );
+      assertEquals( compact.hashCode(), linked.hashCode() );
+      assertEquals( new ArrayList<>( compact.keySet() ), new ArrayList<>( linked.keySet() ), "insertion order" );
+      for ( int i = 0; i < size; i++ ) {
+        assertEquals( compact.get( "key-" + i ), i );
+      }
+      assertNull( compact.get( "missing" ) );
+      assertFalse( compact.containsKey( "missing" ) );
+    }
+  }
+
+  @Test
+  public void testDuplicatesAndNulls() {
+    Map<String, String> map = Maps.immutableMap( "a", "1", "b", "2", "a", "3", null, "4", "c", null, "d", "5", "e", "6" );
+    assertEquals( map.size(), 6 );
+    assertEquals( new ArrayList<>( map.keySet() ), Arrays.asList( "a", "b", null, "c", "d", "e" ) );
+    assertEquals( map.get( "a" ), "3", "the last value wins" );
+    assertEquals( map.get( null ), "4" );
+    assertTrue( map.containsKey( "c" ) );
+    assertEquals( Maps.immutableMap( Pair.pairOf( "x", 1 ), Pair.pairOf( "y", 2 ) ), Maps.map( Pair.pairOf( "x", 1 ),
+                                                                                                  Pair.pairOf( "y", 2 ) ) );
+    assertTrue( Maps.immutableMap().isEmpty() );
+  }
+
+  @Test( expectedExceptions = UnsupportedOperationException.class )
+  public void testMapIsImmutable() {
+    Maps.immutableMap( "a", "1" ).put( "b", "2" );
+  }
+
+  @Test
+  public void testImmutableSet() {
+    Set<String> set = Sets.immutableSet( "c", "a", "b", "a", "d", "e", "f", null );
+    assertEquals( set, Sets.set( "c", "a", "b", "d", "e", "f", null ) );
+    Iterator<String> it = set.iterator();
+    assertEquals( it.next(), "c" );
+    assertEquals( it.next(), "a" );
+    assertTrue( set.contains( "f" ) );
+    assertTrue( set.contains( null ) );
+    assertFalse( set.contains( "g" ) );
+    assertTrue( Sets.immutableSet().isEmpty() );
+  }
+
+  @Test( expectedExceptions = UnsupportedOperationException.class )
+  public void testSetIsImmutable() {
+    Sets.immutableSet( "a" ).add( "b" );
+  }
+
+  @Test
+  public void testFootprint() {
+    for ( int size : new int[] { 1, 3, 8, 32 } ) {
+      final String[] keysAndValues = new String[size * 2];
+      for ( int i = 0; i < keysAndValues.length; i++ ) {
+        keysAndValues[i] = "element-" + i;
+      }
+      long linked = bytesPerEntry( size, new Factory() {
+        @Override
+        Object make() {
+          return Maps.map( keysAndValues );
+        }
+      } );
+      long compact = bytesPerEntry( size, new Factory() {
+        @Override
+        Object make() {
+          return Maps.immutableMap( keysAndValues );
+        }
+      } );
+      long linkedSet = bytesPerEntry( size, new Factory() {
+        @Override
+        Object make() {
+          return Sets.set( Arrays.copyOf( keysAndValues, size ) );
+        }
+      } );
+      long compactSet = bytesPerEntry( size, new Factory() {
+        @Override
+        Object make() {
+          return Sets.immutableSet( Arrays.copyOf( keysAndValues, size ) );
+        }
+      } );
+      LOG.info( "{} entries: map {} bytes per entry, immutable map {}; set {} bytes per element, immutable set {}", size, linked, compact,
+                linkedSet, compactSet );
+      assertTrue( compact < linked, "the immutable map should be smaller" );
+    }
+  }
+
+  private abstract static class Factory {
+
+    abstract Object make();
+  }
+
+  private static long bytesPerEntry( int size, Factory factory ) {
+    List<Object> keep = new ArrayList<>( INSTANCES );
+    long before = usedMemory();
+    for ( int i = 0; i < INSTANCES; i++ ) {
+      keep.add( factory.make() );
+    }
+    long after = usedMemory();
+    assertEquals( keep.size(), INSTANCES );
+    return (after - before) / ((long)INSTANCES * size);
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for ( int i = 0; i < 3; i++ ) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 Dana H. P'Simer & BluesSoft Development, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bluesoft.endurance.util.collection;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.bluesoft.endurance.instrumentation.Procedure;
+import com.bluesoft.endurance.instrumentation.time.Timing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author danap
+ */
+public class TupleTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger( TupleTest.class );
+  private static final int KEYS = 1000;
+  private static final int LOOKUPS = 2000000;
+
+  @Test
+  public void testPair() {
+    Pair<String, Integer> pair = Pair.pairOf( "a", 1 );
+    assertEquals( pair.getLeft(), "a" );
+    assertEquals( pair.getRight(), Integer.valueOf( 1 ) );
+    assertEquals( pair.get( 1 ), 1 );
+    assertEquals( pair.size(), 2 );
+    assertEquals( pair, Pair.pairOf( "a", 1 ) );
+    assertEquals( pair.hashCode(), Pair.pairOf( "a", 1 ).hashCode() );
+    assertNotEquals( pair, Pair.pairOf( "a", 2 ) );
+    assertNotEquals( pair, Tuple.of( "a", 1 ) );
+    assertEquals( Pair.pairOf( null, null ), Pair.pairOf( null, null ) );
+    assertEquals( pair.toString(), "(a, 1)" );
+  }
+
+  @Test( expectedExceptions = IndexOutOfBoundsException.class )
+  public void testPairIndex() {
+    Pair.pairOf( "a", "b" ).get( 2 );
+  }
+
+  @Test
+  public void testTripleAndTuple() {
+    Triple<String, Integer, Long> triple = Triple.tripleOf( "a", 1, 2L );
+    assertEquals( triple.getMiddle(), Integer.valueOf( 1 ) );
+    assertEquals( triple.get( 2 ), 2L );
+    assertEquals( triple, Triple.tripleOf( "a", 1, 2L ) );
+    assertEquals( triple.hashCode(), Triple.tripleOf( "a", 1, 2L ).hashCode() );
+    assertNotEquals( triple, Triple.tripleOf( "a", 1, 3L ) );
+    assertEquals( Tuple.of( "a", "b", "c" ), Tuple.of( "a", "b", "c" ) );
+    assertEquals( Tuple.of( "a", "b", "c" ).hashCode(), Tuple.of( "a", "b", "c" ).hashCode() );
+    assertEquals( Tuple.of( "a", "b" ).size(), 2 );
+  }
+
+  @Test
+  public void testPrimitivePairs() {
+    assertEquals( LongPair.pairOf( 1L, 2L ), LongPair.pairOf( 1L, 2L ) );
+    assertNotEquals( LongPair.pairOf( 1L, 2L ), LongPair.pairOf( 2L, 1L ) );
+    assertEquals( LongPair.pairOf( 1L, 2L ).hashCode(), LongPair.pairOf( 1L, 2L ).hashCode() );
+    assertEquals( IntObjPair.pairOf( 1, "a" ), IntObjPair.pairOf( 1, "a" ) );
+    assertNotEquals( IntObjPair.pairOf( 1, "a" ), IntObjPair.pairOf( 2, "a" ) );
+    assertEquals( LongObjPair.pairOf( 1L, "a" ).getLeft(), 1L );
+    assertEquals( LongObjPair.pairOf( 1L, "a" ), LongObjPair.pairOf( 1L, "a" ) );
+    assertNotEquals( LongObjPair.pairOf( 1L, "a" ), LongObjPair.pairOf( 1L, "b" ) );
+  }
+
+  @Test
+  public void testCompositeKeys() {
+    final Map<Pair<String, Integer>, Integer> pairs = new HashMap<>();
+    final Map<LongPair, Integer> longPairs = new HashMap<>();
+    final String[] names = new String[KEYS];
+    for ( int i = 0; i < KEYS; i++ ) {
+      names[i] = "key-" + i;
+      pairs.put( Pair.pairOf( names[i], i ), i );
+      longPairs.put( LongPair.pairOf( i, -i ), i );
+    }
+    final long[] sum = new long[2];
+    Timing pairTiming = new Timing();
+    Timing longPairTiming = new Timing();
+    pairTiming.time( new Procedure() {
+      @Override
+      public void func() {
+        for ( int i = 0; i < LOOKUPS; i++ ) {
+          sum[0] += pairs.get( Pair.pairOf( names[i % KEYS], i % KEYS ) );
+        }
+      }
+    } );
+    longPairTiming.time( new Procedure() {
+      @Override
+      public void func() {
+        for ( int i = 0; i < LOOKUPS; i++ ) {
+          sum[1] += longPairs.get( LongPair.pairOf( i % KEYS, -(i % KEYS) ) );
+        }
+      }
+    } );
+    assertEquals( sum[0], sum[1] );
+    LOG.info( "lookups by composite key: Pair {} ns, LongPair {} ns", pairTiming.getTotal() / LOOKUPS,
+              longPairTiming.getTotal() / LOOKUPS );
+  }
+}